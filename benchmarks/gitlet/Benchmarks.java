@@ -0,0 +1,399 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/** Performance benchmarks for the core Gitlet commands.  Usage:
+ *
+ *      java gitlet.Benchmarks [ OPTIONS ] [ REGEX ]
+ *
+ *  runs every benchmark whose name contains a match for REGEX (all of
+ *  them by default).  Options are
+ *
+ *      --files=N       Number of files in generated repositories (1000).
+ *      --commits=M     Number of commits in generated histories (50).
+ *      --lines=L       Number of lines in each generated file (20).
+ *      --warmup=W      Untimed iterations before measuring (2).
+ *      --iterations=I  Timed iterations (5).
+ *      --out=FILE      Write results to FILE as JSON (results.json).
+ *
+ *  Each benchmark builds a template repository once, then, for every
+ *  iteration, copies it to a fresh directory and times one operation
+ *  there, so that commands changing the repository always start from
+ *  the same state.  Commands run in this JVM through Main, with standard
+ *  output discarded.  Results are written in the JSON layout used by JMH,
+ *  with times in milliseconds per operation.  Like JMH's -prof gc, each
+ *  benchmark also reports gc.alloc.rate.norm, the bytes its operation
+ *  allocates on the benchmark thread (work handed to other threads, as
+ *  by Materializer, is not counted).
+ *  @author Duc Nguyen
+ */
+public class Benchmarks {
+
+    /** Builds a template repository in a directory, returning the
+     *  operand its operation needs, if any. */
+    interface Setup {
+        /** Build the template in DIR and return an operand or null. */
+        String build(File dir);
+    }
+
+    /** An operation timed in a copy of a template repository. */
+    interface Op {
+        /** Run the operation in repository DIR with operand ARG. */
+        void run(File dir, String arg);
+    }
+
+    /** A named benchmark. */
+    static class Case {
+        /** A benchmark NAME that runs OP in repositories built by SETUP,
+         *  inside their subdirectory SUBDIR ("" for the top). */
+        Case(String name, Setup setup, String subDir, Op op) {
+            this(name, setup, subDir, op, 1);
+        }
+
+        /** A benchmark NAME that runs OP in repositories built by SETUP,
+         *  inside their subdirectory SUBDIR, where each run of OP performs
+         *  BATCH operations. */
+        Case(String name, Setup setup, String subDir, Op op, int batch) {
+            _name = name;
+            _setup = setup;
+            _subDir = subDir;
+            _op = op;
+            _batch = batch;
+        }
+
+        /** The benchmark's name. */
+        private final String _name;
+        /** Builds its template. */
+        private final Setup _setup;
+        /** Subdirectory of the template to run in. */
+        private final String _subDir;
+        /** The timed operation. */
+        private final Op _op;
+        /** Number of operations performed by each run of _op. */
+        private final int _batch;
+    }
+
+    /** Run the benchmarks selected by ARGS as described above. */
+    public static void main(String... args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("files", "1000");
+        options.put("commits", "50");
+        options.put("lines", "20");
+        options.put("warmup", "2");
+        options.put("iterations", "5");
+        options.put("out", "results.json");
+        Pattern filter = Pattern.compile("");
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int eq = arg.indexOf('=');
+                String key = arg.substring(2, eq);
+                if (!options.containsKey(key)) {
+                    System.err.printf("Unknown option: %s%n", arg);
+                    System.exit(1);
+                }
+                options.put(key, arg.substring(eq + 1));
+            } else {
+                filter = Pattern.compile(arg);
+            }
+        }
+        Benchmarks bench =
+            new Benchmarks(Integer.parseInt(options.get("files")),
+                           Integer.parseInt(options.get("commits")),
+                           Integer.parseInt(options.get("lines")),
+                           Integer.parseInt(options.get("warmup")),
+                           Integer.parseInt(options.get("iterations")));
+        StringBuilder json = new StringBuilder("[\n");
+        String sep = "";
+        for (Case c : bench.cases()) {
+            if (filter.matcher(c._name).find()) {
+                json.append(sep).append(bench.measure(c));
+                sep = ",\n";
+            }
+        }
+        json.append("\n]\n");
+        Utils.writeContents(new File(options.get("out")), json.toString());
+    }
+
+    /** A suite for repositories of FILES files of LINES lines each and
+     *  histories of COMMITS commits, timing each operation over
+     *  ITERATIONS runs after WARMUP untimed ones. */
+    Benchmarks(int files, int commits, int lines, int warmup,
+               int iterations) {
+        _files = files;
+        _commits = commits;
+        _warmup = warmup;
+        _iterations = iterations;
+        _gen = new RepoGenerator(lines);
+    }
+
+    /** Return every benchmark in the suite. */
+    List<Case> cases() {
+        int n = _files;
+        int m = _commits;
+        List<Case> result = new ArrayList<>();
+        result.add(new Case("add", d -> none(() -> _gen.untracked(d, n)), "",
+            (d, a) -> {
+                for (int i = 0; i < n; i += 1) {
+                    run(d, "add", RepoGenerator.fileName(i));
+                }
+            }));
+        result.add(new Case("commit", d -> none(() -> _gen.staged(d, n)),
+            "", (d, a) -> run(d, "commit", "benchmark")));
+        result.add(new Case("status", d -> none(() -> {
+            _gen.linear(d, n, m);
+            _gen.touch(d, n, 10);
+        }), "", (d, a) -> run(d, "status")));
+        result.add(new Case("log", d -> none(() -> _gen.linear(d, n, m)),
+            "", (d, a) -> run(d, "log")));
+        result.add(new Case("global-log",
+            d -> none(() -> _gen.linear(d, n, m)), "",
+            (d, a) -> run(d, "global-log")));
+        result.add(new Case("find", d -> none(() -> _gen.linear(d, n, m)),
+            "", (d, a) -> run(d, "find", "version 0")));
+        result.add(new Case("checkout",
+            d -> none(() -> _gen.branchy(d, n, m)), "",
+            (d, a) -> run(d, "checkout", "other")));
+        result.add(new Case("reset", d -> {
+            _gen.linear(d, n, m);
+            return firstCommit(d);
+        }, "", (d, a) -> run(d, "reset", a)));
+        result.add(new Case("merge", d -> none(() -> _gen.branchy(d, n, m)),
+            "", (d, a) -> run(d, "merge", "other")));
+        result.add(new Case("translate", d -> {
+            _gen.linear(d, n, m);
+            return firstCommit(d).substring(0, PREFIX);
+        }, "", (d, a) -> {
+            inRepo(d);
+            new ControlSystem().translate(a);
+        }));
+        result.add(new Case("fetch",
+            d -> none(() -> _gen.remotePair(d, n, m)), "local",
+            (d, a) -> run(d, "fetch", "R1", "master")));
+        result.add(new Case("sha1-bytes", d -> null, "", (d, a) -> {
+            for (int i = 0; i < HASH_BATCH; i += 1) {
+                Utils.hash(HASH_INPUT);
+            }
+        }, HASH_BATCH));
+        result.add(new Case("sha1-string", d -> null, "", (d, a) -> {
+            for (int i = 0; i < HASH_BATCH; i += 1) {
+                Utils.sha1Id(HASH_STRING);
+            }
+        }, HASH_BATCH));
+        result.add(new Case("sha1-file", d -> {
+            Utils.writeContents(new File(d, "blob"),
+                                (Object) new byte[HASH_FILE_SIZE]);
+            return null;
+        }, "", (d, a) -> {
+            File blob = new File(d, "blob");
+            for (int i = 0; i < HASH_BATCH; i += 1) {
+                Utils.hash(blob);
+            }
+        }, HASH_BATCH));
+        return result;
+    }
+
+    /** Time C, returning its results as a JSON object. */
+    String measure(Case c) throws IOException {
+        File root = Files.createTempDirectory("gitlet-bench").toFile();
+        try {
+            File template = new File(root, "template");
+            template.mkdirs();
+            String arg = c._setup.build(template);
+            double[] samples = new double[_iterations];
+            long hits = 0, misses = 0, allocated = 0;
+            for (int i = -_warmup; i < _iterations; i += 1) {
+                File copy = new File(root, "run" + (i + _warmup));
+                RepoGenerator.copyTree(template, copy);
+                File dir = c._subDir.isEmpty() ? copy
+                    : new File(copy, c._subDir);
+                long hits0 = ObjectCache.hits();
+                long misses0 = ObjectCache.misses();
+                long allocated0 = allocatedBytes();
+                long start = System.nanoTime();
+                quietly(() -> c._op.run(dir, arg));
+                long elapsed = System.nanoTime() - start;
+                if (i >= 0) {
+                    samples[i] = elapsed / NANOS_PER_MILLI / c._batch;
+                    hits += ObjectCache.hits() - hits0;
+                    misses += ObjectCache.misses() - misses0;
+                    allocated += allocatedBytes() - allocated0;
+                }
+                RepoGenerator.deleteTree(copy);
+            }
+            double allocPerOp =
+                (double) allocated / _iterations / c._batch;
+            String result = toJson(c._name, samples, hits, misses,
+                                   allocPerOp);
+            System.out.printf("%-12s %12.6f ms/op %14.1f B/op%n", c._name,
+                              mean(samples), allocPerOp);
+            return result;
+        } finally {
+            RepoGenerator.deleteTree(root);
+        }
+    }
+
+    /** Return the JMH-style JSON record for benchmark NAME with timings
+     *  SAMPLES, HITS and MISSES object cache lookups and ALLOC bytes
+     *  allocated per operation. */
+    private String toJson(String name, double[] samples, long hits,
+                          long misses, double alloc) {
+        double mean = mean(samples);
+        double var = 0;
+        for (double s : samples) {
+            var += (s - mean) * (s - mean);
+        }
+        double stdev = samples.length > 1
+            ? Math.sqrt(var / (samples.length - 1)) : 0;
+        double error = Z_999 * stdev / Math.sqrt(samples.length);
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        StringBuilder raw = new StringBuilder();
+        for (double s : samples) {
+            raw.append(raw.length() == 0 ? "" : ", ")
+                .append(String.format("%.6f", s));
+        }
+        return String.format("  {%n"
+            + "    \"benchmark\": \"gitlet.Benchmarks.%s\",%n"
+            + "    \"mode\": \"avgt\",%n"
+            + "    \"warmupIterations\": %d,%n"
+            + "    \"measurementIterations\": %d,%n"
+            + "    \"params\": {\"files\": \"%d\", \"commits\": \"%d\"},%n"
+            + "    \"primaryMetric\": {%n"
+            + "      \"score\": %.6f,%n"
+            + "      \"scoreError\": %.6f,%n"
+            + "      \"scoreUnit\": \"ms/op\",%n"
+            + "      \"rawData\": [[%s]]%n"
+            + "    },%n"
+            + "    \"secondaryMetrics\": {%n"
+            + "      \"min\": {\"score\": %.6f, \"scoreUnit\": \"ms/op\"},%n"
+            + "      \"p50\": {\"score\": %.6f, \"scoreUnit\": \"ms/op\"},%n"
+            + "      \"cacheHits\": {\"score\": %d, \"scoreUnit\": \"#\"},%n"
+            + "      \"cacheMisses\": {\"score\": %d, \"scoreUnit\": \"#\"},%n"
+            + "      \"gc.alloc.rate.norm\": {\"score\": %.1f, "
+            + "\"scoreUnit\": \"B/op\"}%n"
+            + "    }%n"
+            + "  }", name, _warmup, _iterations, _files, _commits, mean,
+            error, raw, sorted[0], sorted[sorted.length / 2], hits, misses,
+            alloc);
+    }
+
+    /** Run the Gitlet command ARGS in repository DIR, as Main would. */
+    static void run(File dir, String... args) {
+        inRepo(dir);
+        PrintStream out = System.out;
+        System.setOut(NULL_OUT);
+        try {
+            ControlSystem system = new ControlSystem();
+            if (!Main.switchLocal(system, args)) {
+                Main.switchRemote(system, args);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /** Make DIR the working directory seen by new ControlSystems. */
+    private static void inRepo(File dir) {
+        System.setProperty("user.dir", dir.getAbsolutePath());
+    }
+
+    /** Run BODY with standard output discarded. */
+    private static void quietly(Runnable body) {
+        PrintStream out = System.out;
+        System.setOut(NULL_OUT);
+        try {
+            body.run();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /** Run BODY and return null, for setups with no operand. */
+    private static String none(Runnable body) {
+        body.run();
+        return null;
+    }
+
+    /** Return the id of the first commit after the initial one in the
+     *  linear history in DIR. */
+    private static String firstCommit(File dir) {
+        File commits = Utils.join(dir, ".gitlet", "commits");
+        inRepo(dir);
+        Commit c = new ControlSystem().getCurrentCommit();
+        while (!c.getMsg().equals("version 0")) {
+            c = Utils.readObject(new File(commits,
+                                          c.getParentHash().toString()),
+                                 Commit.class);
+        }
+        return c.getID().toString();
+    }
+
+    /** Return the number of bytes allocated so far by this thread. */
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread()
+                                               .getId());
+    }
+
+    /** Return the mean of SAMPLES. */
+    private static double mean(double[] samples) {
+        double sum = 0;
+        for (double s : samples) {
+            sum += s;
+        }
+        return samples.length == 0 ? 0 : sum / samples.length;
+    }
+
+    /** Number of hashes per run of the SHA-1 benchmarks. */
+    private static final int HASH_BATCH = 1000;
+
+    /** Input to the sha1-bytes benchmark. */
+    private static final byte[] HASH_INPUT = new byte[4096];
+
+    /** Input to the sha1-string benchmark. */
+    private static final String HASH_STRING =
+        "f000123.txt version 42 of a typical path-sized string";
+
+    /** Size of the file hashed by the sha1-file benchmark. */
+    private static final int HASH_FILE_SIZE = 1 << 16;
+
+    /** Reports per-thread allocation. */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** Length of the abbreviated id given to translate. */
+    private static final int PREFIX = 8;
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Normal quantile for the 99.9% confidence interval JMH reports. */
+    private static final double Z_999 = 3.291;
+
+    /** Stream discarding everything written to it. */
+    private static final PrintStream NULL_OUT =
+        new PrintStream(OutputStream.nullOutputStream());
+
+    /** Number of files in generated repositories. */
+    private final int _files;
+    /** Number of commits in generated histories. */
+    private final int _commits;
+    /** Untimed iterations per benchmark. */
+    private final int _warmup;
+    /** Timed iterations per benchmark. */
+    private final int _iterations;
+    /** Builds template repositories. */
+    private final RepoGenerator _gen;
+}
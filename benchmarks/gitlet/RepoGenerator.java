@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** Builds synthetic Gitlet repositories for the benchmarks.  Every
+ *  repository is created by running the same commands a user would,
+ *  through Main, with standard output discarded.
+ *  @author Duc Nguyen
+ */
+class RepoGenerator {
+
+    /** A generator that makes files of about LINES lines each. */
+    RepoGenerator(int lines) {
+        _lines = lines;
+    }
+
+    /** Create DIR holding an initialized repository with FILES untracked
+     *  files and nothing committed. */
+    void untracked(File dir, int files) {
+        init(dir);
+        for (int i = 0; i < files; i += 1) {
+            writeFile(dir, i, 0);
+        }
+    }
+
+    /** Create DIR holding an initialized repository with FILES files
+     *  staged for addition. */
+    void staged(File dir, int files) {
+        untracked(dir, files);
+        for (int i = 0; i < files; i += 1) {
+            Benchmarks.run(dir, "add", fileName(i));
+        }
+    }
+
+    /** Create DIR holding a linear history: FILES files added by the
+     *  first commit, then COMMITS - 1 commits each changing one file. */
+    void linear(File dir, int files, int commits) {
+        staged(dir, files);
+        Benchmarks.run(dir, "commit", "version 0");
+        for (int c = 1; c < commits; c += 1) {
+            int i = c % files;
+            writeFile(dir, i, c);
+            Benchmarks.run(dir, "add", fileName(i));
+            Benchmarks.run(dir, "commit", "version " + c);
+        }
+    }
+
+    /** Create DIR holding a branchy history: a linear history of FILES
+     *  files and COMMITS commits on master, followed by a branch "other"
+     *  and COMMITS more commits on each of master and other.  The two
+     *  branches change disjoint halves of the files, so they merge
+     *  without conflicts.  Leaves master checked out. */
+    void branchy(File dir, int files, int commits) {
+        linear(dir, files, commits);
+        Benchmarks.run(dir, "branch", "other");
+        int half = Math.max(1, files / 2);
+        for (int c = 0; c < commits; c += 1) {
+            int i = c % half;
+            writeFile(dir, i, commits + c);
+            Benchmarks.run(dir, "add", fileName(i));
+            Benchmarks.run(dir, "commit", "master " + c);
+        }
+        Benchmarks.run(dir, "checkout", "other");
+        for (int c = 0; c < commits; c += 1) {
+            int i = Math.min(files - 1, half + c % half);
+            writeFile(dir, i, 2 * commits + c);
+            Benchmarks.run(dir, "add", fileName(i));
+            Benchmarks.run(dir, "commit", "other " + c);
+        }
+        Benchmarks.run(dir, "checkout", "master");
+    }
+
+    /** Create DIR holding a linear history of FILES files and COMMITS
+     *  commits in subdirectory "remote", and an empty repository in
+     *  subdirectory "local" that knows "remote" as the remote R1. */
+    void remotePair(File dir, int files, int commits) {
+        File remote = new File(dir, "remote");
+        File local = new File(dir, "local");
+        linear(remote, files, commits);
+        init(local);
+        Benchmarks.run(local, "add-remote", "R1",
+                       new File(remote, ".gitlet").getAbsolutePath());
+    }
+
+    /** Modify every COUNT-th file of the FILES files in DIR, leaving the
+     *  changes unstaged. */
+    void touch(File dir, int files, int count) {
+        for (int i = 0; i < files; i += Math.max(1, count)) {
+            writeFile(dir, i, -1);
+        }
+    }
+
+    /** Return the name of the Ith generated file. */
+    static String fileName(int i) {
+        return String.format("f%06d.txt", i);
+    }
+
+    /** Create DIR and initialize a repository in it. */
+    private void init(File dir) {
+        dir.mkdirs();
+        Benchmarks.run(dir, "init");
+    }
+
+    /** Write version VERSION of the Ith generated file in DIR. */
+    private void writeFile(File dir, int i, int version) {
+        StringBuilder contents = new StringBuilder();
+        for (int line = 0; line < _lines; line += 1) {
+            contents.append("file ").append(i).append(" line ").append(line)
+                .append(" version ").append(version).append('\n');
+        }
+        Utils.writeContents(new File(dir, fileName(i)), contents.toString());
+    }
+
+    /** Copy the directory tree FROM to TO. */
+    static void copyTree(File from, File to) {
+        Path source = from.toPath();
+        Path target = to.toPath();
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path p : (Iterable<Path>) paths::iterator) {
+                Path dest = target.resolve(source.relativize(p));
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(dest);
+                } else {
+                    Files.copy(p, dest);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Delete the directory tree DIR. */
+    static void deleteTree(File dir) {
+        if (!dir.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(f -> {
+                    f.setWritable(true);
+                    f.delete();
+                });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Number of lines in each generated file. */
+    private final int _lines;
+}
@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/** The state of a bisection, kept in .gitlet/bisect while one is under
+ *  way: the branch it started on, the bad commit and the good and
+ *  skipped ones, one to a line as "branch NAME", "bad ID", "good ID" or
+ *  "skip ID".  The candidates for the first bad commit are the ancestors
+ *  of the bad commit, itself included and both parents of merges
+ *  followed, that are not ancestors of a good one.  The next commit to
+ *  test is the candidate whose ancestors among the candidates come
+ *  closest to half of them, so that either answer rules out about half.
+ *  Those counts are found in one pass over the candidates, parents
+ *  first, uniting each candidate's bitmap of ancestors with its
+ *  parents' and dropping a bitmap once all its children have used it.
+ *  Parents and the ancestors of good commits come from the commit-graph,
+ *  so only commits made since it was written are read.
+ *  @author Duc Nguyen
+ */
+class Bisect {
+
+    /** The outcome of a step of a bisection. */
+    static final class Step {
+
+        /** A step testing COMMIT next, or finding it to be the first bad
+         *  commit if FOUND, with about LEFT commits left to test after it.
+         *  COMMIT is null if only skipped commits are left, CANDIDATES. */
+        Step(ObjectId commit, boolean found, int left,
+             List<ObjectId> candidates) {
+            _commit = commit;
+            _found = found;
+            _left = left;
+            _candidates = candidates;
+        }
+
+        /** Return the commit to test next or the first bad commit, or
+         *  null if only skipped commits are left. */
+        ObjectId commit() {
+            return _commit;
+        }
+
+        /** Return true iff the first bad commit was found. */
+        boolean found() {
+            return _found;
+        }
+
+        /** Return the most commits left to test after this one. */
+        int left() {
+            return _left;
+        }
+
+        /** Return the rough number of steps left after this one. */
+        int steps() {
+            return 32 - Integer.numberOfLeadingZeros(_left);
+        }
+
+        /** Return the candidates left, parents first. */
+        List<ObjectId> candidates() {
+            return _candidates;
+        }
+
+        /** The commit to test or found. */
+        private final ObjectId _commit;
+
+        /** Whether the first bad commit was found. */
+        private final boolean _found;
+
+        /** Most commits left to test. */
+        private final int _left;
+
+        /** The candidates left. */
+        private final List<ObjectId> _candidates;
+    }
+
+    /** A bisection started on the branch BRANCH. */
+    Bisect(String branch) {
+        _branch = branch;
+    }
+
+    /** Return the state file of a bisection of the repository in
+     *  GITLETDIR. */
+    static StateFile file(File gitletDir) {
+        return new StateFile(Utils.join(gitletDir, "bisect"), "bisect", 1);
+    }
+
+    /** Return the bisection under way in the repository in GITLETDIR, or
+     *  null if there is none. */
+    static Bisect read(File gitletDir) {
+        byte[] contents = file(gitletDir).read();
+        if (contents == null) {
+            return null;
+        }
+        Bisect result = null;
+        for (String line : new String(contents, StandardCharsets.UTF_8)
+                 .split("\n")) {
+            int space = line.indexOf(' ');
+            String kind = line.substring(0, Math.max(space, 0));
+            String value = line.substring(space + 1);
+            if (kind.equals("branch")) {
+                result = new Bisect(value);
+            } else if (result != null && ObjectId.isHex(value)) {
+                result.mark(kind, ObjectId.fromHex(value));
+            }
+        }
+        return result;
+    }
+
+    /** Save this as the bisection of the repository in GITLETDIR. */
+    void write(File gitletDir) {
+        StringBuilder text = new StringBuilder();
+        text.append("branch ").append(_branch).append('\n');
+        if (_bad != null) {
+            text.append("bad ").append(_bad).append('\n');
+        }
+        for (ObjectId id : _good) {
+            text.append("good ").append(id).append('\n');
+        }
+        for (ObjectId id : _skipped) {
+            text.append("skip ").append(id).append('\n');
+        }
+        file(gitletDir).write(text.toString()
+                              .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** End the bisection of the repository in GITLETDIR. */
+    static void delete(File gitletDir) {
+        Utils.join(gitletDir, "bisect").delete();
+    }
+
+    /** Return the branch the bisection started on. */
+    String branch() {
+        return _branch;
+    }
+
+    /** Return true iff there are a bad commit and a good one, so that
+     *  there are candidates to test. */
+    boolean ready() {
+        return _bad != null && !_good.isEmpty();
+    }
+
+    /** Mark the commit ID as KIND: "bad", "good" or "skip".  A new bad
+     *  commit replaces the old one. */
+    void mark(String kind, ObjectId id) {
+        switch (kind) {
+        case "bad":
+            _bad = id;
+            break;
+        case "good":
+            _good.add(id);
+            break;
+        case "skip":
+            _skipped.add(id);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown mark: " + kind);
+        }
+    }
+
+    /** Return the next step, or null if the bad commit is an ancestor of
+     *  a good one.  Parents and the ancestors of the good commits are
+     *  taken from GRAPH; only commits made since it was written are read,
+     *  with COMMITS.  The bisection must be ready. */
+    Step next(CommitGraph graph, Function<ObjectId, Commit> commits) {
+        Function<ObjectId, List<ObjectId>> parents = id -> {
+            List<ObjectId> inGraph = graph.parents(id);
+            return inGraph != null ? inGraph : parents(commits.apply(id));
+        };
+        Predicate<ObjectId> good = goodAncestors(graph, parents);
+        if (good.test(_bad)) {
+            return null;
+        }
+        List<ObjectId> order = new ArrayList<>();
+        Map<ObjectId, Integer> index = new HashMap<>();
+        Map<ObjectId, List<ObjectId>> parentsOf = new HashMap<>();
+        Deque<ObjectId> stack = new ArrayDeque<>();
+        stack.push(_bad);
+        while (!stack.isEmpty()) {
+            ObjectId id = stack.peek();
+            if (index.containsKey(id)) {
+                stack.pop();
+            } else if (!parentsOf.containsKey(id)) {
+                List<ObjectId> candidates = new ArrayList<>(2);
+                for (ObjectId parent : parents.apply(id)) {
+                    if (!good.test(parent)) {
+                        candidates.add(parent);
+                        if (!index.containsKey(parent)) {
+                            stack.push(parent);
+                        }
+                    }
+                }
+                parentsOf.put(id, candidates);
+            } else {
+                stack.pop();
+                index.put(id, order.size());
+                order.add(id);
+            }
+        }
+        int n = order.size();
+        if (n == 1) {
+            return new Step(_bad, true, 0, order);
+        }
+        int[] children = new int[n];
+        for (List<ObjectId> ps : parentsOf.values()) {
+            for (ObjectId parent : ps) {
+                children[index.get(parent)] += 1;
+            }
+        }
+        Bitmap[] reach = new Bitmap[n];
+        ObjectId best = null;
+        int bestReach = 0;
+        for (int i = 0; i < n; i += 1) {
+            ObjectId id = order.get(i);
+            reach[i] = new Bitmap();
+            reach[i].add(i);
+            for (ObjectId parent : parentsOf.get(id)) {
+                int j = index.get(parent);
+                reach[i].or(reach[j]);
+                children[j] -= 1;
+                if (children[j] == 0) {
+                    reach[j] = null;
+                }
+            }
+            int r = (int) reach[i].cardinality();
+            if (!id.equals(_bad) && !_skipped.contains(id)
+                && Math.min(r, n - r) > Math.min(bestReach, n - bestReach)) {
+                best = id;
+                bestReach = r;
+            }
+        }
+        if (best == null) {
+            return new Step(null, false, n - 1, order);
+        }
+        return new Step(best, false, Math.max(bestReach, n - bestReach) - 1,
+                        order);
+    }
+
+    /** Return a test of whether a commit is a good commit or one of its
+     *  ancestors.  The ancestors in GRAPH are the union of the good
+     *  commits' bitmaps there; those made since, and those beyond the
+     *  commits whose parents are outside GRAPH, are walked with
+     *  PARENTS. */
+    private Predicate<ObjectId> goodAncestors(CommitGraph graph,
+                                              Function<ObjectId,
+                                              List<ObjectId>> parents) {
+        Bitmap inGraph = new Bitmap();
+        Set<ObjectId> loose = new HashSet<>();
+        Deque<ObjectId> pending = new ArrayDeque<>(_good);
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            Bitmap reach = graph.reachable(id);
+            if (reach != null) {
+                inGraph.or(reach);
+                for (ObjectId edge : graph.boundary(reach)) {
+                    pending.addAll(parents.apply(edge));
+                }
+            } else if (loose.add(id)) {
+                for (ObjectId parent : parents.apply(id)) {
+                    pending.push(parent);
+                }
+            }
+        }
+        return id -> {
+            if (loose.contains(id)) {
+                return true;
+            }
+            int pos = graph.position(id);
+            return pos >= 0 && inGraph.contains(pos);
+        };
+    }
+
+    /** Return the ids of the parents of COMMIT, none if it is null. */
+    private static List<ObjectId> parents(Commit commit) {
+        List<ObjectId> result = new ArrayList<>(2);
+        if (commit != null && commit.getParentHash() != null) {
+            result.add(commit.getParentHash());
+        }
+        if (commit != null && commit.getSecondParentHash() != null) {
+            result.add(commit.getSecondParentHash());
+        }
+        return result;
+    }
+
+    /** The branch the bisection started on. */
+    private final String _branch;
+
+    /** The bad commit, or null if none is known yet. */
+    private ObjectId _bad;
+
+    /** The good commits, in the order marked. */
+    private final Set<ObjectId> _good = new LinkedHashSet<>();
+
+    /** The skipped commits, in the order marked. */
+    private final Set<ObjectId> _skipped = new LinkedHashSet<>();
+}
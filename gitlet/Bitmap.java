@@ -0,0 +1,322 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/** A compressed set of non-negative ints, laid out as in Roaring bitmaps.
+ *  The set is split into chunks of 65536 values sharing their high 16
+ *  bits.  A chunk with at most ARRAY_MAX members holds their low bits as
+ *  a sorted array of chars; a fuller chunk holds a bitset of 1024 longs.
+ *  Sparse sets thus cost about two bytes a member and dense ones about
+ *  one bit, and unions and differences work a chunk at a time.
+ *  @author Duc Nguyen
+ */
+class Bitmap {
+
+    /** Most members a chunk holds as an array. */
+    static final int ARRAY_MAX = 4096;
+
+    /** Number of longs in a bitset chunk. */
+    private static final int WORDS = 1 << 10;
+
+    /** An empty set. */
+    Bitmap() {
+        _keys = new char[4];
+        _chunks = new Object[4];
+        _cards = new int[4];
+    }
+
+    /** A copy of OTHER. */
+    Bitmap(Bitmap other) {
+        _size = other._size;
+        _keys = Arrays.copyOf(other._keys, Math.max(_size, 4));
+        _cards = Arrays.copyOf(other._cards, Math.max(_size, 4));
+        _chunks = new Object[Math.max(_size, 4)];
+        for (int i = 0; i < _size; i += 1) {
+            _chunks[i] = copy(other._chunks[i]);
+        }
+    }
+
+    /** Add X, which must be non-negative. */
+    void add(int x) {
+        char key = (char) (x >>> 16);
+        char low = (char) x;
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, key, new char[] { low }, 1);
+            return;
+        }
+        if (_chunks[i] instanceof long[]) {
+            long[] bits = (long[]) _chunks[i];
+            long bit = 1L << low;
+            if ((bits[low >>> 6] & bit) == 0) {
+                bits[low >>> 6] |= bit;
+                _cards[i] += 1;
+            }
+            return;
+        }
+        char[] array = (char[]) _chunks[i];
+        int j = Arrays.binarySearch(array, 0, _cards[i], low);
+        if (j >= 0) {
+            return;
+        }
+        j = -j - 1;
+        int card = _cards[i];
+        if (card == ARRAY_MAX) {
+            long[] bits = toBits(array, card);
+            bits[low >>> 6] |= 1L << low;
+            _chunks[i] = bits;
+        } else {
+            if (card == array.length) {
+                array = Arrays.copyOf(array, Math.min(2 * card, ARRAY_MAX));
+                _chunks[i] = array;
+            }
+            System.arraycopy(array, j, array, j + 1, card - j);
+            array[j] = low;
+        }
+        _cards[i] = card + 1;
+    }
+
+    /** Return true iff X is a member. */
+    boolean contains(int x) {
+        int i = find((char) (x >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) x;
+        if (_chunks[i] instanceof long[]) {
+            return (((long[]) _chunks[i])[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) _chunks[i], 0, _cards[i],
+                                   low) >= 0;
+    }
+
+    /** Return the number of members. */
+    long cardinality() {
+        long n = 0;
+        for (int i = 0; i < _size; i += 1) {
+            n += _cards[i];
+        }
+        return n;
+    }
+
+    /** Return true iff there are no members. */
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /** Add every member of OTHER to this set. */
+    void or(Bitmap other) {
+        for (int k = 0; k < other._size; k += 1) {
+            char key = other._keys[k];
+            int i = find(key);
+            if (i < 0) {
+                insert(-i - 1, key, copy(other._chunks[k]), other._cards[k]);
+                continue;
+            }
+            long[] bits = bits(i);
+            if (other._chunks[k] instanceof long[]) {
+                long[] theirs = (long[]) other._chunks[k];
+                for (int w = 0; w < WORDS; w += 1) {
+                    bits[w] |= theirs[w];
+                }
+            } else {
+                char[] theirs = (char[]) other._chunks[k];
+                for (int j = 0; j < other._cards[k]; j += 1) {
+                    bits[theirs[j] >>> 6] |= 1L << theirs[j];
+                }
+            }
+            settle(i, bits);
+        }
+    }
+
+    /** Remove every member of OTHER from this set. */
+    void andNot(Bitmap other) {
+        for (int k = 0; k < other._size; k += 1) {
+            int i = find(other._keys[k]);
+            if (i < 0) {
+                continue;
+            }
+            long[] bits = bits(i);
+            if (other._chunks[k] instanceof long[]) {
+                long[] theirs = (long[]) other._chunks[k];
+                for (int w = 0; w < WORDS; w += 1) {
+                    bits[w] &= ~theirs[w];
+                }
+            } else {
+                char[] theirs = (char[]) other._chunks[k];
+                for (int j = 0; j < other._cards[k]; j += 1) {
+                    bits[theirs[j] >>> 6] &= ~(1L << theirs[j]);
+                }
+            }
+            settle(i, bits);
+        }
+        int live = 0;
+        for (int i = 0; i < _size; i += 1) {
+            if (_cards[i] > 0) {
+                _keys[live] = _keys[i];
+                _chunks[live] = _chunks[i];
+                _cards[live] = _cards[i];
+                live += 1;
+            }
+        }
+        Arrays.fill(_chunks, live, _size, null);
+        _size = live;
+    }
+
+    /** Call ACTION on each member, in increasing order. */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < _size; i += 1) {
+            int high = _keys[i] << 16;
+            if (_chunks[i] instanceof long[]) {
+                long[] bits = (long[]) _chunks[i];
+                for (int w = 0; w < WORDS; w += 1) {
+                    for (long word = bits[w]; word != 0;
+                         word &= word - 1) {
+                        action.accept(high | (w << 6)
+                                      | Long.numberOfTrailingZeros(word));
+                    }
+                }
+            } else {
+                char[] array = (char[]) _chunks[i];
+                for (int j = 0; j < _cards[i]; j += 1) {
+                    action.accept(high | array[j]);
+                }
+            }
+        }
+    }
+
+    /** Write this set to OUT: the number of chunks, then for each its
+     *  key, cardinality and either its array or its bitset. */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(_size);
+        for (int i = 0; i < _size; i += 1) {
+            out.writeChar(_keys[i]);
+            out.writeInt(_cards[i]);
+            if (_chunks[i] instanceof long[]) {
+                for (long word : (long[]) _chunks[i]) {
+                    out.writeLong(word);
+                }
+            } else {
+                char[] array = (char[]) _chunks[i];
+                for (int j = 0; j < _cards[i]; j += 1) {
+                    out.writeChar(array[j]);
+                }
+            }
+        }
+    }
+
+    /** Return the set written by writeTo to IN. */
+    static Bitmap readFrom(DataInput in) throws IOException {
+        Bitmap result = new Bitmap();
+        int n = in.readInt();
+        for (int i = 0; i < n; i += 1) {
+            char key = in.readChar();
+            int card = in.readInt();
+            Object chunk;
+            if (card > ARRAY_MAX) {
+                long[] bits = new long[WORDS];
+                for (int w = 0; w < WORDS; w += 1) {
+                    bits[w] = in.readLong();
+                }
+                chunk = bits;
+            } else {
+                char[] array = new char[card];
+                for (int j = 0; j < card; j += 1) {
+                    array[j] = in.readChar();
+                }
+                chunk = array;
+            }
+            result.insert(i, key, chunk, card);
+        }
+        return result;
+    }
+
+    /** Return the position of the chunk with key KEY, or -(P + 1) if
+     *  there is none and it would go at position P. */
+    private int find(char key) {
+        return Arrays.binarySearch(_keys, 0, _size, key);
+    }
+
+    /** Insert CHUNK, with key KEY and CARD members, at position I. */
+    private void insert(int i, char key, Object chunk, int card) {
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, 2 * _size);
+            _chunks = Arrays.copyOf(_chunks, 2 * _size);
+            _cards = Arrays.copyOf(_cards, 2 * _size);
+        }
+        System.arraycopy(_keys, i, _keys, i + 1, _size - i);
+        System.arraycopy(_chunks, i, _chunks, i + 1, _size - i);
+        System.arraycopy(_cards, i, _cards, i + 1, _size - i);
+        _keys[i] = key;
+        _chunks[i] = chunk;
+        _cards[i] = card;
+        _size += 1;
+    }
+
+    /** Return chunk I as a bitset that may be modified and then passed
+     *  to settle. */
+    private long[] bits(int i) {
+        if (_chunks[i] instanceof long[]) {
+            return (long[]) _chunks[i];
+        }
+        return toBits((char[]) _chunks[i], _cards[i]);
+    }
+
+    /** Make BITS the contents of chunk I, as an array if it has become
+     *  sparse enough. */
+    private void settle(int i, long[] bits) {
+        int card = 0;
+        for (long word : bits) {
+            card += Long.bitCount(word);
+        }
+        _cards[i] = card;
+        if (card > ARRAY_MAX) {
+            _chunks[i] = bits;
+            return;
+        }
+        char[] array = new char[card];
+        int j = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            for (long word = bits[w]; word != 0; word &= word - 1) {
+                array[j] = (char) ((w << 6)
+                                   | Long.numberOfTrailingZeros(word));
+                j += 1;
+            }
+        }
+        _chunks[i] = array;
+    }
+
+    /** Return a bitset holding the first CARD values of ARRAY. */
+    private static long[] toBits(char[] array, int card) {
+        long[] bits = new long[WORDS];
+        for (int j = 0; j < card; j += 1) {
+            bits[array[j] >>> 6] |= 1L << array[j];
+        }
+        return bits;
+    }
+
+    /** Return a copy of CHUNK. */
+    private static Object copy(Object chunk) {
+        if (chunk instanceof long[]) {
+            return ((long[]) chunk).clone();
+        }
+        return ((char[]) chunk).clone();
+    }
+
+    /** High 16 bits of the members of each chunk, in increasing order. */
+    private char[] _keys;
+
+    /** The chunks: a char[] of sorted low bits or a long[] bitset. */
+    private Object[] _chunks;
+
+    /** Number of members of each chunk. */
+    private int[] _cards;
+
+    /** Number of chunks. */
+    private int _size;
+}
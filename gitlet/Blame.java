@@ -0,0 +1,229 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/** Attributes each line of a file to the commit that last changed it.
+ *  The history is walked back from the commit asked about, through both
+ *  parents of merges.  A commit whose version of the file is that of one
+ *  of its parents takes that parent's attribution without diffing
+ *  anything.  Otherwise its version is diffed against each parent's, and
+ *  lines kept from a parent take that parent's attribution while the
+ *  rest are the commit's own.  The attribution of every commit that had
+ *  to be diffed, and of the commit asked about, is cached on disk in
+ *  .gitlet/blame, keyed by commit and file, so that blaming the file
+ *  again, or after a few more commits, stops the walk there.  Commits
+ *  are immutable, so cached entries never go stale; gc drops the entries
+ *  of commits it deletes.
+ *  @author Duc Nguyen
+ */
+class Blame {
+
+    /** A blamer for the repository in GITLETDIR, reading commits by id
+     *  with COMMITS, which returns null for missing commits. */
+    Blame(File gitletDir, Function<ObjectId, Commit> commits) {
+        _cacheDir = Utils.join(gitletDir, "blame");
+        _blobs = new BlobStore(gitletDir);
+        _commits = commits;
+    }
+
+    /** Return, for each line of FILE as commit HEAD has it, the id of the
+     *  commit that introduced that line.  FILE must be tracked by HEAD. */
+    ObjectId[] blame(Commit head, String file) {
+        Map<ObjectId, ObjectId[]> done = new HashMap<>();
+        Deque<Commit> stack = new ArrayDeque<>();
+        stack.push(head);
+        while (!stack.isEmpty()) {
+            Commit commit = stack.peek();
+            if (done.containsKey(commit.getID())) {
+                stack.pop();
+                continue;
+            }
+            ObjectId[] cached = readCache(commit.getID(), file);
+            if (cached != null) {
+                done.put(commit.getID(), cached);
+                stack.pop();
+                continue;
+            }
+            List<Commit> parents = parents(commit, file);
+            boolean ready = true;
+            for (Commit parent : parents) {
+                if (!done.containsKey(parent.getID())) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            stack.pop();
+            ObjectId[] lines = attribute(commit, file, parents, done);
+            done.put(commit.getID(), lines);
+            boolean inherited = !parents.isEmpty()
+                && lines == done.get(parents.get(0).getID());
+            if (commit == head || !inherited) {
+                writeCache(commit.getID(), file, lines);
+            }
+        }
+        return done.get(head.getID());
+    }
+
+    /** Return the parents of COMMIT whose attribution of FILE that of
+     *  COMMIT depends on: the first parent with the same version of FILE
+     *  if there is one, and otherwise every stored parent tracking it. */
+    private List<Commit> parents(Commit commit, String file) {
+        List<Commit> result = new ArrayList<>();
+        for (ObjectId id : new ObjectId[] { commit.getParentHash(),
+                                            commit.getSecondParentHash() }) {
+            Commit parent = id == null ? null : _commits.apply(id);
+            if (parent == null || !parent.isTracked(file)) {
+                continue;
+            }
+            if (parent.getBlob(file).equals(commit.getBlob(file))) {
+                result.clear();
+                result.add(parent);
+                break;
+            }
+            result.add(parent);
+        }
+        return result;
+    }
+
+    /** Return the attribution of the lines of FILE in COMMIT, given in
+     *  DONE the attributions of PARENTS, as chosen by parents. */
+    private ObjectId[] attribute(Commit commit, String file,
+                                 List<Commit> parents,
+                                 Map<ObjectId, ObjectId[]> done) {
+        if (parents.size() == 1 && parents.get(0).getBlob(file)
+            .equals(commit.getBlob(file))) {
+            return done.get(parents.get(0).getID());
+        }
+        byte[] contents = contents(commit.getBlob(file));
+        ObjectId[] lines = new ObjectId[LineDiff.lineCount(contents)];
+        for (Commit parent : parents) {
+            ObjectId[] theirs = done.get(parent.getID());
+            int[] matches = new LineDiff(contents(parent.getBlob(file)),
+                                         contents).matches();
+            for (int i = 0; i < lines.length; i += 1) {
+                if (lines[i] == null && matches[i] >= 0) {
+                    lines[i] = theirs[matches[i]];
+                }
+            }
+        }
+        for (int i = 0; i < lines.length; i += 1) {
+            if (lines[i] == null) {
+                lines[i] = commit.getID();
+            }
+        }
+        return lines;
+    }
+
+    /** Return the contents of the blob with id BLOB. */
+    private byte[] contents(ObjectId blob) {
+        return _blobs.read(blob);
+    }
+
+    /** Return the cache file of FILE in commit COMMIT. */
+    private StateFile cacheFile(ObjectId commit, String file) {
+        ObjectId key = Utils.hash(file.getBytes(StandardCharsets.UTF_8));
+        return new StateFile(Utils.join(_cacheDir, commit.toString(),
+                                        key.toString()), "blame", 1);
+    }
+
+    /** Return the cached attribution of FILE in COMMIT, or null if there
+     *  is none.  The entry lists the distinct commits, then for each line
+     *  the position of its commit in that list. */
+    private ObjectId[] readCache(ObjectId commit, String file) {
+        byte[] contents = cacheFile(commit, file).read();
+        if (contents == null) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new
+            ByteArrayInputStream(contents));
+        try {
+            ObjectId[] commits = new ObjectId[in.readInt()];
+            byte[] raw = new byte[ObjectId.LENGTH];
+            for (int i = 0; i < commits.length; i += 1) {
+                in.readFully(raw);
+                commits[i] = ObjectId.fromBytes(raw, 0).intern();
+            }
+            ObjectId[] lines = new ObjectId[in.readInt()];
+            for (int i = 0; i < lines.length; i += 1) {
+                lines[i] = commits[in.readInt()];
+            }
+            return lines;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Cache LINES as the attribution of FILE in COMMIT. */
+    private void writeCache(ObjectId commit, String file, ObjectId[] lines) {
+        Map<ObjectId, Integer> positions = new HashMap<>();
+        List<ObjectId> commits = new ArrayList<>();
+        for (ObjectId id : lines) {
+            if (positions.putIfAbsent(id, commits.size()) == null) {
+                commits.add(id);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            byte[] raw = new byte[ObjectId.LENGTH];
+            out.writeInt(commits.size());
+            for (ObjectId id : commits) {
+                id.copyTo(raw, 0);
+                out.write(raw);
+            }
+            out.writeInt(lines.length);
+            for (ObjectId id : lines) {
+                out.writeInt(positions.get(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File dir = Utils.join(_cacheDir, commit.toString());
+        dir.mkdirs();
+        cacheFile(commit, file).write(bytes.toByteArray());
+    }
+
+    /** Delete the cached attributions of commits no longer stored in the
+     *  repository in GITLETDIR. */
+    static void prune(File gitletDir) {
+        File cacheDir = Utils.join(gitletDir, "blame");
+        File commits = Utils.join(gitletDir, "commits");
+        String[] names = cacheDir.list();
+        for (String name : names == null ? new String[0] : names) {
+            if (Utils.join(commits, name).exists()) {
+                continue;
+            }
+            File dir = Utils.join(cacheDir, name);
+            File[] entries = dir.listFiles();
+            for (File entry : entries == null ? new File[0] : entries) {
+                entry.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /** Directory of cached attributions. */
+    private final File _cacheDir;
+
+    /** The blobs. */
+    private final BlobStore _blobs;
+
+    /** Reads commits by id. */
+    private final Function<ObjectId, Commit> _commits;
+}
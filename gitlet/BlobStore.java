@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/** The blobs of a repository.  Each blob is kept under its SHA-1 in
+ *  .gitlet/blobs.  Small blobs are stored whole there; a blob of at least
+ *  CHUNK_THRESHOLD bytes is cut into chunks by Chunker, each stored under
+ *  its own SHA-1 in .gitlet/chunks, and its file in .gitlet/blobs is a
+ *  manifest listing them.  Versions of a large file that differ in a few
+ *  places then share all but a few chunks, and copying a blob to another
+ *  repository copies only the chunks it lacks.  A blob's id is the SHA-1
+ *  of its whole contents either way, so ids do not depend on how the
+ *  blob is stored.  Chunks are hashed and written in parallel.
+ *  @author Duc Nguyen
+ */
+class BlobStore {
+
+    /** Size from which blobs are stored as chunks. */
+    static final long CHUNK_THRESHOLD = 1 << 20;
+
+    /** The first line of a manifest.  A blob starting with it is always
+     *  stored as chunks, so that a stored file starting with it is always
+     *  a manifest. */
+    private static final byte[] MAGIC =
+        "gitlet-chunks 1\n".getBytes(StandardCharsets.UTF_8);
+
+    /** The chunks making up a blob stored as chunks. */
+    static final class Manifest {
+
+        /** A manifest of a blob of SIZE bytes made of the chunks with ids
+         *  CHUNKS, in order. */
+        Manifest(long size, ObjectId[] chunks) {
+            _size = size;
+            _chunks = chunks;
+        }
+
+        /** Return the size of the blob. */
+        long size() {
+            return _size;
+        }
+
+        /** Return the ids of the chunks, in order. */
+        ObjectId[] chunks() {
+            return _chunks;
+        }
+
+        /** Size of the blob. */
+        private final long _size;
+
+        /** Ids of the chunks, in order. */
+        private final ObjectId[] _chunks;
+    }
+
+    /** The blobs of the repository in GITLETDIR. */
+    BlobStore(File gitletDir) {
+        _blobs = Utils.join(gitletDir, "blobs");
+        _chunks = Utils.join(gitletDir, "chunks");
+    }
+
+    /** Return the file holding the blob or manifest with id ID. */
+    File file(ObjectId id) {
+        return Utils.join(_blobs, id.toString());
+    }
+
+    /** Return the file holding the chunk with id ID. */
+    File chunkFile(ObjectId id) {
+        return Utils.join(_chunks, id.toString());
+    }
+
+    /** Return true iff the blob with id ID is stored. */
+    boolean contains(ObjectId id) {
+        return file(id).exists();
+    }
+
+    /** Return the contents of the blob with id ID.  The array may be
+     *  shared and must not be modified. */
+    byte[] read(ObjectId id) {
+        byte[] stored = ObjectCache.readContents(file(id));
+        if (!isManifest(stored)) {
+            return stored;
+        }
+        Manifest manifest = parse(stored);
+        if (manifest.size() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("blob too large: " + id);
+        }
+        byte[] result = new byte[(int) manifest.size()];
+        int pos = 0;
+        for (ObjectId chunk : manifest.chunks()) {
+            byte[] contents = Utils.readContents(chunkFile(chunk));
+            System.arraycopy(contents, 0, result, pos, contents.length);
+            pos += contents.length;
+        }
+        return result;
+    }
+
+    /** Return the size of the blob with id ID. */
+    long size(ObjectId id) {
+        Manifest manifest = manifest(id);
+        return manifest == null ? file(id).length() : manifest.size();
+    }
+
+    /** Return the manifest of the blob with id ID, or null if it is
+     *  stored whole.  Only the start of a whole blob is read. */
+    Manifest manifest(ObjectId id) {
+        File file = file(id);
+        if (file.length() < MAGIC.length) {
+            return null;
+        }
+        byte[] start = new byte[MAGIC.length];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readFully(start);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!Arrays.equals(start, MAGIC)) {
+            return null;
+        }
+        return parse(ObjectCache.readContents(file));
+    }
+
+    /** Return the SHA-1 of the contents of the blob with id ID, which
+     *  equals ID unless the blob is damaged.  The contents are streamed,
+     *  chunk by chunk for a blob stored as chunks.  Throws
+     *  IllegalArgumentException if the blob or a chunk cannot be read. */
+    ObjectId rehash(ObjectId id) {
+        Manifest manifest = manifest(id);
+        if (manifest == null) {
+            return Utils.hash(file(id));
+        }
+        return Utils.hash(Arrays.stream(manifest.chunks())
+                          .map(this::chunkFile).toArray(File[]::new));
+    }
+
+    /** Store CONTENTS as the blob with id ID, unless it is stored
+     *  already. */
+    void write(ObjectId id, byte[] contents) {
+        if (contains(id)) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.wrap(contents);
+        if (contents.length < CHUNK_THRESHOLD && !isManifest(contents)) {
+            Utils.writeContents(file(id), (Object) contents);
+        } else {
+            writeChunks(id, data);
+        }
+    }
+
+    /** Store the contents of SOURCE as the blob with id ID, unless it is
+     *  stored already.  A large SOURCE is mapped rather than read. */
+    void write(ObjectId id, File source) {
+        if (contains(id)) {
+            return;
+        }
+        long size = source.length();
+        if (size < CHUNK_THRESHOLD) {
+            write(id, Utils.readContents(source));
+            return;
+        }
+        try (FileChannel in = FileChannel.open(source.toPath(),
+                                               StandardOpenOption.READ)) {
+            MappedByteBuffer data =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            writeChunks(id, data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy the blob with id ID to the repository whose blobs are TO,
+     *  unless it is there already.  Of a blob stored as chunks, only the
+     *  chunks TO lacks are copied.  Return the number of bytes copied. */
+    long copyTo(BlobStore to, ObjectId id) {
+        if (to.contains(id)) {
+            return 0;
+        }
+        long bytes = 0;
+        Manifest manifest = manifest(id);
+        if (manifest != null) {
+            to._chunks.mkdir();
+            for (ObjectId chunk : manifest.chunks()) {
+                if (!to.chunkFile(chunk).exists()) {
+                    bytes += copy(chunkFile(chunk), to.chunkFile(chunk));
+                }
+            }
+        }
+        return bytes + copy(file(id), to.file(id));
+    }
+
+    /** Cut the bytes of DATA into chunks, store those not yet stored,
+     *  and store their manifest as the blob with id ID. */
+    private void writeChunks(ObjectId id, ByteBuffer data) {
+        int[] ends = Chunker.cut(data);
+        ObjectId[] chunks = new ObjectId[ends.length];
+        _chunks.mkdir();
+        IntStream.range(0, ends.length).parallel().forEach(i -> {
+            ByteBuffer chunk = data.duplicate();
+            chunk.position(i == 0 ? 0 : ends[i - 1]).limit(ends[i]);
+            chunks[i] = Utils.hash(chunk.slice());
+            File file = chunkFile(chunks[i]);
+            if (!file.exists()) {
+                byte[] contents = new byte[ends[i] - chunk.position()];
+                chunk.get(contents);
+                Utils.writeContents(file, (Object) contents);
+            }
+        });
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(MAGIC);
+            out.writeLong(data.remaining());
+            out.writeInt(chunks.length);
+            byte[] raw = new byte[ObjectId.LENGTH];
+            for (ObjectId chunk : chunks) {
+                chunk.copyTo(raw, 0);
+                out.write(raw);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(file(id), (Object) bytes.toByteArray());
+    }
+
+    /** Return true iff STORED, the contents of a file in .gitlet/blobs,
+     *  is a manifest. */
+    private static boolean isManifest(byte[] stored) {
+        return stored.length >= MAGIC.length
+            && Arrays.equals(stored, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /** Return the manifest held in STORED. */
+    private static Manifest parse(byte[] stored) {
+        DataInputStream in = new DataInputStream(new
+            ByteArrayInputStream(stored, MAGIC.length,
+                                 stored.length - MAGIC.length));
+        try {
+            long size = in.readLong();
+            ObjectId[] chunks = new ObjectId[in.readInt()];
+            byte[] raw = new byte[ObjectId.LENGTH];
+            for (int i = 0; i < chunks.length; i += 1) {
+                in.readFully(raw);
+                chunks[i] = ObjectId.fromBytes(raw, 0);
+            }
+            return new Manifest(size, chunks);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy SOURCE to TARGET, returning the number of bytes copied. */
+    private static long copy(File source, File target) {
+        try {
+            Files.copy(source.toPath(), target.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            return source.length();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Directory of blobs and manifests. */
+    private final File _blobs;
+
+    /** Directory of chunks. */
+    private final File _chunks;
+}
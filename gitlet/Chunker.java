@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Cuts data into chunks at positions chosen by its content, as FastCDC
+ *  does, so that an edit to a large file changes only the chunks around
+ *  it and the rest are shared with earlier versions.  A gear hash, which
+ *  shifts left by one bit and adds a random value for each byte, is
+ *  rolled over the data, and a chunk ends where the bits of the hash
+ *  under a mask are all zero.  The mask has more bits until a chunk
+ *  reaches the average size and fewer after, which narrows the spread of
+ *  chunk sizes around the average; no chunk is cut before the minimum
+ *  size, whose bytes are skipped without hashing, or after the maximum.
+ *  @author Duc Nguyen
+ */
+class Chunker {
+
+    /** Least size of a chunk other than the last. */
+    static final int MIN_SIZE = 16 << 10;
+
+    /** Size chunks tend towards. */
+    static final int AVG_SIZE = 64 << 10;
+
+    /** Greatest size of a chunk. */
+    static final int MAX_SIZE = 256 << 10;
+
+    /** Return the end positions of the chunks of the bytes of DATA from
+     *  its position to its limit, in increasing order and relative to its
+     *  position.  DATA is not changed. */
+    static int[] cut(ByteBuffer data) {
+        int base = data.position();
+        int length = data.remaining();
+        int[] ends = new int[length / AVG_SIZE + 2];
+        int count = 0;
+        for (int start = 0; start < length; ) {
+            int end = next(data, base, start, length);
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, 2 * count);
+            }
+            ends[count] = end;
+            count += 1;
+            start = end;
+        }
+        return Arrays.copyOf(ends, count);
+    }
+
+    /** Return the end of the chunk of DATA starting at START, where the
+     *  data starts at BASE and is LENGTH bytes long. */
+    private static int next(ByteBuffer data, int base, int start,
+                            int length) {
+        int n = length - start;
+        if (n <= MIN_SIZE) {
+            return length;
+        }
+        n = Math.min(n, MAX_SIZE);
+        int normal = Math.min(n, AVG_SIZE);
+        long fp = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            fp = (fp << 1) + GEAR[data.get(base + start + i) & 0xff];
+            if ((fp & MASK_S) == 0) {
+                return start + i + 1;
+            }
+        }
+        for (; i < n; i += 1) {
+            fp = (fp << 1) + GEAR[data.get(base + start + i) & 0xff];
+            if ((fp & MASK_L) == 0) {
+                return start + i + 1;
+            }
+        }
+        return start + n;
+    }
+
+    /** Mask used before a chunk reaches the average size: two bits more
+     *  than the log of the average, so that cuts there are rarer.  The
+     *  top bits of the hash are used, since they depend on the most
+     *  bytes. */
+    private static final long MASK_S = -1L << (64 - 18);
+
+    /** Mask used after a chunk reaches the average size: two bits fewer
+     *  than the log of the average. */
+    private static final long MASK_L = -1L << (64 - 14);
+
+    /** The value added to the hash for each byte value, drawn from a
+     *  fixed seed so that every repository cuts the same data alike. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long x = 0;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            x += 0x9e3779b97f4a7c15L;
+            long z = x;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+}
@@ -1,19 +1,35 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
-import java.util.HashMap;
 import java.util.Date;
 import java.util.TimeZone;
 import java.text.DateFormat;
 
 /** Class that represents each commit of the control system.
+ * The header (message, time, parents, branch and length) is serialized
+ * as ordinary fields, and the file map after it as one block of bytes
+ * that is decoded only when the files are first asked for, so walks of
+ * the history that read only headers never build the maps.
  * @author Duc Nguyen
  */
 public class Commit implements Serializable {
 
+    /** Version of the serialized form, fixed so that a change to the
+     *  class is not silently taken for a new format.  Commits written
+     *  before ids were ObjectIds have another version and are not
+     *  read. */
+    private static final long serialVersionUID = -8696666966793150739L;
+
     /** The SHA-1 of this commit. */
-    private String _uniqueID;
+    private ObjectId _uniqueID;
 
     /** commit message. */
     private String _msg;
@@ -21,14 +37,19 @@ public class Commit implements Serializable {
     /** timestamp of this commit. */
     private String _timeStamp;
 
-    /** A mapping of file names to blob references. */
-    private HashMap<String, String> _filesToBlobs;
+    /** A mapping of file names to blob references, or null until
+     * decoded from _encodedFiles. */
+    private transient FileMap _filesToBlobs;
+
+    /** The encoded file map of a commit read from disk, or null once
+     * decoded. */
+    private transient byte[] _encodedFiles;
 
-    /** The SHA-1 of the first parent. */
-    private String _parentHash;
+    /** The SHA-1 of the first parent, or null for the initial commit. */
+    private ObjectId _parentHash;
 
-    /** The SHA-1 of the second parent. */
-    private String _secondParentHash;
+    /** The SHA-1 of the second parent, or null if this is not a merge. */
+    private ObjectId _secondParentHash;
 
     /** Current branch of this commit. */
     private String _activeBranch;
@@ -38,15 +59,15 @@ public class Commit implements Serializable {
 
     /** Constructor.
      * @param msg the log messsage.
-     * @param filesToBlobs the hashmap of files to blobs.
-     * @param firstParentHash SHA-1 of the first parent.
-     * @param secondParentHash SHA-1 of the second parent.
+     * @param filesToBlobs the map of files to blobs.
+     * @param firstParentHash SHA-1 of the first parent, or null.
+     * @param secondParentHash SHA-1 of the second parent, or null.
      * @param activeBranch current branch of this commit. */
-    public Commit(String msg, HashMap<String, String> filesToBlobs,
-                  String firstParentHash,
-                  String secondParentHash, String activeBranch) {
+    public Commit(String msg, FileMap filesToBlobs,
+                  ObjectId firstParentHash,
+                  ObjectId secondParentHash, String activeBranch) {
         _msg = msg;
-        _filesToBlobs = filesToBlobs;
+        _filesToBlobs = new FileMap(filesToBlobs);
         _parentHash = firstParentHash;
         Date currDate = new Date();
         DateFormat formatDate = new
@@ -54,15 +75,33 @@ public class Commit implements Serializable {
         formatDate.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
         _timeStamp = formatDate.format(currDate);
         byte[] thisToByte = Utils.serialize(this);
-        _uniqueID =  Utils.sha1((Object) thisToByte);
+        _uniqueID = Utils.hash(thisToByte);
         _parentHash = firstParentHash;
         _secondParentHash = secondParentHash;
         _activeBranch = activeBranch;
-        if (_parentHash.equals("") && _secondParentHash.equals("")) {
+        if (_parentHash == null && _secondParentHash == null) {
             _length = 0;
         }
     }
 
+    /** Copy constructor, for changing a commit shared through ObjectCache.
+     * @param other the commit to copy. */
+    public Commit(Commit other) {
+        _uniqueID = other._uniqueID;
+        _msg = other._msg;
+        _timeStamp = other._timeStamp;
+        synchronized (other) {
+            if (other._filesToBlobs != null) {
+                _filesToBlobs = new FileMap(other._filesToBlobs);
+            }
+            _encodedFiles = other._encodedFiles;
+        }
+        _parentHash = other._parentHash;
+        _secondParentHash = other._secondParentHash;
+        _activeBranch = other._activeBranch;
+        _length = other._length;
+    }
+
     /** Set active branch to BRANCH.
      * @param branch the branch to set this commit's branch to. */
     public void setBranch(String branch) {
@@ -71,7 +110,7 @@ public class Commit implements Serializable {
 
     /** Set second parent.
      * @param secondParentHash set the SHA-1 of the second parent. */
-    public void setSecondParent(String secondParentHash) {
+    public void setSecondParent(ObjectId secondParentHash) {
         _secondParentHash = secondParentHash;
     }
 
@@ -82,8 +121,8 @@ public class Commit implements Serializable {
     }
 
     /** Get the hash value of the current commit.
-     * @return String. */
-    public String getID() {
+     * @return ObjectId. */
+    public ObjectId getID() {
         return _uniqueID;
     }
 
@@ -106,20 +145,29 @@ public class Commit implements Serializable {
     }
 
     /** Get mapping of files to blob references.
-     * @return HashMap<String, String>. */
-    public HashMap<String, String> getFilesBlobsMap() {
+     * @return FileMap. */
+    public synchronized FileMap getFilesBlobsMap() {
+        if (_filesToBlobs == null) {
+            try {
+                _filesToBlobs = FileMap.readFrom(new DataInputStream(new
+                        ByteArrayInputStream(_encodedFiles)));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _encodedFiles = null;
+        }
         return _filesToBlobs;
     }
 
     /** Get hash value of first parent.
-     * @return String. */
-    public String getParentHash() {
+     * @return ObjectId, or null for the initial commit. */
+    public ObjectId getParentHash() {
         return _parentHash;
     }
 
     /** Get hash value of second parent.
-     * @return String. */
-    public String getSecondParentHash() {
+     * @return ObjectId, or null if this is not a merge. */
+    public ObjectId getSecondParentHash() {
         return _secondParentHash;
     }
 
@@ -131,28 +179,22 @@ public class Commit implements Serializable {
 
     /** Get a blob associated with a file.
      * @param fileName the file name.
-     * @return String. */
-    public String getBlob(String fileName) {
-        if (!_filesToBlobs.isEmpty() && _filesToBlobs.containsKey(fileName)) {
-            return _filesToBlobs.get(fileName);
-        }
-        return "";
+     * @return ObjectId, or null if the file is not tracked. */
+    public ObjectId getBlob(String fileName) {
+        return getFilesBlobsMap().get(fileName);
     }
 
     /** Check if a file is tracked in the current commit.
      * @param fileName the file name.
      * @return boolean. */
     public boolean isTracked(String fileName) {
-        if (!_filesToBlobs.isEmpty()) {
-            return _filesToBlobs.containsKey(fileName);
-        }
-        return false;
+        return getFilesBlobsMap().containsKey(fileName);
     }
 
     /** Track a file with FILENAME and SHA1.
      * @param fileName the file name.
      * @param sha1 the SHA-1 value associated with the file. */
-    public void track(String fileName, String sha1) {
+    public void track(String fileName, ObjectId sha1) {
         getFilesBlobsMap().put(fileName, sha1);
     }
 
@@ -176,14 +218,41 @@ public class Commit implements Serializable {
         } else {
             msg = _msg + "\n";
         }
-        if (getSecondParentHash().equals("")) {
+        if (getSecondParentHash() == null) {
             return start + commitID + date + msg;
         } else {
-            String firstParentSeven = getParentHash().substring(0, 7);
-            String secondParentSeven = getSecondParentHash().substring(0, 7);
+            String firstParentSeven =
+                getParentHash().toString().substring(0, 7);
+            String secondParentSeven =
+                getSecondParentHash().toString().substring(0, 7);
             String merge = "Merge: " + firstParentSeven + " "
                     + secondParentSeven + "\n";
             return start + commitID + merge + date + msg;
         }
     }
+
+    /** Write this commit's header fields, then its file map, to OUT.
+     * @param out the stream to write to. */
+    private synchronized void writeObject(ObjectOutputStream out)
+            throws IOException {
+        out.defaultWriteObject();
+        byte[] files = _encodedFiles;
+        if (files == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            _filesToBlobs.writeTo(new DataOutputStream(bytes));
+            files = bytes.toByteArray();
+        }
+        out.writeInt(files.length);
+        out.write(files);
+    }
+
+    /** Read a commit written by writeObject from IN, leaving its file map
+     * encoded.
+     * @param in the stream to read from. */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        _encodedFiles = new byte[in.readInt()];
+        in.readFully(_encodedFiles);
+    }
 }
@@ -0,0 +1,613 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/** The commit-graph file of a repository, .gitlet/commit-graph, written
+ *  by gc and by the commit-graph command.  It lists the stored commits
+ *  and blobs in increasing order of id, so that each has a position; for
+ *  every commit, the positions of its parents and of the blobs it tracks
+ *  that its first parent does not; and for selected commits, a Bitmap of
+ *  the positions of every commit and blob reachable from it.  Commits
+ *  and blobs share one numbering, commits first.
+ *
+ *  Bitmaps are stored for the commits the refs point to and for every
+ *  commit whose distance from the initial commit is a multiple of
+ *  SPACING, so the objects reachable from any commit in the file are
+ *  found by walking a few parents and combining their bitmaps.  Commits
+ *  made since the file was written are walked by reading them, as before
+ *  there was a file.  So are the parents of the few commits whose
+ *  parents were not stored when the file was written, which the file
+ *  lists, so that a walk does not stop short at them.
+ *
+ *  Each commit also has a Bloom filter of the paths it changes relative
+ *  to its first parent, so that a search for the commits touching a path
+ *  can pass over most of the others without reading them.  A filter has
+ *  BLOOM_BITS bits per changed path and is probed with BLOOM_HASHES
+ *  hashes; commits changing more than BLOOM_MAX paths have none.
+ *  @author Duc Nguyen
+ */
+class CommitGraph {
+
+    /** Name of the file within .gitlet. */
+    static final String FILE_NAME = "commit-graph";
+
+    /** Distance between commits with stored bitmaps along a history. */
+    static final int SPACING = 32;
+
+    /** Bits of a changed-path filter per path it holds. */
+    static final int BLOOM_BITS = 10;
+
+    /** Number of bits probed for a path in a changed-path filter. */
+    static final int BLOOM_HASHES = 7;
+
+    /** Most changed paths a commit's filter holds. */
+    static final int BLOOM_MAX = 512;
+
+    /** Marks the start of a commit-graph file. */
+    private static final int MAGIC = 0x47434733;
+
+    /** Parent position of a commit with no such parent in the file. */
+    private static final int NONE = -1;
+
+    /** A graph with no commits, used when there is no file. */
+    private CommitGraph() {
+        _commits = new ObjectId[0];
+        _blobs = new ObjectId[0];
+        _parents = new int[0];
+        _added = new int[0][];
+        _filters = new long[0][];
+        _bitmaps = new HashMap<>();
+        _outside = new int[0];
+    }
+
+    /** Return the graph stored in GITLETDIR, or an empty graph if there
+     *  is none or it cannot be read. */
+    static CommitGraph read(File gitletDir) {
+        File file = Utils.join(gitletDir, FILE_NAME);
+        if (!file.isFile()) {
+            return new CommitGraph();
+        }
+        try {
+            return decode(new DataInputStream(new ByteArrayInputStream(
+                ObjectCache.readContents(file))));
+        } catch (IOException | IllegalArgumentException excp) {
+            return new CommitGraph();
+        }
+    }
+
+    /** Write the graph of every commit and blob stored in GITLETDIR,
+     *  keeping bitmaps for the commits in TIPS, and return it. */
+    static CommitGraph write(File gitletDir, Collection<ObjectId> tips) {
+        CommitGraph graph = build(gitletDir, tips);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            graph.encode(new DataOutputStream(bytes));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(Utils.join(gitletDir, FILE_NAME),
+                            (Object) bytes.toByteArray());
+        return graph;
+    }
+
+    /** Return the number of commits in the graph. */
+    int commitCount() {
+        return _commits.length;
+    }
+
+    /** Return the number of stored bitmaps. */
+    int bitmapCount() {
+        return _bitmaps.size();
+    }
+
+    /** Return true iff the commit with id ID is in the graph. */
+    boolean contains(ObjectId id) {
+        return Arrays.binarySearch(_commits, id) >= 0;
+    }
+
+    /** Return the id of the object at position POS. */
+    ObjectId objectAt(int pos) {
+        return pos < _commits.length ? _commits[pos]
+            : _blobs[pos - _commits.length];
+    }
+
+    /** Return true iff POS is the position of a commit. */
+    boolean isCommit(int pos) {
+        return pos < _commits.length;
+    }
+
+    /** Return the positions of every commit and blob reachable from the
+     *  commit with id ID, including its own, or null if it is not in the
+     *  graph.  The result may be modified. */
+    Bitmap reachable(ObjectId id) {
+        int c = Arrays.binarySearch(_commits, id);
+        if (c < 0) {
+            return null;
+        }
+        Bitmap stored = _bitmaps.get(c);
+        if (stored != null) {
+            return new Bitmap(stored);
+        }
+        return walk(c);
+    }
+
+    /** Return true iff the commit ANCESTOR is DESCENDANT or one of its
+     *  ancestors.  Commits not in the graph are read with READ, and so
+     *  are the commits reachable in the graph with parents outside it,
+     *  through which ANCESTOR may be reached if it is not in the graph
+     *  or not reachable within it. */
+    boolean isAncestor(ObjectId ancestor, ObjectId descendant,
+                       Function<ObjectId, Commit> read) {
+        int target = Arrays.binarySearch(_commits, ancestor);
+        ArrayDeque<ObjectId> queue = new ArrayDeque<>();
+        Set<ObjectId> seen = new HashSet<>();
+        Set<ObjectId> crossed = new HashSet<>();
+        queue.add(descendant);
+        while (!queue.isEmpty()) {
+            ObjectId id = queue.poll();
+            if (id.equals(ancestor)) {
+                return true;
+            }
+            if (!seen.add(id)) {
+                continue;
+            }
+            Bitmap reach = reachable(id);
+            if (reach != null) {
+                if (target >= 0 && reach.contains(target)) {
+                    return true;
+                }
+                for (ObjectId edge : boundary(reach)) {
+                    if (crossed.add(edge)) {
+                        queueParents(read.apply(edge), queue);
+                    }
+                }
+                continue;
+            }
+            queueParents(read.apply(id), queue);
+        }
+        return false;
+    }
+
+    /** Return the ids of the commits among the positions REACH that have
+     *  a parent outside the graph. */
+    List<ObjectId> boundary(Bitmap reach) {
+        List<ObjectId> result = new ArrayList<>();
+        for (int c : _outside) {
+            if (reach.contains(c)) {
+                result.add(_commits[c]);
+            }
+        }
+        return result;
+    }
+
+    /** Add the ids of the parents of COMMIT, if it is not null, to
+     *  QUEUE. */
+    private static void queueParents(Commit commit,
+                                     ArrayDeque<ObjectId> queue) {
+        if (commit == null) {
+            return;
+        }
+        if (commit.getParentHash() != null) {
+            queue.add(commit.getParentHash());
+        }
+        if (commit.getSecondParentHash() != null) {
+            queue.add(commit.getSecondParentHash());
+        }
+    }
+
+
+    /** Return false if the commit with id ID is known not to change
+     *  PATH relative to its first parent, and true if it may, or if it
+     *  is not in the graph. */
+    boolean mayChange(ObjectId id, String path) {
+        int c = position(id);
+        if (c == NONE || _filters[c] == null) {
+            return true;
+        }
+        long[] filter = _filters[c];
+        long h = pathHash(path);
+        long bits = 64L * filter.length;
+        for (int i = 0; i < BLOOM_HASHES; i += 1) {
+            long bit = probe(h, i, bits);
+            if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the id of the first parent of the commit with id ID, or
+     *  null if it has none in the graph or is not in the graph.  Null
+     *  does not mean that the commit has no parent: its parent may be
+     *  outside the graph. */
+    ObjectId firstParent(ObjectId id) {
+        int c = position(id);
+        if (c == NONE || _parents[2 * c] == NONE) {
+            return null;
+        }
+        return _commits[_parents[2 * c]];
+    }
+
+    /** Return the ids of the parents of the commit with id ID, first
+     *  parent first, or null if it or one of its parents is not in the
+     *  graph. */
+    List<ObjectId> parents(ObjectId id) {
+        int c = position(id);
+        if (c == NONE || Arrays.binarySearch(_outside, c) >= 0) {
+            return null;
+        }
+        List<ObjectId> result = new ArrayList<>(2);
+        for (int p = 0; p < 2; p += 1) {
+            if (_parents[2 * c + p] != NONE) {
+                result.add(_commits[_parents[2 * c + p]]);
+            }
+        }
+        return result;
+    }
+
+    /** Return the ids of the commits reachable from FROM but not from
+     *  EXCEPT, or null if either is not in the graph. */
+    List<ObjectId> missing(ObjectId from, ObjectId except) {
+        Bitmap result = reachable(from);
+        Bitmap theirs = reachable(except);
+        if (result == null || theirs == null) {
+            return null;
+        }
+        result.andNot(theirs);
+        List<ObjectId> ids = new ArrayList<>();
+        result.forEach(pos -> {
+            if (isCommit(pos)) {
+                ids.add(_commits[pos]);
+            }
+        });
+        return ids;
+    }
+
+    /** Return the reachable set of commit C, walking its ancestors until
+     *  reaching commits with stored bitmaps. */
+    private Bitmap walk(int c) {
+        Bitmap result = new Bitmap();
+        BitSet seen = new BitSet(_commits.length);
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(c);
+        while (!stack.isEmpty()) {
+            int k = stack.pop();
+            if (seen.get(k)) {
+                continue;
+            }
+            seen.set(k);
+            Bitmap stored = _bitmaps.get(k);
+            if (stored != null && k != c) {
+                result.or(stored);
+                continue;
+            }
+            result.add(k);
+            for (int blob : _added[k]) {
+                result.add(_commits.length + blob);
+            }
+            for (int p = 0; p < 2; p += 1) {
+                int parent = _parents[2 * k + p];
+                if (parent != NONE) {
+                    stack.push(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the graph of the objects stored in GITLETDIR, with bitmaps
+     *  for TIPS and evenly spaced commits. */
+    private static CommitGraph build(File gitletDir,
+                                     Collection<ObjectId> tips) {
+        CommitGraph g = new CommitGraph();
+        File commitDir = Utils.join(gitletDir, "commits");
+        g._commits = ids(commitDir);
+        g._blobs = ids(Utils.join(gitletDir, "blobs"));
+        int n = g._commits.length;
+        Commit[] commits = Arrays.stream(g._commits).parallel()
+            .map(id -> ObjectCache.readObject(Utils.join(commitDir,
+                                                         id.toString()),
+                                              Commit.class))
+            .toArray(Commit[]::new);
+        g._parents = new int[2 * n];
+        g._added = new int[n][];
+        List<Integer> outside = new ArrayList<>();
+        for (int c = 0; c < n; c += 1) {
+            g._parents[2 * c] = g.position(commits[c].getParentHash());
+            g._parents[2 * c + 1] =
+                g.position(commits[c].getSecondParentHash());
+            if (g._parents[2 * c] == NONE
+                && commits[c].getParentHash() != null
+                || g._parents[2 * c + 1] == NONE
+                && commits[c].getSecondParentHash() != null) {
+                outside.add(c);
+            }
+        }
+        g._outside = outside.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.parallelSetAll(g._added, c -> g.added(commits, c));
+        g._filters = new long[n][];
+        Arrays.parallelSetAll(g._filters, c -> g.filter(commits, c));
+        BitSet selected = new BitSet(n);
+        for (ObjectId tip : tips) {
+            int c = g.position(tip);
+            if (c != NONE) {
+                selected.set(c);
+            }
+        }
+        for (int c = 0; c < n; c += 1) {
+            if (commits[c].getLength() % SPACING == 0) {
+                selected.set(c);
+            }
+        }
+        for (int c : g.topologicalOrder()) {
+            if (selected.get(c)) {
+                g._bitmaps.put(c, g.walk(c));
+            }
+        }
+        return g;
+    }
+
+    /** Return the positions of the blobs tracked by COMMITS[C] and not by
+     *  its first parent. */
+    private int[] added(Commit[] commits, int c) {
+        FileMap files = commits[c].getFilesBlobsMap();
+        int parent = _parents[2 * c];
+        FileMap parentFiles = parent == NONE ? null
+            : commits[parent].getFilesBlobsMap();
+        Set<Integer> result = new HashSet<>();
+        for (String name : files) {
+            ObjectId blob = files.get(name);
+            if (parentFiles == null || !blob.equals(parentFiles.get(name))) {
+                int b = Arrays.binarySearch(_blobs, blob);
+                if (b >= 0) {
+                    result.add(b);
+                }
+            }
+        }
+        return result.stream().mapToInt(Integer::intValue).sorted()
+            .toArray();
+    }
+
+    /** Return the changed-path filter of COMMITS[C], or null if it
+     *  changes more than BLOOM_MAX paths. */
+    private long[] filter(Commit[] commits, int c) {
+        FileMap files = commits[c].getFilesBlobsMap();
+        int parent = _parents[2 * c];
+        FileMap parentFiles = parent == NONE ? null
+            : commits[parent].getFilesBlobsMap();
+        List<String> changed = new ArrayList<>();
+        for (String name : files) {
+            if (parentFiles == null
+                || !files.get(name).equals(parentFiles.get(name))) {
+                changed.add(name);
+            }
+        }
+        if (parentFiles != null) {
+            for (String name : parentFiles) {
+                if (!files.containsKey(name)) {
+                    changed.add(name);
+                }
+            }
+        }
+        if (changed.size() > BLOOM_MAX) {
+            return null;
+        }
+        long[] filter = new long[Math.max(1, (changed.size() * BLOOM_BITS
+                                              + 63) / 64)];
+        long bits = 64L * filter.length;
+        for (String name : changed) {
+            long h = pathHash(name);
+            for (int i = 0; i < BLOOM_HASHES; i += 1) {
+                long bit = probe(h, i, bits);
+                filter[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        return filter;
+    }
+
+    /** Return a 64-bit hash of PATH, whose halves seed the probes of the
+     *  changed-path filters. */
+    private static long pathHash(String path) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (h ^ (h >>> 33)) | 1L << 32;
+    }
+
+    /** Return the bit set by probe I for a path with hash H in a filter
+     *  of BITS bits. */
+    private static long probe(long h, int i, long bits) {
+        return Integer.toUnsignedLong((int) h + i * (int) (h >>> 32)) % bits;
+    }
+
+    /** Return the commit positions with each commit after its parents. */
+    private int[] topologicalOrder() {
+        int n = _commits.length;
+        int[] order = new int[n];
+        int next = 0;
+        BitSet done = new BitSet(n);
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int root = 0; root < n; root += 1) {
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                int c = stack.peek();
+                if (done.get(c)) {
+                    stack.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (int p = 0; p < 2; p += 1) {
+                    int parent = _parents[2 * c + p];
+                    if (parent != NONE && !done.get(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    done.set(c);
+                    order[next] = c;
+                    next += 1;
+                }
+            }
+        }
+        return order;
+    }
+
+    /** Return the position of commit ID, or NONE, which is negative. */
+    int position(ObjectId id) {
+        if (id == null) {
+            return NONE;
+        }
+        int c = Arrays.binarySearch(_commits, id);
+        return c < 0 ? NONE : c;
+    }
+
+    /** Return the sorted ids of the objects stored in DIR. */
+    private static ObjectId[] ids(File dir) {
+        List<ObjectId> ids = Utils.plainFilenamesIn(dir).stream()
+            .filter(ObjectId::isHex).map(ObjectId::fromHex)
+            .collect(Collectors.toList());
+        return ids.toArray(new ObjectId[0]);
+    }
+
+    /** Write this graph to OUT. */
+    private void encode(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        writeIds(out, _commits);
+        writeIds(out, _blobs);
+        for (int c = 0; c < _commits.length; c += 1) {
+            out.writeInt(_parents[2 * c]);
+            out.writeInt(_parents[2 * c + 1]);
+            out.writeInt(_added[c].length);
+            for (int b : _added[c]) {
+                out.writeInt(b);
+            }
+        }
+        out.writeInt(_bitmaps.size());
+        for (Map.Entry<Integer, Bitmap> e : _bitmaps.entrySet()) {
+            out.writeInt(e.getKey());
+            e.getValue().writeTo(out);
+        }
+        for (long[] filter : _filters) {
+            out.writeInt(filter == null ? NONE : filter.length);
+            for (long word : filter == null ? new long[0] : filter) {
+                out.writeLong(word);
+            }
+        }
+        out.writeInt(_outside.length);
+        for (int c : _outside) {
+            out.writeInt(c);
+        }
+    }
+
+    /** Return the graph written by encode to IN. */
+    private static CommitGraph decode(DataInputStream in)
+        throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IllegalArgumentException("not a commit-graph");
+        }
+        CommitGraph g = new CommitGraph();
+        g._commits = readIds(in);
+        g._blobs = readIds(in);
+        int n = g._commits.length;
+        g._parents = new int[2 * n];
+        g._added = new int[n][];
+        for (int c = 0; c < n; c += 1) {
+            g._parents[2 * c] = in.readInt();
+            g._parents[2 * c + 1] = in.readInt();
+            g._added[c] = new int[in.readInt()];
+            for (int k = 0; k < g._added[c].length; k += 1) {
+                g._added[c][k] = in.readInt();
+            }
+        }
+        int bitmaps = in.readInt();
+        for (int k = 0; k < bitmaps; k += 1) {
+            int c = in.readInt();
+            g._bitmaps.put(c, Bitmap.readFrom(in));
+        }
+        g._filters = new long[n][];
+        for (int c = 0; c < n; c += 1) {
+            int words = in.readInt();
+            if (words != NONE) {
+                g._filters[c] = new long[words];
+                for (int k = 0; k < words; k += 1) {
+                    g._filters[c][k] = in.readLong();
+                }
+            }
+        }
+        g._outside = new int[in.readInt()];
+        for (int k = 0; k < g._outside.length; k += 1) {
+            g._outside[k] = in.readInt();
+        }
+        return g;
+    }
+
+    /** Write the number of IDS, then their bytes, to OUT. */
+    private static void writeIds(DataOutputStream out, ObjectId[] ids)
+        throws IOException {
+        byte[] raw = new byte[ObjectId.LENGTH];
+        out.writeInt(ids.length);
+        for (ObjectId id : ids) {
+            id.copyTo(raw, 0);
+            out.write(raw);
+        }
+    }
+
+    /** Return the ids written by writeIds to IN. */
+    private static ObjectId[] readIds(DataInputStream in)
+        throws IOException {
+        ObjectId[] ids = new ObjectId[in.readInt()];
+        byte[] raw = new byte[ObjectId.LENGTH];
+        for (int i = 0; i < ids.length; i += 1) {
+            in.readFully(raw);
+            ids[i] = ObjectId.fromBytes(raw, 0);
+        }
+        return ids;
+    }
+
+    /** Ids of the commits, in increasing order. */
+    private ObjectId[] _commits;
+
+    /** Ids of the blobs, in increasing order. */
+    private ObjectId[] _blobs;
+
+    /** Positions of the first and second parents of commit C at
+     *  2C and 2C + 1, or NONE. */
+    private int[] _parents;
+
+    /** Blob positions, relative to the first blob, tracked by each
+     *  commit and not by its first parent. */
+    private int[][] _added;
+
+    /** Changed-path filter of each commit, or null if it has none. */
+    private long[][] _filters;
+
+    /** Stored reachability bitmaps, by commit position. */
+    private Map<Integer, Bitmap> _bitmaps;
+
+    /** Positions, in increasing order, of the commits with a parent that
+     *  was not stored when the graph was written. */
+    private int[] _outside;
+}
@@ -1,22 +1,40 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.Serializable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /** Class represents the version-control system.
+ * Its state lives in separate files in .gitlet, each loaded when a
+ * command first needs it and saved only if the command changed it: the
+ * remotes in remotes, the staging area in index, and the current commit
+ * and branch in HEAD.
  * @author Duc Nguyen
  */
-public class ControlSystem implements Serializable {
+public class ControlSystem {
 
-    /** Current system's staging area. */
-    private StagingArea _stagingArea = new StagingArea();
+    /** Current system's staging area, or null until loaded. */
+    private StagingArea _stagingArea;
 
     /** Path to current working directory. */
     private final String _workDir = System.getProperty("user.dir");
@@ -36,37 +54,219 @@ public class ControlSystem implements Serializable {
     private final File _pathBlobs =
             Utils.join(_pathGitlet, "blobs");
 
-    /** save remote repo and its directory. */
-    private HashMap<String, String> _repos = new HashMap<>();
+    /** The blobs, some stored as chunks. */
+    private final BlobStore _blobStore = new BlobStore(_pathGitlet);
+
+    /** The branches and tags. */
+    private final Refs _refs = new Refs(_pathGitlet);
+
+    /** The history of HEAD and the branches. */
+    private final Reflog _reflog = new Reflog(_pathGitlet);
+
+    /** save remote repo and its directory, or null until loaded. */
+    private TreeMap<String, String> _repos;
+
+    /** True if the remotes have changed since they were loaded. */
+    private boolean _reposChanged;
+
+    /** The current commit, or null until loaded. */
+    private Commit _head;
+
+    /** The sparse-checkout patterns, read when first needed. */
+    private SparseCheckout _sparse;
+
+    /** The commit-graph, read when first needed. */
+    private CommitGraph _graph;
+
+    /** A reference to an entry of a reflog: REF@{N}, or @{N} for
+     * HEAD. */
+    private static final Pattern REFLOG_ENTRY =
+            Pattern.compile("(.*)@\\{(\\d{1,9})\\}");
 
     /** adequate number of characters to not use abbreviation. */
     private final int _adequate = 40;
 
-    /** Constructor. */
-    public ControlSystem() {
-        File newSystem = new File(_pathGitlet + "/" + "SYSTEM");
-        if (newSystem.exists()) {
-            ControlSystem ctrlSys =
-                    Utils.readObject(new File(_pathGitlet
-                            + "/" + "SYSTEM"), ControlSystem.class);
-            cloneSystem(ctrlSys);
+    /** Largest combined size, in bytes, of the two versions of a file
+     * for diff to find their differences ahead of writing them. */
+    private static final long DIFF_BUFFER = 1 << 20;
+
+    /** Save the state that this command changed into .gitlet. */
+    public void save() {
+        if (_reposChanged) {
+            StringBuilder remotes = new StringBuilder();
+            for (Map.Entry<String, String> e : _repos.entrySet()) {
+                remotes.append(e.getKey()).append('\t')
+                        .append(e.getValue()).append('\n');
+            }
+            remotesFile().write(remotes.toString()
+                    .getBytes(StandardCharsets.UTF_8));
+            _reposChanged = false;
+        }
+        if (_stagingArea != null) {
+            stagingArea().write(StagingArea.file(_pathGitlet));
+        }
+    }
+
+    /** Get the state file holding the remotes.
+     * @return StateFile. */
+    private StateFile remotesFile() {
+        return new StateFile(Utils.join(_pathGitlet, "remotes"),
+                "remotes", 1);
+    }
+
+    /** Get the remotes, mapping their names to their directories.
+     * @return TreeMap<String, String>. */
+    private TreeMap<String, String> repos() {
+        if (_repos == null) {
+            _repos = new TreeMap<>();
+            byte[] contents = remotesFile().read();
+            if (contents != null) {
+                String text = new String(contents, StandardCharsets.UTF_8);
+                for (String line : text.split("\n")) {
+                    int tab = line.indexOf('\t');
+                    if (tab >= 0) {
+                        _repos.put(line.substring(0, tab),
+                                line.substring(tab + 1));
+                    }
+                }
+            }
+        }
+        return _repos;
+    }
+
+    /** Get the staging area.
+     * @return StagingArea. */
+    private StagingArea stagingArea() {
+        if (_stagingArea == null) {
+            _stagingArea = StagingArea.read(StagingArea.file(_pathGitlet));
+        }
+        return _stagingArea;
+    }
+
+    /** Get the state file holding HEAD of the repository in GITLETDIR.
+     * @param gitletDir the .gitlet directory.
+     * @return StateFile. */
+    static StateFile headFile(File gitletDir) {
+        return new StateFile(Utils.join(gitletDir, "HEAD"), "HEAD", 1);
+    }
+
+    /** Get the current commit of the repository in GITLETDIR, which
+     * also names the current branch.
+     * @param gitletDir the .gitlet directory.
+     * @return Commit. */
+    static Commit readHead(File gitletDir) {
+        byte[] contents = headFile(gitletDir).read();
+        if (contents == null) {
+            throw new IllegalArgumentException(isOldFormat(gitletDir)
+                ? "repository format too old" : "no HEAD");
+        }
+        return Utils.deserialize(contents, Commit.class);
+    }
+
+    /** Make COMMIT the current commit of the repository in GITLETDIR.
+     * @param gitletDir the .gitlet directory.
+     * @param commit the new current commit. */
+    static void writeHead(File gitletDir, Commit commit) {
+        headFile(gitletDir).write(Utils.serialize(commit));
+    }
+
+    /** Make COMMIT the current commit, recording the move in the reflog
+     * of HEAD with REASON.
+     * @param commit the new current commit.
+     * @param reason why HEAD moved. */
+    private void setHead(Commit commit, String reason) {
+        ObjectId old = headFile(_pathGitlet).exists()
+                ? getCurrentCommit().getID() : null;
+        writeHead(_pathGitlet, commit);
+        _head = commit;
+        _reflog.append("HEAD", old, commit.getID(), reason);
+    }
+
+    /** Make COMMIT, a copy naming the branch NAME, the loose file of that
+     * branch, recording the move in its reflog with REASON.
+     * @param name the branch name.
+     * @param commit the new head of the branch.
+     * @param reason why the branch moved. */
+    private void writeBranch(String name, Commit commit, String reason) {
+        Commit old = _refs.branch(name, this::findCommit);
+        _pathBranches.mkdir();
+        Utils.writeObject(_refs.branchFile(name), commit);
+        _reflog.append(name, old == null ? null : old.getID(),
+                commit.getID(), reason);
+    }
+
+    /** Get the writer that restores blobs into the working directory.
+     * @return Materializer. */
+    private Materializer materializer() {
+        return new Materializer(_blobStore, new File(_workDir), _pathGitlet);
+    }
+
+    /** Get the contents of the blob with SHA-1 BLOB.
+     * @param blob the SHA-1 of the blob.
+     * @return String. */
+    private String readBlob(ObjectId blob) {
+        return new String(_blobStore.read(blob), StandardCharsets.UTF_8);
+    }
+
+    /** Get the commit-graph of this repository.
+     * @return CommitGraph. */
+    private CommitGraph graph() {
+        if (_graph == null) {
+            _graph = CommitGraph.read(_pathGitlet);
+        }
+        return _graph;
+    }
+
+    /** Get the sparse-checkout patterns of this repository.
+     * @return SparseCheckout. */
+    private SparseCheckout sparse() {
+        if (_sparse == null) {
+            _sparse = SparseCheckout.read(_pathGitlet);
+        }
+        return _sparse;
+    }
+
+    /** Drop from FILES the files the sparse-checkout patterns exclude
+     * from the working directory, except tracked ones still there, which
+     * are kept up to date.
+     * @param files the files to restore, mapped to their blobs.
+     * @return FILES. */
+    private <M extends Map<String, ObjectId>> M sparseOnly(M files) {
+        if (!sparse().includesAll()) {
+            files.keySet().removeIf(file -> !sparse().includes(file)
+                    && !(getCurrentCommit().isTracked(file)
+                    && Utils.join(_workDir, file).exists()));
+        }
+        return files;
+    }
+
+    /** Get the stored commit with SHA-1 ID, or null if there is none.
+     * @param id the SHA-1 of the commit.
+     * @return Commit. */
+    private Commit findCommit(ObjectId id) {
+        File file = Utils.join(_pathCommits, id.toString());
+        if (!file.exists()) {
+            return null;
         }
+        return ObjectCache.readObject(file, Commit.class);
     }
 
-    /** Deep copy the CTRLSYS ControlSystem into the current system.
-     * @param ctrlSys the other ControlSystem object. */
-    public void cloneSystem(ControlSystem ctrlSys) {
-        this._stagingArea = ctrlSys._stagingArea;
-        this._repos = ctrlSys._repos;
+    /** Check if commit ANCESTOR is DESCENDANT or one of its ancestors,
+     * using the commit-graph's bitmaps where it can.
+     * @param ancestor the SHA-1 of the possible ancestor.
+     * @param descendant the SHA-1 of the possible descendant.
+     * @return boolean. */
+    private boolean isAncestor(ObjectId ancestor, ObjectId descendant) {
+        return graph().isAncestor(ancestor, descendant, this::findCommit);
     }
 
     /** Get current commit.
      * @return Commit. */
     public Commit getCurrentCommit() {
-        Commit c;
-        File inFile = new File(_workDir + "/.gitlet/branches/HEAD");
-        c = Utils.readObject(inFile, Commit.class);
-        return c;
+        if (_head == null) {
+            _head = readHead(_pathGitlet);
+        }
+        return _head;
     }
 
     /** Check if a gitlet directory exists.
@@ -75,27 +275,43 @@ public class ControlSystem implements Serializable {
         return _pathGitlet.exists();
     }
 
+    /** Check that the gitlet directory, if there is one, is in the
+     * current format, printing an error if it is not.
+     * @return boolean. */
+    public boolean checkFormat() {
+        if (checkInitialized() && isOldFormat(_pathGitlet)) {
+            System.out.println("Repository format too old.");
+            return false;
+        }
+        return true;
+    }
+
+    /** Return true iff GITLETDIR was made by a version that kept its state
+     * in a single serialized SYSTEM file and its HEAD among the branches.
+     * Neither that file nor the commits of that version can be read.
+     * @param gitletDir the .gitlet directory.
+     * @return boolean. */
+    static boolean isOldFormat(File gitletDir) {
+        return !headFile(gitletDir).exists()
+            && Utils.join(gitletDir, "SYSTEM").exists();
+    }
+
     /** Handles the init command. */
     public void init() throws IOException {
         if (checkInitialized()) {
             System.out.println("A Gitlet version-control system "
                     + "already exists in the current directory.");
         } else {
-            File currSystem = new File(_pathGitlet + "/" + "SYSTEM");
             _pathGitlet.mkdir();
             _pathBranches.mkdir();
             _pathBlobs.mkdir();
             _pathCommits.mkdir();
             Commit initial = new Commit("initial commit",
-                    new HashMap<String, String>(), "",
-                    "", "master");
+                    new FileMap(), null, null, "master");
             Utils.writeObject(new File(_pathCommits.getPath()
                     + "/" + initial.getID()), initial);
-            Utils.writeObject(new File(_pathBranches.getPath()
-                    + "/" + "HEAD"), initial);
-            Utils.writeObject(new File(_pathBranches.getPath()
-                    + "/" + "master"), initial);
-            currSystem.createNewFile();
+            writeBranch("master", initial, "commit (initial): initial commit");
+            setHead(initial, "commit (initial): initial commit");
         }
     }
 
@@ -108,14 +324,13 @@ public class ControlSystem implements Serializable {
         }
         File toBeUpdated = new File(_workDir + "/" + fileName);
         if (toBeUpdated.exists()) {
-            byte[] fileBlob = Utils.readContents(toBeUpdated);
-            String blobSHA1 = Utils.sha1((Object) fileBlob);
-            String tmp = getCurrentCommit().getBlob(fileName);
-            if (tmp.equals("") || !tmp.equals(blobSHA1)) {
-                _stagingArea.stage(fileName, blobSHA1);
+            ObjectId blobSHA1 = saveWorkBlob(fileName,
+                    getCurrentCommit().getBlob(fileName));
+            if (!blobSHA1.equals(getCurrentCommit().getBlob(fileName))) {
+                stagingArea().stage(fileName, blobSHA1);
             } else {
-                _stagingArea.unstage(fileName);
-                _stagingArea.unremove(fileName);
+                stagingArea().unstage(fileName);
+                stagingArea().unremove(fileName);
             }
         } else {
             System.out.println("File does not exist.");
@@ -124,60 +339,37 @@ public class ControlSystem implements Serializable {
 
     /** Handles the commit command.
      * @param msg the message of the commit.
-     * @param secondParentHash the SHA-1 of the second parent. */
-    public void commit(String msg, String secondParentHash) {
+     * @param secondParentHash the SHA-1 of the second parent, or null. */
+    public void commit(String msg, ObjectId secondParentHash) {
         if (!checkInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        if (_stagingArea.isEmpty()) {
+        if (stagingArea().isEmpty()) {
             System.out.println("No changes added to the commit.");
         } else if (msg.equals("")) {
             System.out.println("Please enter a commit message.");
         } else {
-            Commit newCommit;
-            if (!secondParentHash.equals("")) {
-                newCommit = new Commit(msg,
-                        getCurrentCommit().getFilesBlobsMap(),
-                        getCurrentCommit().getID(), secondParentHash,
-                        getCurrentCommit().getActiveBranch());
-            } else {
-                newCommit = new Commit(msg,
-                        getCurrentCommit().getFilesBlobsMap(),
-                        getCurrentCommit().getID(), "",
-                        getCurrentCommit().getActiveBranch());
-            }
+            Commit newCommit = new Commit(msg,
+                    getCurrentCommit().getFilesBlobsMap(),
+                    getCurrentCommit().getID(), secondParentHash,
+                    getCurrentCommit().getActiveBranch());
             newCommit.setLength(getCurrentCommit().getLength() + 1);
-            for (String fileName : _stagingArea.getFilesSHA1Map().keySet()) {
-                String contentAsString =
-                        Utils.readContentsAsString(new
-                                File(_workDir + "/" + fileName));
-                File newBlob = Utils.join(_pathBlobs + "/"
-                        + _stagingArea.getSHA1(fileName));
-                try {
-                    newBlob.createNewFile();
-                } catch (IOException excp) {
-                    System.out.println(excp);
-                }
-                Utils.writeContents(newBlob, contentAsString);
-                newCommit.track(fileName, _stagingArea.getSHA1(fileName));
+            for (String fileName : stagingArea().getFilesSHA1Map().keySet()) {
+                _blobStore.write(stagingArea().getSHA1(fileName),
+                        new File(_workDir + "/" + fileName));
+                newCommit.track(fileName, stagingArea().getSHA1(fileName));
             }
-            for (String fileName : _stagingArea.getToBeRemoved()) {
+            for (String fileName : stagingArea().getToBeRemoved()) {
                 newCommit.untrack(fileName);
             }
             Utils.writeObject(new File(_pathCommits.getPath()
                     + "/" + newCommit.getID()), newCommit);
-            if (getCurrentCommit().getActiveBranch().equals("master")) {
-                Utils.writeObject(new File(_pathBranches.getPath()
-                        + "/" + "master"), newCommit);
-            } else {
-                Utils.writeObject(new File(_pathBranches.getPath()
-                        + "/" + getCurrentCommit().getActiveBranch()),
-                        newCommit);
-            }
-            Utils.writeObject(new File(_pathBranches.getPath()
-                    + "/" + "HEAD"), newCommit);
-            _stagingArea.clear();
+            String reason = (secondParentHash == null ? "commit: "
+                    : "commit (merge): ") + msg.split("\n", 2)[0];
+            writeBranch(getCurrentBranch(), newCommit, reason);
+            setHead(newCommit, reason);
+            stagingArea().clear();
         }
     }
 
@@ -188,17 +380,17 @@ public class ControlSystem implements Serializable {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        if (!_stagingArea.checkStaged(fileName)
+        if (!stagingArea().checkStaged(fileName)
                 && !getCurrentCommit().isTracked(fileName)) {
             System.out.println("No reason to remove the file.");
             return;
         }
-        if (_stagingArea.checkStaged(fileName)) {
-            _stagingArea.unstage(fileName);
+        if (stagingArea().checkStaged(fileName)) {
+            stagingArea().unstage(fileName);
         }
         if (getCurrentCommit().isTracked(fileName)) {
-            Utils.restrictedDelete(fileName);
-            _stagingArea.stageToBeRemoved(fileName);
+            Utils.restrictedDelete(Utils.join(_workDir, fileName));
+            stagingArea().stageToBeRemoved(fileName);
         }
     }
 
@@ -211,47 +403,105 @@ public class ControlSystem implements Serializable {
         Commit currCommit = getCurrentCommit();
         while (currCommit != null) {
             System.out.println(currCommit.toLog());
-            String firstParent = currCommit.getParentHash();
-            if (firstParent.equals("")) {
+            ObjectId firstParent = currCommit.getParentHash();
+            if (firstParent == null) {
                 return;
             }
             File inFile = new File(_pathCommits + "/" + firstParent);
-            currCommit = Utils.readObject(inFile, Commit.class);
+            currCommit = ObjectCache.readObject(inFile, Commit.class);
         }
     }
 
-    /** Displays information about all commits ever made. */
-    public void globalLog() {
+    /** Handle the `log -- PATH` command, displaying the commits along the
+     * first-parent history that changed file PATH relative to their first
+     * parent. Commits in the commit-graph whose changed-path filters rule
+     * PATH out are passed over without being read.
+     * @param path the file name. */
+    public void log(String path) {
         if (!checkInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        for (String commitName : Utils.plainFilenamesIn(_pathCommits)) {
-            Commit c = Utils.readObject(new
-                    File(_pathCommits + "/" + commitName),
-                    Commit.class);
-            System.out.println(c.toLog());
+        StringBuilder out = new StringBuilder();
+        Commit currCommit = getCurrentCommit();
+        while (currCommit != null) {
+            ObjectId firstParent = currCommit.getParentHash();
+            Commit parent = firstParent == null ? null
+                    : findCommit(firstParent);
+            ObjectId parentBlob = parent == null ? null
+                    : parent.getBlob(path);
+            ObjectId blob = currCommit.getBlob(path);
+            if (blob == null ? parentBlob != null : !blob.equals(parentBlob)) {
+                out.append(currCommit.toLog()).append("\n");
+            }
+            while (firstParent != null
+                    && !graph().mayChange(firstParent, path)) {
+                ObjectId next = graph().firstParent(firstParent);
+                if (next == null) {
+                    Commit skipped = findCommit(firstParent);
+                    next = skipped == null ? null : skipped.getParentHash();
+                }
+                firstParent = next;
+            }
+            if (firstParent == null) {
+                break;
+            } else if (parent == null || !parent.getID().equals(firstParent)) {
+                parent = findCommit(firstParent);
+            }
+            currCommit = parent;
         }
+        System.out.print(out);
+    }
+
+    /** Get the commit named COMMITNAME in the commits directory.
+     * @param commitName the commit's SHA-1.
+     * @return Commit. */
+    private Commit readCommit(String commitName) {
+        return ObjectCache.readObject(Utils.join(_pathCommits, commitName),
+                Commit.class);
     }
 
-    /** Find and return ids of all commits with COMMITMESSAGE.
-     * @param commitMessage the commit message we need to find. */
-    public void find(String commitMessage) {
+    /** Displays information about all commits ever made. Commits are
+     * read and formatted in parallel and printed in the order of their
+     * ids, as each becomes ready. */
+    public void globalLog() {
         if (!checkInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        boolean found = false;
-        for (String commitName : Utils.plainFilenamesIn(_pathCommits)) {
-            Commit c = Utils.readObject(new
-                    File(_pathCommits + "/" + commitName),
-                    Commit.class);
-            if (c.getMsg().equals(commitMessage)) {
-                found = true;
-                System.out.println(c.getID());
-            }
+        Utils.plainFilenamesIn(_pathCommits).parallelStream()
+                .map(name -> readCommit(name).toLog())
+                .forEachOrdered(System.out::println);
+    }
+
+    /** Find and return ids of all commits with COMMITMESSAGE, reading
+     * commits in parallel. If FIRSTONLY, stop at the first match in the
+     * order of commit ids.
+     * @param commitMessage the commit message we need to find.
+     * @param firstOnly whether to report only the first match. */
+    public void find(String commitMessage, boolean firstOnly) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        List<String> found;
+        if (firstOnly) {
+            Optional<String> first = Utils.plainFilenamesIn(_pathCommits)
+                    .parallelStream()
+                    .filter(name -> readCommit(name).getMsg()
+                            .equals(commitMessage))
+                    .findFirst();
+            found = first.map(List::of).orElse(List.of());
+        } else {
+            found = Utils.plainFilenamesIn(_pathCommits).parallelStream()
+                    .filter(name -> readCommit(name).getMsg()
+                            .equals(commitMessage))
+                    .collect(Collectors.toList());
+        }
+        for (String id : found) {
+            System.out.println(id);
         }
-        if (!found) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -259,50 +509,51 @@ public class ControlSystem implements Serializable {
     /** Get staged files for status to display.
      * @return String[]. */
     public String[] getStaged() {
-        String[] staged = _stagingArea.getFilesSHA1Map().keySet().
-                toArray(new String[0]);
-        Arrays.sort(staged);
-        return staged;
+        return stagingArea().sortedStaged();
     }
 
     /** Get removed files for status to display.
      * @return String[]. */
     public String[] getRemoved() {
-        String[] removed = _stagingArea.getToBeRemoved().toArray(new String[0]);
-        Arrays.sort(removed);
-        return removed;
+        return stagingArea().sortedRemoved();
     }
 
     /** Get modified but not staged files for status to display.
      * @return ArrayList<String>. */
     public HashMap<String, String> getMod() {
         HashMap<String, String> mod = new HashMap<>();
+        Materializer materializer = materializer();
         for (String file : Utils.plainFilenamesIn(_workDir)) {
-            if (file.endsWith(".txt")) {
+            if (file.endsWith(".txt") && (sparse().includes(file)
+                    || stagingArea().checkStaged(file))) {
                 File tmp = new File(_workDir + "/" + file);
+                if (!stagingArea().checkStaged(file) && materializer
+                        .isPristine(file, getCurrentCommit().getBlob(file))) {
+                    continue;
+                }
                 if (tmp.exists()) {
-                    byte[] fileBlob = Utils.readContents(tmp);
-                    String fileSHA = Utils.sha1((Object) fileBlob);
+                    ObjectId fileSHA = Utils.hash(tmp);
                     if (getCurrentCommit().isTracked(file)
                             && !getCurrentCommit().getBlob(file).equals(fileSHA)
-                            && !_stagingArea.checkStaged(file)) {
+                            && !stagingArea().checkStaged(file)) {
                         mod.put(file, "(modified)");
-                    } else if (_stagingArea.checkStaged(file)
-                            && !_stagingArea.getSHA1(file).equals(fileSHA)) {
+                    } else if (stagingArea().checkStaged(file)
+                            && !stagingArea().getSHA1(file).equals(fileSHA)) {
                         mod.put(file, "(modified)");
                     }
                 } else if (!tmp.exists()) {
-                    if (_stagingArea.checkStaged(file)) {
+                    if (stagingArea().checkStaged(file)) {
                         mod.put(file, "(deleted)");
                     } else if (getCurrentCommit().isTracked(file)
-                            && !_stagingArea.checkRemoved(file)) {
+                            && !stagingArea().checkRemoved(file)) {
                         mod.put(file, "(deleted)");
                     }
                 }
             }
         }
-        for (String file : getCurrentCommit().getFilesBlobsMap().keySet()) {
-            if (!mod.containsKey(file) && !_stagingArea.checkRemoved(file)) {
+        for (String file : getCurrentCommit().getFilesBlobsMap()) {
+            if (!mod.containsKey(file) && !stagingArea().checkRemoved(file)
+                    && sparse().includes(file)) {
                 File tmp = new File(_workDir + "/" + file);
                 if (!tmp.exists()) {
                     mod.put(file, "(deleted)");
@@ -312,23 +563,90 @@ public class ControlSystem implements Serializable {
         return mod;
     }
 
-    /** Get untracked files for status to display.
+    /** Get untracked files for status to display, in order, leaving out
+     * those the sparse-checkout patterns exclude.
      * @return ArrayList<String>. */
     public ArrayList<String> getUntracked() {
         ArrayList<String> untracked = new ArrayList<>();
         for (String file : Utils.plainFilenamesIn(_workDir)) {
-            if (file.endsWith(".txt")) {
+            if (file.endsWith(".txt") && sparse().includes(file)) {
                 File tmp = new File(_workDir + "/" + file);
-                if (tmp.exists() && !_stagingArea.checkStaged(file)
+                if (tmp.exists() && !stagingArea().checkStaged(file)
                         && !getCurrentCommit().isTracked(file)) {
                     untracked.add(file);
                 }
             }
         }
-        Arrays.sort(untracked.toArray());
         return untracked;
     }
 
+    /** Get the contents of file FILENAME in the working directory, or
+     * nothing if it is missing.
+     * @param fileName the file name.
+     * @return byte[]. */
+    private byte[] workContents(String fileName) {
+        File file = Utils.join(_workDir, fileName);
+        return file.isFile() ? Utils.readContents(file) : new byte[0];
+    }
+
+    /** Get the contents of the blob with SHA-1 BLOB as bytes.
+     * @param blob the SHA-1 of the blob.
+     * @return byte[]. */
+    private byte[] blobContents(ObjectId blob) {
+        return _blobStore.read(blob);
+    }
+
+    /** Get the staged and untracked files that were renamed or copied
+     * from files of the current commit, for status to display. Staged
+     * files are matched with files staged for removal, which they were
+     * renamed from, and with changed files, which they were copied from.
+     * Untracked files are matched with files deleted from the working
+     * directory, and are hashed only if there are such files.
+     * @param modFiles the modified but not staged files.
+     * @param untracked the untracked files.
+     * @return a HashMap from the new files to their matches. */
+    public HashMap<String, RenameDetector.Match> getRenames(
+            Map<String, String> modFiles, List<String> untracked) {
+        Commit head = getCurrentCommit();
+        RenameDetector staged = new RenameDetector();
+        RenameDetector unstaged = new RenameDetector();
+        boolean deleted = false;
+        for (String file : head.getFilesBlobsMap()) {
+            ObjectId blob = head.getBlob(file);
+            Supplier<byte[]> contents = () -> blobContents(blob);
+            boolean removed = stagingArea().checkRemoved(file);
+            if (removed || modFiles.containsKey(file)
+                    || stagingArea().checkStaged(file)) {
+                staged.addSource(file, blob, contents, removed);
+            }
+            if (!removed && "(deleted)".equals(modFiles.get(file))) {
+                unstaged.addSource(file, blob, contents, true);
+                deleted = true;
+            }
+        }
+        for (String file : getStaged()) {
+            if (!head.isTracked(file)) {
+                staged.addTarget(file, stagingArea().getSHA1(file),
+                        () -> workContents(file));
+            }
+        }
+        if (deleted) {
+            for (String file : untracked) {
+                unstaged.addTarget(file,
+                        () -> Utils.hash(Utils.join(_workDir, file)),
+                        () -> workContents(file));
+            }
+        }
+        HashMap<String, RenameDetector.Match> result = new HashMap<>();
+        for (RenameDetector.Match m : staged.detect()) {
+            result.put(m.target(), m);
+        }
+        for (RenameDetector.Match m : unstaged.detect()) {
+            result.put(m.target(), m);
+        }
+        return result;
+    }
+
     /** Display the status of the current control system. */
     public void status() {
         if (!checkInitialized()) {
@@ -344,18 +662,20 @@ public class ControlSystem implements Serializable {
         StringBuilder untrackedFiles = new
                 StringBuilder("=== Untracked Files ===\n");
         Map<String, String> modFiles = new TreeMap<>(getMod());
-        for (String branchName : Utils.plainFilenamesIn(_pathBranches)) {
+        ArrayList<String> untracked = getUntracked();
+        Map<String, RenameDetector.Match> renames =
+                getRenames(modFiles, untracked);
+        for (String branchName : _refs.branchNames()) {
             String currBranch = getCurrentCommit().getActiveBranch();
-            if (!branchName.equals("HEAD")) {
-                if (branchName.equals(currBranch)) {
-                    branches.append("*").append(branchName).append("\n");
-                } else {
-                    branches.append(branchName).append("\n");
-                }
+            if (branchName.equals(currBranch)) {
+                branches.append("*").append(branchName).append("\n");
+            } else {
+                branches.append(branchName).append("\n");
             }
         }
         for (String file : getStaged()) {
-            stagedFiles.append(file).append("\n");
+            stagedFiles.append(renames.containsKey(file)
+                    ? renames.get(file) : file).append("\n");
         }
 
         for (String file : getRemoved()) {
@@ -366,19 +686,49 @@ public class ControlSystem implements Serializable {
             modNotStaged.append(file).append(" ")
                     .append(modFiles.get(file)).append("\n");
         }
-        for (String file : getUntracked()) {
-            untrackedFiles.append(file).append("\n");
+        for (String file : untracked) {
+            untrackedFiles.append(renames.containsKey(file)
+                    ? renames.get(file) : file).append("\n");
         }
         System.out.println(branches + "\n" + stagedFiles + "\n"
                 + removedFiles + "\n" + modNotStaged + "\n" + untrackedFiles);
     }
 
-    /** Return the full 40-digit commit ID from ABBREVIATED.
+    /** Get the SHA-1 of the commit that NAME points to, or null if
+     * there is none. NAME is HEAD, an entry REF@{N} of a reflog naming
+     * where REF was N moves ago, or a tag or branch, tags tried first.
+     * @param name the tag or branch name.
+     * @return ObjectId. */
+    private ObjectId resolveRef(String name) {
+        Matcher logged = REFLOG_ENTRY.matcher(name);
+        if (logged.matches()) {
+            String ref = logged.group(1).isEmpty() ? "HEAD"
+                    : logged.group(1);
+            Reflog.Entry entry = _reflog.get(ref,
+                    Integer.parseInt(logged.group(2)));
+            return entry == null ? null : entry.newId();
+        }
+        if (name.equals("HEAD")) {
+            return getCurrentCommit().getID();
+        }
+        ObjectId tagged = _refs.taggedCommit(name);
+        if (tagged != null) {
+            return tagged;
+        }
+        Commit branch = _refs.branch(name, this::findCommit);
+        return branch == null ? null : branch.getID();
+    }
+
+    /** Return the full 40-digit commit ID from ABBREVIATED, which may also
+     * name a tag or a branch.
      * @param abbreviated the abbreviated ID.
      * @return String. */
     public String translate(String abbreviated) {
         String commitName = abbreviated;
-        if (commitName.length() < _adequate) {
+        ObjectId ref = resolveRef(abbreviated);
+        if (ref != null) {
+            return ref.toString();
+        } else if (commitName.length() < _adequate) {
             for (String name : Utils.plainFilenamesIn(_pathCommits)) {
                 String abbreviatedName = name.substring(0,
                         abbreviated.length());
@@ -395,11 +745,8 @@ public class ControlSystem implements Serializable {
      * @param fileName the file name. */
     public void checkoutFile(String fileName) {
         if (getCurrentCommit().isTracked(fileName)) {
-            String headBlob = getCurrentCommit().getBlob(fileName);
-            String contents = Utils.readContentsAsString(new
-                    File(_pathBlobs + "/" + headBlob));
-            Utils.writeContents(new
-                    File(_workDir + "/" + fileName), contents);
+            ObjectId headBlob = getCurrentCommit().getBlob(fileName);
+            materializer().restore(fileName, headBlob);
         }
     }
 
@@ -410,18 +757,15 @@ public class ControlSystem implements Serializable {
     public void checkoutCommitFile(String c, String fileName) {
         String commitName = translate(c);
         try {
-            Commit wantCommit = Utils.readObject(new
+            Commit wantCommit = ObjectCache.readObject(new
                             File(_pathCommits + "/" + commitName),
                     Commit.class);
             if (!wantCommit.isTracked(fileName)) {
                 System.out.println("File does not exist in that commit.");
                 return;
             }
-            String commitBlob = wantCommit.getBlob(fileName);
-            String contents = Utils.readContentsAsString(new
-                    File(_pathBlobs + "/" + commitBlob));
-            Utils.writeContents(new File(_workDir
-                    + "/" + fileName), contents);
+            ObjectId commitBlob = wantCommit.getBlob(fileName);
+            materializer().restore(fileName, commitBlob);
         } catch (IllegalArgumentException excp) {
             System.out.println("No commit with that id exists.");
         }
@@ -429,10 +773,10 @@ public class ControlSystem implements Serializable {
 
     /** Get files that are supposed to be overwritten during checkout.
      * @param wantBranch the branch given.
-     * @return HashMap<String, String>. */
-    public HashMap<String, String> getOverwrites(Commit wantBranch) {
-        HashMap<String, String> overwrites = new HashMap<>();
-        for (String file : wantBranch.getFilesBlobsMap().keySet()) {
+     * @return HashMap<String, ObjectId>. */
+    public HashMap<String, ObjectId> getOverwrites(Commit wantBranch) {
+        HashMap<String, ObjectId> overwrites = new HashMap<>();
+        for (String file : wantBranch.getFilesBlobsMap()) {
             if (getCurrentCommit().isTracked(file)) {
                 overwrites.put(file, wantBranch.getBlob(file));
             }
@@ -442,10 +786,10 @@ public class ControlSystem implements Serializable {
 
     /** Get files that are new during checkout.
      * @param wantBranch the branch given.
-     * @return HashMap<String, String>. */
-    public HashMap<String, String> getNewFiles(Commit wantBranch) {
-        HashMap<String, String> newFiles = new HashMap<>();
-        for (String file : wantBranch.getFilesBlobsMap().keySet()) {
+     * @return HashMap<String, ObjectId>. */
+    public HashMap<String, ObjectId> getNewFiles(Commit wantBranch) {
+        HashMap<String, ObjectId> newFiles = new HashMap<>();
+        for (String file : wantBranch.getFilesBlobsMap()) {
             if (!getCurrentCommit().isTracked(file)) {
                 newFiles.put(file, wantBranch.getBlob(file));
             }
@@ -472,7 +816,9 @@ public class ControlSystem implements Serializable {
      * @return boolean. */
     public boolean checkUntrackedDir(Commit wantBranch) {
         for (String file : Utils.plainFilenamesIn(_workDir)) {
-            if (wantBranch != null) {
+            if (!sparse().includes(file)) {
+                continue;
+            } else if (wantBranch != null) {
                 if (file.endsWith(".txt") && !getCurrentCommit().isTracked(file)
                         && wantBranch.isTracked(file)) {
                     System.out.println("There is an untracked file in the way"
@@ -507,12 +853,11 @@ public class ControlSystem implements Serializable {
             if (args[1].contains("/")) {
                 args[1] = args[1].replaceAll("\\/", "_");
             }
-            if (!new File(_pathBranches + "/" + args[1]).exists()) {
+            Commit wantBranch = _refs.branch(args[1], this::findCommit);
+            if (wantBranch == null) {
                 System.out.println("No such branch exists.");
                 return;
             }
-            Commit wantBranch = Utils.readObject(new
-                    File(_pathBranches + "/" + args[1]), Commit.class);
             if (wantBranch.getID().equals(getCurrentCommit().getID())
                     && wantBranch.getActiveBranch().equals(getCurrentCommit()
                     .getActiveBranch())) {
@@ -522,31 +867,15 @@ public class ControlSystem implements Serializable {
             if (!checkUntrackedDir(wantBranch)) {
                 return;
             }
-            for (String file : getNewFiles(wantBranch).keySet()) {
-                File newFile = new File(_workDir + "/" + file);
-                try {
-                    newFile.createNewFile();
-                } catch (IOException excp) {
-                    System.out.println(excp);
-                }
-                String blob = getNewFiles(wantBranch).get(file);
-                String contents = Utils.readContentsAsString(new
-                        File(_pathBlobs + "/" + blob));
-                Utils.writeContents(newFile, contents);
-            }
-            for (String file : getOverwrites(wantBranch).keySet()) {
-                String blob = getOverwrites(wantBranch).get(file);
-                String contents = Utils.readContentsAsString(new
-                        File(_pathBlobs + "/" + blob));
-                Utils.writeContents(new File(_workDir + "/"
-                        + file), contents);
-            }
+            HashMap<String, ObjectId> restores = getNewFiles(wantBranch);
+            restores.putAll(getOverwrites(wantBranch));
+            materializer().restore(sparseOnly(restores));
             for (String file : getRemoves(wantBranch)) {
-                Utils.restrictedDelete(file);
+                Utils.restrictedDelete(Utils.join(_workDir, file));
             }
-            _stagingArea.clear();
-            Utils.writeObject(new File(_pathBranches + "/"
-                    + "HEAD"), wantBranch);
+            stagingArea().clear();
+            setHead(wantBranch, "checkout: moving from "
+                    + getCurrentBranch() + " to " + args[1]);
         }
     }
 
@@ -557,15 +886,15 @@ public class ControlSystem implements Serializable {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        File newBranch = new File(_pathBranches + "/" + branchName);
-        if (newBranch.exists()) {
+        File newBranch = _refs.branchFile(branchName);
+        if (_refs.hasBranch(branchName)) {
             System.out.println("A branch with that name already exists.");
+            return;
         }
-        newBranch.createNewFile();
-        Commit commitHead = Utils.readObject(new
-                File(_pathBranches + "/" + "HEAD"), Commit.class);
+        Commit commitHead = new Commit(getCurrentCommit());
         commitHead.setBranch(branchName);
-        Utils.writeObject(newBranch, commitHead);
+        writeBranch(branchName, commitHead, "branch: Created from "
+                + getCurrentBranch());
     }
 
     /** Delete a branch.
@@ -575,19 +904,13 @@ public class ControlSystem implements Serializable {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        boolean found = false;
-        for (String branch : Utils.plainFilenamesIn(_pathBranches)) {
-            if (branch.equals(branchName)) {
-                if (getCurrentCommit().getActiveBranch().equals(branch)) {
-                    System.out.println("Cannot remove the current branch");
-                } else {
-                    new File(_pathBranches + "/" + branch).delete();
-                }
-                found = true;
-            }
-        }
-        if (!found) {
+        if (!_refs.hasBranch(branchName)) {
             System.out.println("A branch with that name does not exist.");
+        } else if (getCurrentCommit().getActiveBranch().equals(branchName)) {
+            System.out.println("Cannot remove the current branch");
+        } else {
+            _refs.deleteBranch(branchName);
+            _reflog.delete(branchName);
         }
     }
 
@@ -596,8 +919,9 @@ public class ControlSystem implements Serializable {
      * @return ArrayList<String>. */
     public ArrayList<String> getRedundants(Commit wantCommit) {
         ArrayList<String> redundantFiles = new ArrayList<>();
-        for (String file : wantCommit.getFilesBlobsMap().keySet()) {
-            if (!new File(_workDir + "/" + file).exists()) {
+        for (String file : wantCommit.getFilesBlobsMap()) {
+            if (!new File(_workDir + "/" + file).exists()
+                    && sparse().includes(file)) {
                 redundantFiles.add(file);
             }
         }
@@ -611,35 +935,29 @@ public class ControlSystem implements Serializable {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        if (!new File(_pathCommits + "/" + commitID).exists()) {
+        String commitName = translate(commitID);
+        if (!new File(_pathCommits + "/" + commitName).exists()) {
             System.out.println("No commit with that id exists.");
             return;
         }
-        String commitName = translate(commitID);
-        Commit wantCommit = Utils.readObject(new
-                File(_pathCommits + "/" + commitName), Commit.class);
+        Commit wantCommit = new Commit(ObjectCache.readObject(new
+                File(_pathCommits + "/" + commitName), Commit.class));
         if (!checkUntrackedDir(wantCommit)) {
             return;
         }
-        for (String file : getOverwrites(wantCommit).keySet()) {
-            String blob = getOverwrites(wantCommit).get(file);
-            String contents = Utils.readContentsAsString(new
-                    File(_pathBlobs + "/" + blob));
-            Utils.writeContents(new File(_workDir + "/" + file),
-                    contents);
-        }
+        materializer().restore(sparseOnly(getOverwrites(wantCommit)));
         for (String file : getRemoves(wantCommit)) {
-            Utils.restrictedDelete(file);
+            Utils.restrictedDelete(Utils.join(_workDir, file));
         }
 
         for (String file : getRedundants(wantCommit)) {
             wantCommit.untrack(file);
         }
-        _stagingArea.clear();
-        Utils.writeObject(new File(_pathBranches + "/" + "HEAD"),
-                wantCommit);
-        Utils.writeObject(new File(_pathBranches + "/"
-                + getCurrentBranch()), wantCommit);
+        String branch = getCurrentBranch();
+        wantCommit.setBranch(branch);
+        stagingArea().clear();
+        writeBranch(branch, wantCommit, "reset: moving to " + commitID);
+        setHead(wantCommit, "reset: moving to " + commitID);
     }
 
     /** Get the current branch.
@@ -654,17 +972,17 @@ public class ControlSystem implements Serializable {
     public LinkedList<Commit> getAncestors(Commit c) {
         LinkedList<Commit> ancestors = new LinkedList<>();
         ancestors.add(c);
-        while (!c.getParentHash().equals("")) {
-            ancestors.add(Utils.readObject(new
+        while (c.getParentHash() != null) {
+            ancestors.add(ObjectCache.readObject(new
                     File(_pathCommits + "/" + c.getParentHash()),
                     Commit.class));
-            if (!c.getSecondParentHash().equals("")
+            if (c.getSecondParentHash() != null
                     && new File(_pathCommits + "/"
                     + c.getSecondParentHash()).exists()) {
-                ancestors.add(Utils.readObject(new File(_pathCommits
+                ancestors.add(ObjectCache.readObject(new File(_pathCommits
                         + "/" + c.getSecondParentHash()), Commit.class));
             }
-            c = Utils.readObject(new File(_pathCommits + "/"
+            c = ObjectCache.readObject(new File(_pathCommits + "/"
                     + c.getParentHash()), Commit.class);
         }
         return ancestors;
@@ -718,96 +1036,186 @@ public class ControlSystem implements Serializable {
         StringBuilder bot = new StringBuilder(">>>>>>>\n");
         String newContents = top + contentCurrentBranch + placeHolder
                 + contentGivenBranch + bot;
-        Utils.writeContents(new File(_workDir + "/" + fileName),
-                newContents);
+        materializer().write(fileName, newContents);
         add(fileName);
     }
 
     /** Handle files tracked in the wanted branch when merging.
-     * Return true if there was conflict during merging.
+     * Return true if there was conflict during merging. Files taken
+     * from the wanted branch are restored together once the scan is done.
      * @param wantedBranch the given branch.
      * @param split the latest common ancestor.
      * @param curr the current branch.
+     * @param skip the files already merged.
      * @return boolean. */
     public boolean mergeWantedBranch(Commit wantedBranch, Commit split,
-                                  Commit curr) {
-        for (String file : wantedBranch.getFilesBlobsMap().keySet()) {
-            if (wantedBranch.isTracked(file)
+                                  Commit curr, Set<String> skip) {
+        HashMap<String, ObjectId> restores = new HashMap<>();
+        try {
+            return mergeWantedFiles(wantedBranch, split, curr, skip,
+                    restores);
+        } finally {
+            materializer().restore(sparseOnly(restores));
+        }
+    }
+
+    /** Scan the files tracked in the wanted branch when merging, collecting
+     * the ones to take from it in RESTORES.
+     * Return true if there was conflict during merging.
+     * @param wantedBranch the given branch.
+     * @param split the latest common ancestor.
+     * @param curr the current branch.
+     * @param skip the files already merged.
+     * @param restores the files to restore, mapped to their blobs.
+     * @return boolean. */
+    private boolean mergeWantedFiles(Commit wantedBranch, Commit split,
+                                     Commit curr, Set<String> skip,
+                                     HashMap<String, ObjectId> restores) {
+        boolean conflict = false;
+        for (String file : wantedBranch.getFilesBlobsMap()) {
+            if (skip.contains(file)) {
+                continue;
+            } else if (wantedBranch.isTracked(file)
                     && curr.isTracked(file)
                     && split.isTracked(file)
                     && !wantedBranch.getBlob(file).equals(split.getBlob(file))
                     && curr.getBlob(file).equals(split.getBlob(file))) {
-                String blob = wantedBranch.getBlob(file);
-                String contents = Utils.readContentsAsString(new
-                        File(_pathBlobs + "/" + blob));
-                if (!new File(_workDir + "/" + file).exists()) {
-                    try {
-                        new File(_workDir + "/" + file)
-                                .createNewFile();
-                    } catch (IOException excp) {
-                        System.out.println(excp);
-                    }
-                }
-                Utils.writeContents(new File(_workDir + "/" + file),
-                        contents);
+                restores.put(file, wantedBranch.getBlob(file));
             } else if (!split.isTracked(file) && !curr.isTracked(file)) {
-                String blob = wantedBranch.getBlob(file);
-                String contents = Utils.readContentsAsString(new
-                        File(_pathBlobs + "/" + blob));
-                if (!new File(_workDir + "/" + file).exists()) {
-                    try {
-                        new File(_workDir + "/" + file).
-                                createNewFile();
-                    } catch (IOException excp) {
-                        System.out.println(excp);
-                    }
-                }
-                Utils.writeContents(new File(_workDir + "/" + file),
-                        contents);
-                add(file);
+                ObjectId blob = wantedBranch.getBlob(file);
+                restores.put(file, blob);
+                stagingArea().stage(file, blob);
             } else if (curr.isTracked(file)
                     && !curr.getBlob(file).equals(wantedBranch.getBlob(file))
                     && (!split.isTracked(file)
                     || (!split.getBlob(file).equals(curr.getBlob(file)))
                     && !wantedBranch.getBlob(file)
                         .equals(split.getBlob(file)))) {
-                String contentCurrentBranch = Utils.readContentsAsString(new
-                        File(_pathBlobs + "/"
-                        + getCurrentCommit().getBlob(file)));
-                String contentGivenBranch = Utils.readContentsAsString(new
-                        File(_pathBlobs + "/"
-                        + wantedBranch.getBlob(file)));
+                String contentCurrentBranch =
+                        readBlob(getCurrentCommit().getBlob(file));
+                String contentGivenBranch =
+                        readBlob(wantedBranch.getBlob(file));
                 conflictHandler(file, contentCurrentBranch, contentGivenBranch);
-                return true;
+                conflict = true;
             }
         }
-        return false;
+        return conflict;
     }
 
     /** Handle files tracked by the current branch during merging.
      * Return true if there was conflict happening.
      * @param wantedBranch the given branch.
      * @param split the latest common ancestor.
+     * @param skip the files already merged.
      * @return boolean.
      */
-    public boolean mergeCurrentBranch(Commit wantedBranch, Commit split) {
-        for (String file : getCurrentCommit().getFilesBlobsMap().keySet()) {
-            if (split.isTracked(file)
+    public boolean mergeCurrentBranch(Commit wantedBranch, Commit split,
+                                      Set<String> skip) {
+        boolean conflict = false;
+        for (String file : getCurrentCommit().getFilesBlobsMap()) {
+            if (skip.contains(file)) {
+                continue;
+            } else if (split.isTracked(file)
                     && split.getBlob(file).equals(getCurrentCommit()
                     .getBlob(file))
                     && !wantedBranch.isTracked(file)) {
-                Utils.restrictedDelete(file);
-                _stagingArea.stageToBeRemoved(file);
+                Utils.restrictedDelete(Utils.join(_workDir, file));
+                stagingArea().stageToBeRemoved(file);
             } else if (split.isTracked(file) && !wantedBranch.isTracked(file)) {
-                String contentCurrentBranch = Utils.readContentsAsString(new
-                        File(_pathBlobs + "/"
-                        + getCurrentCommit().getBlob(file)));
+                String contentCurrentBranch =
+                        readBlob(getCurrentCommit().getBlob(file));
                 String contentGivenBranch = "";
                 conflictHandler(file, contentCurrentBranch, contentGivenBranch);
-                return true;
+                conflict = true;
             }
         }
-        return false;
+        return conflict;
+    }
+
+    /** Get the files of the split point that were renamed in commit
+     * SIDE, mapped to their new names.
+     * @param split the latest common ancestor.
+     * @param side the head of one of the branches being merged.
+     * @return HashMap<String, String>. */
+    private HashMap<String, String> renamesSince(Commit split,
+                                                 Commit side) {
+        RenameDetector detector = new RenameDetector();
+        for (String file : split.getFilesBlobsMap()) {
+            if (!side.isTracked(file)) {
+                ObjectId blob = split.getBlob(file);
+                detector.addSource(file, blob, () -> blobContents(blob),
+                        true);
+            }
+        }
+        for (String file : side.getFilesBlobsMap()) {
+            if (!split.isTracked(file)) {
+                ObjectId blob = side.getBlob(file);
+                detector.addTarget(file, blob, () -> blobContents(blob));
+            }
+        }
+        HashMap<String, String> renames = new HashMap<>();
+        for (RenameDetector.Match m : detector.detect()) {
+            if (!m.isCopy()) {
+                renames.put(m.source(), m.target());
+            }
+        }
+        return renames;
+    }
+
+    /** Merge the files renamed since the split point on one or both
+     * branches, under their new names, adding the names of the files
+     * dealt with to MERGED. Without this, a file changed on one branch
+     * and renamed on the other conflicts with the rename's deletion.
+     * Return true if there was conflict during merging.
+     * @param wantedBranch the given branch.
+     * @param split the latest common ancestor.
+     * @param curr the current branch.
+     * @param merged the files dealt with.
+     * @return boolean. */
+    private boolean mergeRenames(Commit wantedBranch, Commit split,
+                                 Commit curr, Set<String> merged) {
+        HashMap<String, String> ours = renamesSince(split, curr);
+        HashMap<String, String> theirs = renamesSince(split, wantedBranch);
+        HashMap<String, ObjectId> restores = new HashMap<>();
+        boolean conflict = false;
+        for (String file : split.getFilesBlobsMap()) {
+            String ourName = ours.get(file);
+            String theirName = theirs.get(file);
+            ObjectId base = split.getBlob(file);
+            String name = ourName == null ? theirName : ourName;
+            if (name == null || theirName != null && !theirName.equals(name)
+                    || ourName == null && curr.isTracked(name)
+                    || theirName == null && wantedBranch.isTracked(name)) {
+                continue;
+            }
+            ObjectId ourBlob = curr.getBlob(ourName == null ? file : name);
+            ObjectId theirBlob =
+                    wantedBranch.getBlob(theirName == null ? file : name);
+            if (ourBlob == null || theirBlob == null) {
+                continue;
+            } else if (ourName == null ? base.equals(ourBlob)
+                    : base.equals(theirBlob) || ourBlob.equals(theirBlob)) {
+                continue;
+            }
+            merged.add(file);
+            merged.add(name);
+            if (ourName == null) {
+                Utils.restrictedDelete(Utils.join(_workDir, file));
+                stagingArea().stageToBeRemoved(file);
+            }
+            if (base.equals(ourBlob) || ourBlob.equals(theirBlob)) {
+                restores.put(name, theirBlob);
+                stagingArea().stage(name, theirBlob);
+            } else if (base.equals(theirBlob)) {
+                restores.put(name, ourBlob);
+                stagingArea().stage(name, ourBlob);
+            } else {
+                conflictHandler(name, readBlob(ourBlob), readBlob(theirBlob));
+                conflict = true;
+            }
+        }
+        materializer().restore(sparseOnly(restores));
+        return conflict;
     }
 
     /** Handle the merge command.
@@ -817,36 +1225,42 @@ public class ControlSystem implements Serializable {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        if (!new File(_pathBranches + "/" + branchName).exists()) {
+        Commit wantedBranch = _refs.branch(branchName, this::findCommit);
+        if (wantedBranch == null) {
             System.out.println("A branch with that name does not exits.");
             return;
         }
-        if (!_stagingArea.isEmpty()) {
+        if (!stagingArea().isEmpty()) {
             System.out.println("You have uncommitted changes.");
             return;
         }
         if (!checkUntrackedDir(null)) {
             return;
         }
-        Commit wantedBranch = Utils.readObject(new
-                File(_pathBranches + "/" + branchName), Commit.class);
         if (wantedBranch.getID().equals(getCurrentCommit().getID())) {
             System.out.println("Cannot merge a branch with itself.");
             return;
         }
-        Commit split = findSplit(wantedBranch);
         boolean conflict = false;
-        if (split.getID().equals(wantedBranch.getID())) {
+        if (isAncestor(wantedBranch.getID(), getCurrentCommit().getID())) {
             System.out.println("Given branch is an ancestor of "
                     + "the current branch.");
-        } else if (split.getID().equals(getCurrentCommit().getID())) {
+        } else if (isAncestor(getCurrentCommit().getID(),
+                wantedBranch.getID())) {
             checkout("checkout", branchName);
             System.out.println("Current branch fast-forwarded.");
         } else {
-            if (mergeWantedBranch(wantedBranch, split, getCurrentCommit())) {
+            Commit split = findSplit(wantedBranch);
+            Set<String> merged = new HashSet<>();
+            if (mergeRenames(wantedBranch, split, getCurrentCommit(),
+                    merged)) {
+                conflict = true;
+            }
+            if (mergeWantedBranch(wantedBranch, split, getCurrentCommit(),
+                    merged)) {
                 conflict = true;
             }
-            if (mergeCurrentBranch(wantedBranch, split)) {
+            if (mergeCurrentBranch(wantedBranch, split, merged)) {
                 conflict = true;
             }
             if (branchName.contains("_")) {
@@ -860,126 +1274,1135 @@ public class ControlSystem implements Serializable {
         }
     }
 
-    /** Handle the `add-remote` command.
-     * @param remoteDir name of the remote directory.
-     * @param remoteName the remote name. */
-    public void addRemote(String remoteName, String remoteDir) {
-        if (!_repos.isEmpty() && _repos.containsKey(remoteName)) {
-            System.out.println("A remote with that name already exists.");
-            return;
+    /** Make the working directory go from commit FROM to commit TO,
+     * restoring only the files whose blobs differ and deleting the files
+     * TO does not track.
+     * @param from the commit the working directory matches.
+     * @param to the commit to match. */
+    private void moveWorkingTree(Commit from, Commit to) {
+        HashMap<String, ObjectId> restores = new HashMap<>();
+        for (String file : to.getFilesBlobsMap()) {
+            if (!to.getBlob(file).equals(from.getBlob(file))
+                    || !Utils.join(_workDir, file).exists()) {
+                restores.put(file, to.getBlob(file));
+            }
+        }
+        materializer().restore(sparseOnly(restores));
+        for (String file : from.getFilesBlobsMap()) {
+            if (!to.isTracked(file)) {
+                Utils.restrictedDelete(Utils.join(_workDir, file));
+            }
         }
-        _repos.put(remoteName, remoteDir);
     }
 
-    /** Handle the `rm-remote` command.
-     * @param remoteName the remote name. */
-    public void rmRemote(String remoteName) {
-        if (!_repos.containsKey(remoteName)) {
-            System.out.println("A remote with that name does not exist.");
-            return;
+    /** Store the commits NEWCOMMITS, in order, and make the last of them
+     * the head of the current branch, moving the working directory to it.
+     * Return false, storing nothing, if an untracked file is in the way.
+     * @param newCommits the commits to store.
+     * @param reason why the branch moved, for the reflog.
+     * @return boolean. */
+    private boolean advanceBranch(List<Commit> newCommits, String reason) {
+        Commit tip = newCommits.get(newCommits.size() - 1);
+        if (!checkUntrackedDir(tip)) {
+            return false;
+        }
+        for (Commit c : newCommits) {
+            File file = Utils.join(_pathCommits, c.getID().toString());
+            if (!file.exists()) {
+                Utils.writeObject(file, c);
+            }
         }
-        _repos.remove(remoteName);
+        moveWorkingTree(getCurrentCommit(), tip);
+        Commit head = new Commit(tip);
+        head.setBranch(getCurrentBranch());
+        writeBranch(getCurrentBranch(), head, reason);
+        stagingArea().clear();
+        setHead(head, reason);
+        return true;
     }
 
-    /** Handle the `push` command.
-     * @param remoteName the remote name.
-     * @param remoteBranchName the remote branch name. */
-    public void push(String remoteName, String remoteBranchName)
-            throws IOException {
-        if (!_repos.containsKey(remoteName)
-                || !new File(_repos.get(remoteName)).exists()) {
-            System.out.println("Remote directory not found.");
+    /** Handle the cherry-pick command, committing on the current branch
+     * the change the commit COMMITID made to its first parent. Files the
+     * current branch changed differently are committed with conflict
+     * markers, as merge does. The merge is made on the file maps and the
+     * working directory is updated once at the end.
+     * @param commitID the commit to pick, possibly abbreviated. */
+    public void cherryPick(String commitID) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        File pathToBranchRM = new File(_repos.get(remoteName)
-                + "/branches/" + remoteBranchName);
-        if (!pathToBranchRM.exists()) {
-            pathToBranchRM.createNewFile();
-            Utils.writeContents(pathToBranchRM, getCurrentCommit());
-        } else {
-            Commit remoteBranchHead = Utils.readObject(pathToBranchRM,
-                    Commit.class);
-            Commit currCommit = getCurrentCommit();
-            HashMap<String, Commit> futureCommits = new HashMap<>();
-            boolean inHistory = false;
-            while (currCommit != null) {
-                if (currCommit.getID().equals((remoteBranchHead).getID())) {
-                    inHistory = true;
-                    break;
-                }
-                futureCommits.put(currCommit.getID(), currCommit);
-                String firstParent = currCommit.getParentHash();
-                if (firstParent.equals("")) {
-                    break;
-                }
-                currCommit = Utils.readObject(new File(_pathCommits
-                        + "/" + firstParent), Commit.class);
-            }
-            if (!inHistory) {
-                System.out.println("Please pull down remote "
-                        + "changes before pushing.");
-                return;
-            }
-            for (String commitID : futureCommits.keySet()) {
-                File tmp = new File(_repos.get(remoteName)
-                        + "/commits/" + commitID);
-                tmp.createNewFile();
-                Utils.writeObject(tmp, futureCommits.get(commitID));
-            }
-            Utils.writeObject(new File(_repos.get(remoteName)
-                    + "/branches/HEAD"), getCurrentCommit());
+        String commitName = translate(commitID);
+        Commit picked = ObjectId.isHex(commitName)
+                ? findCommit(ObjectId.fromHex(commitName)) : null;
+        if (picked == null) {
+            System.out.println("No commit with that id exists.");
+            return;
+        }
+        if (!stagingArea().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        Commit head = getCurrentCommit();
+        Commit parent = picked.getParentHash() == null ? null
+                : findCommit(picked.getParentHash());
+        FileMap base = parent == null ? new FileMap()
+                : parent.getFilesBlobsMap();
+        TreeSet<String> conflicts = new TreeSet<>();
+        FileMap files = Replayer.apply(base, head.getFilesBlobsMap(),
+                picked.getFilesBlobsMap(), conflicts);
+        for (String file : conflicts) {
+            ObjectId ours = head.getBlob(file);
+            ObjectId theirs = picked.getBlob(file);
+            String contents = "<<<<<<< HEAD\n"
+                    + (ours == null ? "" : readBlob(ours)) + "=======\n"
+                    + (theirs == null ? "" : readBlob(theirs)) + ">>>>>>>\n";
+            byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+            ObjectId blob = Utils.hash(bytes);
+            _blobStore.write(blob, bytes);
+            files.put(file, blob);
+        }
+        if (files.equals(head.getFilesBlobsMap())) {
+            System.out.println("No changes added to the commit.");
+            return;
+        }
+        Commit result = new Commit(picked.getMsg(), files, head.getID(),
+                null, getCurrentBranch());
+        result.setLength(head.getLength() + 1);
+        if (advanceBranch(Collections.singletonList(result),
+                "cherry-pick: " + picked.getMsg().split("\n", 2)[0])
+                && !conflicts.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
         }
     }
 
-    /** Handle the `fetch` command.
-     * @param remoteName the remote name.
-     * @param remoteBranchName the remote branch name. */
-    public void fetch(String remoteName, String remoteBranchName)
-            throws IOException {
-        if (!_repos.containsKey(remoteName)
-                || !new File(_repos.get(remoteName)).exists()) {
-            System.out.println("Remote directory not found.");
+    /** Handle the rebase command, replaying the commits of the current
+     * branch since it left the branch BRANCHNAME onto that branch's head.
+     * A merge commit is replayed as the change from its first parent, and
+     * a commit whose change the new base already has is dropped. The
+     * replay is made on the file maps alone; the working directory is
+     * updated once at the end. If a commit conflicts, nothing is changed.
+     * @param branchName the branch to rebase onto. */
+    public void rebase(String branchName) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        File pathToBranchRM = new File(_repos.get(remoteName)
-                + "/branches/" + remoteBranchName);
-        if (!pathToBranchRM.exists()) {
-            System.out.println("That remote does not have that branch.");
+        Commit upstream = _refs.branch(branchName, this::findCommit);
+        if (upstream == null) {
+            System.out.println("A branch with that name does not exist.");
             return;
         }
-        File pathCommitRM = new File(_repos.get(remoteName)
-                + "/commits");
-        for (File f : pathCommitRM.listFiles()) {
-            Commit rm = Utils.readObject(f, Commit.class);
-            if (rm.getActiveBranch().equals(remoteBranchName)) {
-                String rmID = rm.getID();
-                File local = new File(_pathCommits + "/" + rmID);
-                if (!local.exists()) {
-                    local.createNewFile();
-                    Utils.writeObject(local, rm);
-                }
-                for (String file : rm.getFilesBlobsMap().keySet()) {
-                    String blobSHA1 = rm.getBlob(file);
-                    String contents = Utils.readContentsAsString(new
-                            File(_repos.get(remoteName)
-                            + "/blobs/" + blobSHA1));
-                    File localBlob = new File(_pathBlobs + "/"
-                            + blobSHA1);
-                    if (!localBlob.exists()) {
-                        localBlob.createNewFile();
-                        Utils.writeObject(localBlob, contents);
-                    }
-                }
-            }
+        if (!stagingArea().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
         }
-        String tmp = remoteName + "_" + remoteBranchName;
-        File localRMBranch = new File(_pathBranches + "/" + tmp);
-        if (!localRMBranch.exists()) {
-            localRMBranch.createNewFile();
+        Commit head = getCurrentCommit();
+        if (isAncestor(upstream.getID(), head.getID())) {
+            System.out.println("Current branch is up to date.");
+            return;
+        }
+        LinkedList<Commit> replayed = new LinkedList<>();
+        for (Commit c = head; c != null
+                && !isAncestor(c.getID(), upstream.getID());
+                c = c.getParentHash() == null ? null
+                : findCommit(c.getParentHash())) {
+            replayed.addFirst(c);
+        }
+        List<Commit> newCommits = new ArrayList<>();
+        Commit onto = upstream;
+        TreeSet<String> conflicts = new TreeSet<>();
+        for (Commit c : replayed) {
+            Commit parent = c.getParentHash() == null ? null
+                    : findCommit(c.getParentHash());
+            Commit next = Replayer.pick(onto, parent == null ? new FileMap()
+                    : parent.getFilesBlobsMap(), c, getCurrentBranch(),
+                    conflicts);
+            if (next == null) {
+                System.out.println("Could not apply "
+                        + c.getID().toString().substring(0, 7) + " "
+                        + c.getMsg() + ": conflict in "
+                        + String.join(", ", conflicts) + ".");
+                return;
+            } else if (next != onto) {
+                newCommits.add(next);
+                onto = next;
+            }
+        }
+        if (newCommits.isEmpty()) {
+            newCommits.add(upstream);
+        }
+        if (advanceBranch(newCommits, "rebase: onto " + branchName)) {
+            System.out.println("Current branch rebased onto "
+                    + branchName.replaceAll("_", "/") + ".");
+        }
+    }
+
+    /** Get the blob of working file FILENAME, writing it to the blobs
+     * folder if it is not there already. A file still linked to its blob
+     * TRACKED is not read. Return null if there is no such file.
+     * @param fileName the file name.
+     * @param tracked the SHA-1 of the version tracked, or null.
+     * @return ObjectId. */
+    private ObjectId saveWorkBlob(String fileName, ObjectId tracked) {
+        File file = Utils.join(_workDir, fileName);
+        if (!file.isFile()) {
+            return null;
+        } else if (materializer().isPristine(fileName, tracked)) {
+            return tracked;
+        }
+        if (file.length() >= BlobStore.CHUNK_THRESHOLD) {
+            ObjectId blob = Utils.hash(file);
+            _blobStore.write(blob, file);
+            return blob;
+        }
+        byte[] contents = Utils.readContents(file);
+        ObjectId blob = Utils.hash(contents);
+        _blobStore.write(blob, contents);
+        return blob;
+    }
+
+    /** Handle the `stash push` command, saving the staging area and the
+     * changes to tracked files, and the untracked files as well if
+     * UNTRACKED, as a stash entry, then making the working directory
+     * match the current commit. Only files that differ from the current
+     * commit are written as blobs.
+     * @param untracked whether to save the untracked files. */
+    public void stashPush(boolean untracked) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Commit head = getCurrentCommit();
+        FileMap index = new FileMap(head.getFilesBlobsMap());
+        FileMap work = new FileMap(head.getFilesBlobsMap());
+        TreeMap<String, ObjectId> files = new TreeMap<>();
+        for (String file : head.getFilesBlobsMap()) {
+            files.put(file, head.getBlob(file));
+        }
+        for (String file : getStaged()) {
+            files.putIfAbsent(file, null);
+        }
+        if (untracked) {
+            for (String file : getUntracked()) {
+                files.putIfAbsent(file, null);
+            }
+        }
+        boolean changed = !stagingArea().isEmpty();
+        for (Map.Entry<String, ObjectId> e : files.entrySet()) {
+            if (!sparse().includes(e.getKey())) {
+                continue;
+            }
+            ObjectId blob = saveWorkBlob(e.getKey(), e.getValue());
+            if (blob == null) {
+                work.remove(e.getKey());
+            } else {
+                work.put(e.getKey(), blob);
+            }
+            changed |= blob == null ? e.getValue() != null
+                    : !blob.equals(e.getValue());
+            if (stagingArea().checkStaged(e.getKey())) {
+                index.put(e.getKey(), stagingArea().getSHA1(e.getKey()));
+            }
+        }
+        for (String file : stagingArea().getToBeRemoved()) {
+            index.remove(file);
+        }
+        if (!changed) {
+            System.out.println("No local changes to save.");
+            return;
+        }
+        String where = head.getActiveBranch() + ": "
+                + head.getID().toString().substring(0, 7) + " "
+                + head.getMsg();
+        Commit indexCommit = new Commit("index on " + where, index,
+                head.getID(), null, head.getActiveBranch());
+        Commit workCommit = new Commit("WIP on " + where, work,
+                head.getID(), indexCommit.getID(), head.getActiveBranch());
+        for (Commit c : new Commit[] {indexCommit, workCommit}) {
+            c.setLength(head.getLength() + 1);
+            Utils.writeObject(Utils.join(_pathCommits, c.getID().toString()),
+                    c);
+        }
+        List<ObjectId> entries = Stash.read(_pathGitlet);
+        entries.add(0, workCommit.getID());
+        Stash.write(_pathGitlet, entries);
+        HashMap<String, ObjectId> restores = new HashMap<>();
+        for (String file : work) {
+            if (!head.isTracked(file)) {
+                Utils.restrictedDelete(Utils.join(_workDir, file));
+            } else if (!work.get(file).equals(head.getBlob(file))) {
+                restores.put(file, head.getBlob(file));
+            }
+        }
+        for (String file : head.getFilesBlobsMap()) {
+            if (!work.containsKey(file)) {
+                restores.put(file, head.getBlob(file));
+            }
+        }
+        materializer().restore(restores);
+        stagingArea().clear();
+        System.out.println("Saved working directory and index state "
+                + workCommit.getMsg());
+    }
+
+    /** Handle the `stash list` command. */
+    public void stashList() {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        List<ObjectId> entries = Stash.read(_pathGitlet);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < entries.size(); i += 1) {
+            Commit entry = findCommit(entries.get(i));
+            out.append("stash@{").append(i).append("}: ")
+                    .append(entry == null ? entries.get(i) : entry.getMsg())
+                    .append("\n");
+        }
+        System.out.print(out);
+    }
+
+    /** Handle the `stash pop` command, restoring the stash entry NAME
+     * onto the current commit and dropping it. Files changed both in the
+     * entry and in the current commit since the entry was made conflict,
+     * and the entry is then kept.
+     * @param name the entry, as a number or stash@{N}. */
+    public void stashPop(String name) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        List<ObjectId> entries = Stash.read(_pathGitlet);
+        int n = Stash.position(name);
+        if (n < 0 || n >= entries.size()) {
+            System.out.println("No stash entry with that index exists.");
+            return;
+        }
+        if (!stagingArea().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        Commit work = findCommit(entries.get(n));
+        Commit base = findCommit(work.getParentHash());
+        Commit index = findCommit(work.getSecondParentHash());
+        Commit head = getCurrentCommit();
+        TreeMap<String, ObjectId> changes = new TreeMap<>();
+        for (String file : base.getFilesBlobsMap()) {
+            if (!base.getBlob(file).equals(work.getBlob(file))) {
+                changes.put(file, work.getBlob(file));
+            }
+        }
+        for (String file : work.getFilesBlobsMap()) {
+            if (!base.isTracked(file)) {
+                changes.put(file, work.getBlob(file));
+            }
+        }
+        for (String file : changes.keySet()) {
+            ObjectId tracked = head.getBlob(file);
+            File workFile = Utils.join(_workDir, file);
+            if (tracked == null && workFile.exists()) {
+                System.out.println("There is an untracked file in the way"
+                        + "; delete it, or add and commit it first.");
+                return;
+            } else if (tracked != null && (workFile.exists()
+                    ? !tracked.equals(saveWorkBlob(file, tracked))
+                    : sparse().includes(file))) {
+                System.out.println("You have uncommitted changes.");
+                return;
+            }
+        }
+        HashMap<String, ObjectId> restores = new HashMap<>();
+        boolean conflict = false;
+        for (Map.Entry<String, ObjectId> e : changes.entrySet()) {
+            String file = e.getKey();
+            ObjectId tracked = head.getBlob(file);
+            ObjectId ours = e.getValue();
+            ObjectId theirs = base.getBlob(file);
+            if (tracked == null ? theirs == null : tracked.equals(theirs)) {
+                if (ours == null) {
+                    Utils.restrictedDelete(Utils.join(_workDir, file));
+                } else {
+                    restores.put(file, ours);
+                }
+            } else if (tracked == null || !tracked.equals(ours)) {
+                conflictHandler(file,
+                        tracked == null ? "" : readBlob(tracked),
+                        ours == null ? "" : readBlob(ours));
+                conflict = true;
+            }
+        }
+        materializer().restore(restores);
+        for (String file : index.getFilesBlobsMap()) {
+            ObjectId staged = index.getBlob(file);
+            if (!staged.equals(base.getBlob(file))
+                    && !staged.equals(head.getBlob(file))) {
+                stagingArea().stage(file, staged);
+            }
+        }
+        for (String file : base.getFilesBlobsMap()) {
+            if (!index.isTracked(file) && head.isTracked(file)
+                    && !Utils.join(_workDir, file).exists()) {
+                stagingArea().stageToBeRemoved(file);
+            }
+        }
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+            return;
+        }
+        stashDrop(name);
+    }
+
+    /** Handle the `stash drop` command, deleting the stash entry NAME.
+     * Its objects remain until gc finds nothing else reaches them.
+     * @param name the entry, as a number or stash@{N}. */
+    public void stashDrop(String name) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        List<ObjectId> entries = Stash.read(_pathGitlet);
+        int n = Stash.position(name);
+        if (n < 0 || n >= entries.size()) {
+            System.out.println("No stash entry with that index exists.");
+            return;
+        }
+        ObjectId dropped = entries.remove(n);
+        Stash.write(_pathGitlet, entries);
+        System.out.println("Dropped stash@{" + n + "} (" + dropped + ")");
+    }
+
+    /** Handle the `sparse-checkout set` command, making PATTERNS the
+     * sparse-checkout patterns, or including every file again if there
+     * are none. Tracked files the patterns now include are written, and
+     * those they exclude are deleted unless they are staged or hold
+     * changes, which stay until they are committed or checked out.
+     * @param patterns the patterns, in order. */
+    public void sparseCheckout(List<String> patterns) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        _sparse = new SparseCheckout(patterns);
+        Commit head = getCurrentCommit();
+        HashMap<String, ObjectId> restores = new HashMap<>();
+        Materializer materializer = materializer();
+        for (String file : head.getFilesBlobsMap()) {
+            File workFile = Utils.join(_workDir, file);
+            ObjectId blob = head.getBlob(file);
+            if (sparse().includes(file)) {
+                if (!workFile.exists() && !stagingArea().checkRemoved(file)) {
+                    restores.put(file, blob);
+                }
+            } else if (workFile.exists() && !stagingArea().checkStaged(file)
+                    && (materializer.isPristine(file, blob)
+                    || blob.equals(Utils.hash(workFile)))) {
+                Utils.restrictedDelete(workFile);
+            }
+        }
+        materializer.restore(restores);
+        _sparse.write(_pathGitlet);
+    }
+
+    /** Handle the `sparse-checkout list` command. */
+    public void sparseCheckoutList() {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        for (String pattern : sparse().patterns()) {
+            System.out.println(pattern);
+        }
+    }
+
+    /** Handle the `tag` command, tagging the commit COMMITID, or the
+     * current commit if it is null, as NAME. The tag is annotated with
+     * MSG unless MSG is null.
+     * @param name the tag name.
+     * @param commitID the commit to tag, possibly abbreviated, or null.
+     * @param msg the tag message, or null for a lightweight tag. */
+    public void tag(String name, String commitID, String msg) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (name.isEmpty() || name.startsWith("-")
+                || !name.matches("[^/\\s]+")) {
+            System.out.println("Invalid tag name.");
+            return;
+        }
+        if (_refs.tag(name) != null) {
+            System.out.println("A tag with that name already exists.");
+            return;
+        }
+        ObjectId target = getCurrentCommit().getID();
+        if (commitID != null) {
+            String commitName = translate(commitID);
+            if (!ObjectId.isHex(commitName)
+                    || findCommit(ObjectId.fromHex(commitName)) == null) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+            target = ObjectId.fromHex(commitName);
+        }
+        if (msg == null) {
+            _refs.setTag(name, target);
+        } else {
+            Tag tag = new Tag(name, target, msg);
+            _refs.writeTagObject(tag);
+            _refs.setTag(name, tag.getID());
+        }
+    }
+
+    /** Handle the `tag` command without a name, listing the tags in
+     * order, each followed by its message if MESSAGES: that of the tag
+     * if it is annotated, and of the commit tagged otherwise.
+     * @param messages whether to show messages. */
+    public void listTags(boolean messages) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        StringBuilder out = new StringBuilder();
+        for (String name : _refs.tagNames()) {
+            out.append(name);
+            if (messages) {
+                Tag tag = _refs.tagObject(_refs.tag(name));
+                Commit commit = findCommit(_refs.taggedCommit(name));
+                String msg = tag != null ? tag.getMsg()
+                        : commit != null ? commit.getMsg() : "";
+                out.append(" ".repeat(Math.max(1, 16 - name.length())))
+                        .append(msg.split("\n", 2)[0]);
+            }
+            out.append("\n");
+        }
+        System.out.print(out);
+    }
+
+    /** Handle the `tag -d` command, deleting the tag NAME.
+     * @param name the tag name. */
+    public void deleteTag(String name) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (!_refs.deleteTag(name)) {
+            System.out.println("A tag with that name does not exist.");
+        }
+    }
+
+    /** Handle the `reflog` command, listing the moves of REF, HEAD or a
+     * branch, newest first.
+     * @param ref the ref. */
+    public void reflog(String ref) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (!ref.equals("HEAD") && !_refs.hasBranch(ref)
+                && !_reflog.exists(ref)) {
+            System.out.println("No such branch exists.");
+            return;
+        }
+        StringBuilder out = new StringBuilder();
+        int n = 0;
+        for (Reflog.Entry entry : _reflog.entries(ref)) {
+            out.append(entry.newId().toString(), 0, 7).append(' ')
+                    .append(ref).append("@{").append(n).append("}: ")
+                    .append(entry.reason()).append('\n');
+            n += 1;
+        }
+        System.out.print(out);
+    }
+
+    /** Handle the `pack-refs` command, moving loose branches and tags
+     * into .gitlet/packed-refs. */
+    public void packRefs() {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        _refs.pack(this::findCommit);
+    }
+
+    /** Return the id of the commit NAME names, possibly abbreviated or
+     * a ref, printing an error and returning null if there is none.
+     * @param name the commit name.
+     * @return ObjectId. */
+    private ObjectId commitArg(String name) {
+        String commitName = translate(name);
+        if (!ObjectId.isHex(commitName)
+                || findCommit(ObjectId.fromHex(commitName)) == null) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        }
+        return ObjectId.fromHex(commitName);
+    }
+
+    /** Handle the `bisect start` command, starting a bisection of the
+     * current branch, with the bad commit BAD and the good commits GOOD
+     * if they are given.
+     * @param bad the bad commit, or null.
+     * @param good the good commits. */
+    public void bisectStart(String bad, List<String> good) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (Bisect.read(_pathGitlet) != null) {
+            System.out.println("You are already bisecting.");
+            return;
+        }
+        if (!stagingArea().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        Bisect bisect = new Bisect(getCurrentBranch());
+        if (bad != null) {
+            ObjectId id = commitArg(bad);
+            if (id == null) {
+                return;
+            }
+            bisect.mark("bad", id);
+        }
+        for (String name : good) {
+            ObjectId id = commitArg(name);
+            if (id == null) {
+                return;
+            }
+            bisect.mark("good", id);
+        }
+        bisect.write(_pathGitlet);
+        if (bisect.ready()) {
+            bisectStep(bisect);
+        }
+    }
+
+    /** Handle the `bisect good`, `bisect bad` and `bisect skip` commands,
+     * marking the commit NAME, or the current commit if it is null, as
+     * KIND, and checking out the next commit to test.
+     * @param kind "good", "bad" or "skip".
+     * @param name the commit to mark, or null. */
+    public void bisectMark(String kind, String name) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Bisect bisect = Bisect.read(_pathGitlet);
+        if (bisect == null) {
+            System.out.println("You are not bisecting.");
+            return;
+        }
+        ObjectId id = name == null ? getCurrentCommit().getID()
+                : commitArg(name);
+        if (id == null) {
+            return;
+        }
+        bisect.mark(kind, id);
+        bisect.write(_pathGitlet);
+        if (bisect.ready()) {
+            bisectStep(bisect);
+        }
+    }
+
+    /** Handle the `bisect run` command, running COMMAND in the working
+     * directory on each commit to test and marking the commit good if it
+     * exits with 0, skipped if with 125 and bad if with another code
+     * below 128, until the first bad commit is found.
+     * @param command the command and its arguments. */
+    public void bisectRun(List<String> command) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
         }
-        Commit rmBranch = Utils.readObject(pathToBranchRM, Commit.class);
+        Bisect bisect = Bisect.read(_pathGitlet);
+        if (bisect == null) {
+            System.out.println("You are not bisecting.");
+            return;
+        }
+        if (!bisect.ready()) {
+            System.out.println("Mark a good and a bad commit first.");
+            return;
+        }
+        while (true) {
+            System.out.flush();
+            int code;
+            try {
+                code = new ProcessBuilder(command)
+                        .directory(new File(_workDir)).inheritIO()
+                        .start().waitFor();
+            } catch (IOException excp) {
+                System.out.println("bisect run failed: "
+                        + excp.getMessage());
+                return;
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (code < 0 || code >= 128) {
+                System.out.println("bisect run failed: exit code " + code);
+                return;
+            }
+            bisect.mark(code == 0 ? "good" : code == 125 ? "skip" : "bad",
+                    getCurrentCommit().getID());
+            bisect.write(_pathGitlet);
+            Bisect.Step step = bisectStep(bisect);
+            if (step == null || step.found() || step.commit() == null) {
+                return;
+            }
+        }
+    }
+
+    /** Take the next step of BISECT: check out the next commit to test,
+     * changing only the files that differ, or report the first bad
+     * commit. Return the step, or null if it could not be taken.
+     * @param bisect the bisection.
+     * @return Bisect.Step. */
+    private Bisect.Step bisectStep(Bisect bisect) {
+        Bisect.Step step = bisect.next(graph(), this::findCommit);
+        if (step == null) {
+            System.out.println("The bad commit is an ancestor of a good "
+                    + "commit.");
+        } else if (step.found()) {
+            System.out.println(step.commit() + " is the first bad commit");
+            System.out.println(findCommit(step.commit()).toLog());
+        } else if (step.commit() == null) {
+            System.out.println("There are only skipped commits left to "
+                    + "test. The first bad commit could be any of:");
+            for (ObjectId id : step.candidates()) {
+                System.out.println(id);
+            }
+        } else {
+            Commit next = new Commit(findCommit(step.commit()));
+            next.setBranch(bisect.branch());
+            if (!checkUntrackedDir(next)) {
+                return null;
+            }
+            moveWorkingTree(getCurrentCommit(), next);
+            stagingArea().clear();
+            setHead(next, "bisect: checkout " + next.getID());
+            System.out.println("Bisecting: " + step.left() + " revisions "
+                    + "left to test after this (roughly " + step.steps()
+                    + " steps)");
+            System.out.println("[" + next.getID() + "] "
+                    + next.getMsg().split("\n", 2)[0]);
+        }
+        return step;
+    }
+
+    /** Handle the `bisect reset` command, ending the bisection and
+     * checking out the branch it started on. */
+    public void bisectReset() {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Bisect bisect = Bisect.read(_pathGitlet);
+        if (bisect == null) {
+            System.out.println("You are not bisecting.");
+            return;
+        }
+        Commit branch = _refs.branch(bisect.branch(), this::findCommit);
+        if (branch == null) {
+            System.out.println("No such branch exists.");
+        } else if (checkUntrackedDir(branch)) {
+            moveWorkingTree(getCurrentCommit(), branch);
+            stagingArea().clear();
+            setHead(branch, "bisect: reset to " + bisect.branch());
+        } else {
+            return;
+        }
+        Bisect.delete(_pathGitlet);
+    }
+
+    /** Handle the `fsck` command, checking that every object is intact
+     * and that every object a commit, manifest or ref names exists. */
+    public void fsck() {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        System.out.println(new Fsck(_pathGitlet).check());
+    }
+
+    /** Handle the `gc` command.
+     * @param grace how long ago, in ms, an unreachable object must have
+     *              been written to be deleted. */
+    public void gc(long grace) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        System.out.println(new GarbageCollector(_pathGitlet).collect(grace));
+    }
+
+    /** Handle the `diff` command, writing in unified format the changes
+     * from commit FROM to commit TO, or to the working directory if TO is
+     * null. FROM defaults to the current commit. Only the files in PATHS
+     * are compared unless it is empty. Files whose blobs are the same are
+     * skipped without being read, the rest are compared in parallel, and
+     * files too big to hold their differences in memory are compared as
+     * their turn comes to be written.
+     * @param from the abbreviated SHA-1 of the old commit, or null.
+     * @param to the abbreviated SHA-1 of the new commit, or null.
+     * @param paths the files to compare. */
+    public void diff(String from, String to, List<String> paths) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Commit older;
+        Commit newer;
+        try {
+            older = from == null ? getCurrentCommit()
+                    : readCommit(translate(from));
+            newer = to == null ? null : readCommit(translate(to));
+        } catch (IllegalArgumentException excp) {
+            System.out.println("No commit with that id exists.");
+            return;
+        }
+        TreeMap<String, ObjectId> after = new TreeMap<>();
+        if (newer != null) {
+            for (String file : newer.getFilesBlobsMap()) {
+                after.put(file, newer.getBlob(file));
+            }
+        } else {
+            workingFiles(older, after);
+        }
+        ArrayList<String> names = new ArrayList<>();
+        for (String file : older.getFilesBlobsMap()) {
+            if (!after.containsKey(file)) {
+                names.add(file);
+            }
+        }
+        names.addAll(after.keySet());
+        names.removeIf(file -> !paths.isEmpty() && !paths.contains(file));
+        names.sort(null);
+        List<String> changed = names.parallelStream()
+                .filter(file -> !older.isTracked(file)
+                        || !older.getBlob(file).equals(after.get(file)))
+                .collect(Collectors.toList());
+        OutputStream out = new BufferedOutputStream(System.out);
+        int[] next = {0};
+        IntStream.range(0, changed.size()).parallel()
+                .mapToObj(i -> diffSize(older, newer, changed.get(i))
+                        > DIFF_BUFFER ? null : diffBytes(older, newer,
+                        changed.get(i)))
+                .forEachOrdered(bytes -> {
+                    String file = changed.get(next[0]);
+                    next[0] += 1;
+                    try {
+                        if (bytes == null) {
+                            diffFile(older, newer, file, out);
+                        } else {
+                            out.write(bytes);
+                        }
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp.getMessage());
+                    }
+                });
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Put in FILES the files of the working directory diff compares with
+     * commit OLDER, mapped to their SHA-1: those tracked by it or by the
+     * current commit, or staged, that exist and are not staged for
+     * removal. Files still the same as in OLDER are not read.
+     * @param older the commit compared with.
+     * @param files the files found. */
+    private void workingFiles(Commit older, Map<String, ObjectId> files) {
+        TreeMap<String, ObjectId> candidates = new TreeMap<>();
+        for (String file : older.getFilesBlobsMap()) {
+            candidates.put(file, older.getBlob(file));
+        }
+        for (String file : getCurrentCommit().getFilesBlobsMap()) {
+            candidates.putIfAbsent(file, null);
+        }
+        for (String file : getStaged()) {
+            candidates.putIfAbsent(file, null);
+        }
+        Materializer materializer = materializer();
+        StagingArea staging = stagingArea();
+        files.putAll(candidates.keySet().parallelStream()
+                .filter(file -> !staging.checkRemoved(file)
+                        && Utils.join(_workDir, file).isFile())
+                .collect(Collectors.toMap(file -> file, file -> {
+                    ObjectId blob = candidates.get(file);
+                    if (blob != null && materializer.isPristine(file, blob)) {
+                        return blob;
+                    }
+                    return Utils.hash(Utils.join(_workDir, file));
+                })));
+    }
+
+    /** Get the combined size of the versions of FILE in commit OLDER and
+     * in commit NEWER, or the working directory if NEWER is null.
+     * @param older the old commit.
+     * @param newer the new commit, or null.
+     * @param file the file name.
+     * @return long. */
+    private long diffSize(Commit older, Commit newer, String file) {
+        long size = 0;
+        if (older.isTracked(file)) {
+            size += _blobStore.size(older.getBlob(file));
+        }
+        if (newer == null) {
+            size += Utils.join(_workDir, file).length();
+        } else if (newer.isTracked(file)) {
+            size += _blobStore.size(newer.getBlob(file));
+        }
+        return size;
+    }
+
+    /** Get the differences diff writes for FILE.
+     * @param older the old commit.
+     * @param newer the new commit, or null for the working directory.
+     * @param file the file name.
+     * @return byte[]. */
+    private byte[] diffBytes(Commit older, Commit newer, String file) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            diffFile(older, newer, file, bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Write to OUT the differences of FILE between commit OLDER and
+     * commit NEWER, or the working directory if NEWER is null.
+     * @param older the old commit.
+     * @param newer the new commit, or null.
+     * @param file the file name.
+     * @param out where to write. */
+    private void diffFile(Commit older, Commit newer, String file,
+                          OutputStream out) throws IOException {
+        boolean before = older.isTracked(file);
+        boolean after = newer == null
+                ? Utils.join(_workDir, file).isFile()
+                : newer.isTracked(file);
+        byte[] old = before ? blobContents(older.getBlob(file)) : new byte[0];
+        byte[] now;
+        if (!after) {
+            now = new byte[0];
+        } else if (newer == null) {
+            now = workContents(file);
+        } else {
+            now = blobContents(newer.getBlob(file));
+        }
+        new LineDiff(old, now).write(before ? file : null,
+                after ? file : null, out);
+    }
+
+    /** Handle the `blame` command, showing each line of file FILENAME in
+     * the current commit with the commit that last changed it and that
+     * commit's date.
+     * @param fileName the file name. */
+    public void blame(String fileName) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Commit head = getCurrentCommit();
+        if (!head.isTracked(fileName)) {
+            System.out.println("File does not exist in that commit.");
+            return;
+        }
+        ObjectId[] owners = new Blame(_pathGitlet, this::findCommit)
+                .blame(head, fileName);
+        String[] lines = readBlob(head.getBlob(fileName)).split("\n", -1);
+        String width = "%" + Integer.toString(owners.length).length() + "d";
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < owners.length; i += 1) {
+            Commit owner = findCommit(owners[i]);
+            out.append(owners[i].toString(), 0, 8).append(" (")
+                    .append(owner == null ? "?" : owner.getTime()).append(' ')
+                    .append(String.format(width, i + 1)).append(") ")
+                    .append(lines[i]).append('\n');
+        }
+        System.out.print(out);
+    }
+
+    /** Handle the `commit-graph` command, writing the commit-graph with
+     * bitmaps for the commits the branches point to. */
+    public void commitGraph() {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        _graph = new GarbageCollector(_pathGitlet).writeGraph();
+        System.out.println("Wrote commit-graph with " + _graph.commitCount()
+                + " commits and " + _graph.bitmapCount() + " bitmaps.");
+    }
+
+    /** Handle the `add-remote` command.
+     * @param remoteDir name of the remote directory.
+     * @param remoteName the remote name. */
+    public void addRemote(String remoteName, String remoteDir) {
+        if (!repos().isEmpty() && repos().containsKey(remoteName)) {
+            System.out.println("A remote with that name already exists.");
+            return;
+        }
+        repos().put(remoteName, remoteDir);
+        _reposChanged = true;
+    }
+
+    /** Handle the `rm-remote` command.
+     * @param remoteName the remote name. */
+    public void rmRemote(String remoteName) {
+        if (!repos().containsKey(remoteName)) {
+            System.out.println("A remote with that name does not exist.");
+            return;
+        }
+        repos().remove(remoteName);
+        _reposChanged = true;
+    }
+
+    /** Get the .gitlet directory of remote REMOTENAME, resolving a
+     * relative path against the working directory.
+     * @param remoteName the remote name.
+     * @return File. */
+    private File remoteDir(String remoteName) {
+        File dir = new File(repos().get(remoteName));
+        if (dir.isAbsolute()) {
+            return dir;
+        }
+        return Utils.join(_workDir, dir.getPath());
+    }
+
+    /** Get a reader of the stored commits of remote REMOTENAME, which
+     * returns null for missing commits.
+     * @param remoteName the remote name.
+     * @return Function<ObjectId, Commit>. */
+    private Function<ObjectId, Commit> remoteCommits(String remoteName) {
+        File commits = Utils.join(remoteDir(remoteName), "commits");
+        return id -> {
+            File file = Utils.join(commits, id.toString());
+            return file.exists()
+                    ? ObjectCache.readObject(file, Commit.class) : null;
+        };
+    }
+
+    /** Handle the `push` command.
+     * @param remoteName the remote name.
+     * @param remoteBranchName the remote branch name. */
+    public void push(String remoteName, String remoteBranchName)
+            throws IOException {
+        if (!repos().containsKey(remoteName)
+                || !remoteDir(remoteName).exists()) {
+            System.out.println("Remote directory not found.");
+            return;
+        }
+        File pathToBranchRM = new File(remoteDir(remoteName)
+                + "/branches/" + remoteBranchName);
+        Commit remoteBranchHead = new Refs(remoteDir(remoteName))
+                .branch(remoteBranchName, remoteCommits(remoteName));
+        if (remoteBranchHead == null) {
+            pathToBranchRM.createNewFile();
+            Utils.writeContents(pathToBranchRM, getCurrentCommit());
+        } else {
+            HashMap<ObjectId, Commit> futureCommits = new HashMap<>();
+            List<ObjectId> missing = graph().missing(
+                    getCurrentCommit().getID(), remoteBranchHead.getID());
+            boolean inHistory;
+            if (missing != null) {
+                inHistory = isAncestor(remoteBranchHead.getID(),
+                        getCurrentCommit().getID());
+                for (ObjectId id : missing) {
+                    futureCommits.put(id, findCommit(id));
+                }
+            } else {
+                inHistory = firstParentsSince(remoteBranchHead.getID(),
+                        futureCommits);
+            }
+            if (!inHistory) {
+                System.out.println("Please pull down remote "
+                        + "changes before pushing.");
+                return;
+            }
+            BlobStore remoteBlobs = new BlobStore(remoteDir(remoteName));
+            for (ObjectId commitID : futureCommits.keySet()) {
+                FileMap files = futureCommits.get(commitID)
+                        .getFilesBlobsMap();
+                for (String file : files) {
+                    _blobStore.copyTo(remoteBlobs, files.get(file));
+                }
+                File tmp = new File(remoteDir(remoteName)
+                        + "/commits/" + commitID);
+                tmp.createNewFile();
+                Utils.writeObject(tmp, futureCommits.get(commitID));
+            }
+            writeHead(remoteDir(remoteName), getCurrentCommit());
+        }
+    }
+
+    /** Collect in FUTURECOMMITS the current commit and its first parents
+     * until reaching commit STOP.
+     * Return true if STOP was reached.
+     * @param stop the SHA-1 of the commit to stop at.
+     * @param futureCommits the commits collected, by SHA-1.
+     * @return boolean. */
+    private boolean firstParentsSince(ObjectId stop,
+                                      HashMap<ObjectId, Commit>
+                                              futureCommits) {
+        Commit currCommit = getCurrentCommit();
+        while (currCommit != null) {
+            if (currCommit.getID().equals(stop)) {
+                return true;
+            }
+            futureCommits.put(currCommit.getID(), currCommit);
+            ObjectId firstParent = currCommit.getParentHash();
+            if (firstParent == null) {
+                break;
+            }
+            currCommit = ObjectCache.readObject(new File(_pathCommits
+                    + "/" + firstParent), Commit.class);
+        }
+        return false;
+    }
+
+    /** Handle the `fetch` command.
+     * @param remoteName the remote name.
+     * @param remoteBranchName the remote branch name. */
+    public void fetch(String remoteName, String remoteBranchName)
+            throws IOException {
+        if (!repos().containsKey(remoteName)
+                || !remoteDir(remoteName).exists()) {
+            System.out.println("Remote directory not found.");
+            return;
+        }
+        Commit remoteBranchHead = new Refs(remoteDir(remoteName))
+                .branch(remoteBranchName, remoteCommits(remoteName));
+        if (remoteBranchHead == null) {
+            System.out.println("That remote does not have that branch.");
+            return;
+        }
+        File pathCommitRM = new File(remoteDir(remoteName)
+                + "/commits");
+        BlobStore remoteBlobs = new BlobStore(remoteDir(remoteName));
+        for (File f : pathCommitRM.listFiles()) {
+            Commit rm = ObjectCache.readObject(f, Commit.class);
+            if (rm.getActiveBranch().equals(remoteBranchName)) {
+                ObjectId rmID = rm.getID();
+                File local = new File(_pathCommits + "/" + rmID);
+                if (!local.exists()) {
+                    local.createNewFile();
+                    Utils.writeObject(local, rm);
+                }
+                for (String file : rm.getFilesBlobsMap()) {
+                    remoteBlobs.copyTo(_blobStore, rm.getBlob(file));
+                }
+            }
+        }
+        String tmp = remoteName + "_" + remoteBranchName;
+        Commit rmBranch = new Commit(remoteBranchHead);
         rmBranch.setBranch(getCurrentBranch());
-        Utils.writeObject(localRMBranch, rmBranch);
+        writeBranch(tmp, rmBranch, "fetch: " + remoteName + " "
+                + remoteBranchName);
     }
 
     /** Handle the `pull` command.
@@ -0,0 +1,263 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** A mapping of file names to the ObjectIds of their blobs, kept in two
+ *  parallel arrays with open addressing and linear probing.  Compared to
+ *  a HashMap of Strings, each entry costs two array slots instead of a
+ *  map node and a 40-character String, and blob ids read from disk are
+ *  interned, so commits sharing a blob share one ObjectId.
+ *  @author Duc Nguyen
+ */
+class FileMap implements Iterable<String>, Serializable {
+
+    /** Version of the serialized form. */
+    private static final long serialVersionUID = -1831403978312574196L;
+
+    /** An empty FileMap. */
+    FileMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /** An empty FileMap with room for N entries before it grows. */
+    private FileMap(int n) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * MAX_LOAD_NUM < n * MAX_LOAD_DEN) {
+            capacity *= 2;
+        }
+        _names = new String[capacity];
+        _blobs = new ObjectId[capacity];
+    }
+
+    /** A copy of OTHER. */
+    FileMap(FileMap other) {
+        _names = other._names.clone();
+        _blobs = other._blobs.clone();
+        _size = other._size;
+    }
+
+    /** Return the number of files mapped. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff no files are mapped. */
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /** Return true iff NAME is mapped. */
+    boolean containsKey(String name) {
+        return _names[slot(name)] != null;
+    }
+
+    /** Return the blob NAME maps to, or null if it is not mapped. */
+    ObjectId get(String name) {
+        return _blobs[slot(name)];
+    }
+
+    /** Map NAME to BLOB. */
+    void put(String name, ObjectId blob) {
+        int i = slot(name);
+        if (_names[i] == null) {
+            if ((_size + 1) * MAX_LOAD_DEN > _names.length * MAX_LOAD_NUM) {
+                grow();
+                i = slot(name);
+            }
+            _names[i] = name;
+            _size += 1;
+        }
+        _blobs[i] = blob;
+    }
+
+    /** Remove any mapping for NAME. */
+    void remove(String name) {
+        int i = slot(name);
+        if (_names[i] == null) {
+            return;
+        }
+        _names[i] = null;
+        _blobs[i] = null;
+        _size -= 1;
+        int mask = _names.length - 1;
+        for (int j = (i + 1) & mask; _names[j] != null; j = (j + 1) & mask) {
+            int home = home(_names[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                _names[i] = _names[j];
+                _blobs[i] = _blobs[j];
+                _names[j] = null;
+                _blobs[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    /** Return the mapped file names in lexicographic order. */
+    String[] sortedNames() {
+        String[] result = new String[_size];
+        int k = 0;
+        for (String name : _names) {
+            if (name != null) {
+                result[k] = name;
+                k += 1;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Iterate over the mapped file names, in no particular order. */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                while (_next < _names.length && _names[_next] == null) {
+                    _next += 1;
+                }
+                return _next < _names.length;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                _next += 1;
+                return _names[_next - 1];
+            }
+
+            /** Next slot to examine. */
+            private int _next;
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof FileMap)) {
+            return false;
+        }
+        FileMap other = (FileMap) obj;
+        if (other._size != _size) {
+            return false;
+        }
+        for (int i = 0; i < _names.length; i += 1) {
+            if (_names[i] != null && !_blobs[i].equals(other.get(_names[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int i = 0; i < _names.length; i += 1) {
+            if (_names[i] != null) {
+                h += _names[i].hashCode() ^ _blobs[i].hashCode();
+            }
+        }
+        return h;
+    }
+
+    /** Return the slot holding NAME, or the empty slot where it would
+     *  go. */
+    private int slot(String name) {
+        int mask = _names.length - 1;
+        int i = home(name);
+        while (_names[i] != null && !_names[i].equals(name)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /** Return the slot where probing for NAME starts. */
+    private int home(String name) {
+        int h = name.hashCode() * GOLDEN;
+        return (h ^ (h >>> 16)) & (_names.length - 1);
+    }
+
+    /** Double the table. */
+    private void grow() {
+        String[] names = _names;
+        ObjectId[] blobs = _blobs;
+        _names = new String[2 * names.length];
+        _blobs = new ObjectId[2 * names.length];
+        for (int i = 0; i < names.length; i += 1) {
+            if (names[i] != null) {
+                int j = slot(names[i]);
+                _names[j] = names[i];
+                _blobs[j] = blobs[i];
+            }
+        }
+    }
+
+    /** Write this map to OUT as its size followed by each name and the
+     *  bytes of its blob id. */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(_size);
+        byte[] raw = new byte[ObjectId.LENGTH];
+        for (int i = 0; i < _names.length; i += 1) {
+            if (_names[i] != null) {
+                out.writeUTF(_names[i]);
+                _blobs[i].copyTo(raw, 0);
+                out.write(raw);
+            }
+        }
+    }
+
+    /** Return the map written by writeTo to IN. */
+    static FileMap readFrom(DataInput in) throws IOException {
+        int n = in.readInt();
+        FileMap result = new FileMap(n);
+        byte[] raw = new byte[ObjectId.LENGTH];
+        for (int k = 0; k < n; k += 1) {
+            String name = in.readUTF();
+            in.readFully(raw);
+            result.put(name, ObjectId.fromBytes(raw, 0).intern());
+        }
+        return result;
+    }
+
+    /** Serialize this map as written by writeTo. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        writeTo(out);
+    }
+
+    /** Read a map serialized by writeObject from IN. */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        FileMap map = readFrom(in);
+        _names = map._names;
+        _blobs = map._blobs;
+        _size = map._size;
+    }
+
+    /** Smallest table size; a power of two. */
+    private static final int MIN_CAPACITY = 8;
+
+    /** The table is kept at most MAX_LOAD_NUM / MAX_LOAD_DEN full. */
+    private static final int MAX_LOAD_NUM = 2, MAX_LOAD_DEN = 3;
+
+    /** Multiplier spreading String hash codes over the table. */
+    private static final int GOLDEN = 0x9e3779b9;
+
+    /** File names by slot; null for empty slots. */
+    private transient String[] _names;
+
+    /** Blob ids by slot, parallel to _names. */
+    private transient ObjectId[] _blobs;
+
+    /** Number of files mapped. */
+    private transient int _size;
+}
@@ -0,0 +1,291 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** Checks the objects of a .gitlet directory.  Every blob and chunk is
+ *  hashed again and compared with its name; blobs are streamed through a
+ *  buffer, chunk by chunk for those stored as chunks, so large blobs are
+ *  never held whole.  The objects are checked in parallel.  Every commit
+ *  is read and its parents and blobs looked up, every manifest's chunks,
+ *  and every ref's commit.  A commit's id covers only the fields it had
+ *  when made, so commits are checked only to be readable and stored
+ *  under their own id.  Finally the objects nothing refers to are
+ *  reported as dangling: commits no ref reaches, blobs no commit tracks,
+ *  chunks no manifest lists and annotated tags no tag names.  The
+ *  commits named by reflog records and the blobs staged for addition
+ *  count as referred to, since gc keeps them too.
+ *  @author Duc Nguyen
+ */
+class Fsck {
+
+    /** A checker for the repository in GITLETDIR. */
+    Fsck(File gitletDir) {
+        _gitletDir = gitletDir;
+        _commitDir = Utils.join(gitletDir, "commits");
+        _blobDir = Utils.join(gitletDir, "blobs");
+        _chunkDir = Utils.join(gitletDir, "chunks");
+        _tagDir = Utils.join(gitletDir, "tag-objects");
+        _store = new BlobStore(gitletDir);
+        _refs = new Refs(gitletDir);
+        _reflog = new Reflog(gitletDir);
+    }
+
+    /** Check the repository and return the problems found, one to a line
+     *  and sorted, followed by a one-line summary. */
+    String check() {
+        long start = System.nanoTime();
+        Set<ObjectId> commits = ids(_commitDir);
+        Set<ObjectId> blobs = ids(_blobDir);
+        Set<ObjectId> chunks = ids(_chunkDir);
+        Set<ObjectId> tags = ids(_tagDir);
+        Map<ObjectId, Commit> read = new ConcurrentHashMap<>();
+        Set<ObjectId> tracked = ConcurrentHashMap.newKeySet();
+        Set<ObjectId> listed = ConcurrentHashMap.newKeySet();
+
+        commits.parallelStream().forEach(id -> {
+            Commit commit = readCommit(id);
+            if (commit == null) {
+                return;
+            }
+            read.put(id, commit);
+            for (ObjectId parent : parents(commit)) {
+                if (!commits.contains(parent)) {
+                    report("missing commit " + parent + " (parent of " + id
+                           + ")");
+                }
+            }
+            for (String file : commit.getFilesBlobsMap()) {
+                ObjectId blob = commit.getBlob(file);
+                tracked.add(blob);
+                if (!blobs.contains(blob)) {
+                    report("missing blob " + blob + " (in commit " + id
+                           + ")");
+                }
+            }
+        });
+        blobs.parallelStream().forEach(id -> {
+            try {
+                BlobStore.Manifest manifest = _store.manifest(id);
+                if (manifest != null) {
+                    boolean whole = true;
+                    for (ObjectId chunk : manifest.chunks()) {
+                        listed.add(chunk);
+                        if (!chunks.contains(chunk)) {
+                            report("missing chunk " + chunk + " (in blob "
+                                   + id + ")");
+                            whole = false;
+                        }
+                    }
+                    if (!whole) {
+                        return;
+                    }
+                }
+                if (!_store.rehash(id).equals(id)) {
+                    report("corrupt blob " + id);
+                }
+            } catch (IllegalArgumentException excp) {
+                report("corrupt blob " + id);
+            }
+        });
+        chunks.parallelStream().forEach(id -> {
+            try {
+                if (!Utils.hash(_store.chunkFile(id)).equals(id)) {
+                    report("corrupt chunk " + id);
+                }
+            } catch (IllegalArgumentException excp) {
+                report("corrupt chunk " + id);
+            }
+        });
+
+        Set<ObjectId> named = new HashSet<>();
+        List<ObjectId> roots = new ArrayList<>();
+        for (String tag : _refs.tagNames()) {
+            ObjectId id = _refs.tag(tag);
+            named.add(id);
+            if (tags.contains(id)) {
+                checkTag(id, commits);
+            }
+            root(_refs.taggedCommit(tag), "tag " + tag, commits, roots);
+        }
+        for (String branch : _refs.branchNames()) {
+            ObjectId[] asked = new ObjectId[1];
+            Commit copy = _refs.branch(branch, id -> {
+                asked[0] = id;
+                return read.get(id);
+            });
+            root(copy == null ? asked[0] : copy.getID(), "branch " + branch,
+                 commits, roots);
+        }
+        root(ControlSystem.readHead(_gitletDir).getID(), "HEAD", commits,
+             roots);
+        for (ObjectId id : Stash.read(_gitletDir)) {
+            root(id, "stash", commits, roots);
+        }
+        List<String> logged = new ArrayList<>(_reflog.branches());
+        logged.add("HEAD");
+        for (String ref : logged) {
+            for (Reflog.Entry entry : _reflog.entries(ref)) {
+                for (ObjectId id : Arrays.asList(entry.oldId(),
+                                                 entry.newId())) {
+                    if (id != null && commits.contains(id)) {
+                        roots.add(id);
+                    }
+                }
+            }
+        }
+        tracked.addAll(StagingArea.read(StagingArea.file(_gitletDir))
+                       .getFilesSHA1Map().values());
+
+        Set<ObjectId> reached = new HashSet<>();
+        List<ObjectId> pending = new ArrayList<>(roots);
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.remove(pending.size() - 1);
+            Commit commit = read.get(id);
+            if (commit != null && reached.add(id)) {
+                pending.addAll(parents(commit));
+            }
+        }
+        dangling("commit", read.keySet(), reached);
+        dangling("blob", blobs, tracked);
+        dangling("chunk", chunks, listed);
+        dangling("tag", tags, named);
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                                                    - start);
+        StringBuilder out = new StringBuilder();
+        for (String problem : new TreeSet<>(_problems)) {
+            out.append(problem).append('\n');
+        }
+        out.append(String.format("Checked %d objects in %d ms.",
+                                 commits.size() + blobs.size()
+                                 + chunks.size() + tags.size(), millis));
+        return out.toString();
+    }
+
+    /** Record the problem PROBLEM. */
+    private void report(String problem) {
+        _problems.add(problem);
+    }
+
+    /** Return the commit with id ID, reporting it as corrupt and
+     *  returning null if it cannot be read or is stored under another
+     *  id. */
+    private Commit readCommit(ObjectId id) {
+        try {
+            Commit commit = ObjectCache.readObject(Utils.join(_commitDir,
+                                                              id.toString()),
+                                                   Commit.class);
+            commit.getFilesBlobsMap();
+            if (id.equals(commit.getID())) {
+                return commit;
+            }
+        } catch (IllegalArgumentException excp) {
+            ObjectCache.invalidate(Utils.join(_commitDir, id.toString()));
+        }
+        report("corrupt commit " + id);
+        return null;
+    }
+
+    /** Check that the annotated tag with id ID is intact and that its
+     *  commit, one of COMMITS, exists. */
+    private void checkTag(ObjectId id, Set<ObjectId> commits) {
+        try {
+            Tag tag = ObjectCache.readObject(Utils.join(_tagDir,
+                                                        id.toString()),
+                                             Tag.class);
+            if (!id.equals(tag.getID()) || !id.equals(tag.rehash())) {
+                report("corrupt tag " + id);
+            } else if (!commits.contains(tag.getTarget())) {
+                report("missing commit " + tag.getTarget() + " (tag object "
+                       + id + ")");
+            }
+        } catch (IllegalArgumentException excp) {
+            report("corrupt tag " + id);
+        }
+    }
+
+    /** Add ID, the commit the ref REF names, to ROOTS, reporting it as
+     *  missing if it is not one of COMMITS. */
+    private void root(ObjectId id, String ref, Set<ObjectId> commits,
+                      List<ObjectId> roots) {
+        if (id == null || !commits.contains(id)) {
+            report("missing commit " + id + " (" + ref + ")");
+        } else {
+            roots.add(id);
+        }
+    }
+
+    /** Report the objects of kind KIND among STORED that are not among
+     *  USED as dangling. */
+    private void dangling(String kind, Set<ObjectId> stored,
+                          Set<ObjectId> used) {
+        for (ObjectId id : stored) {
+            if (!used.contains(id)) {
+                report("dangling " + kind + " " + id);
+            }
+        }
+    }
+
+    /** Return the ids of the parents of COMMIT. */
+    private static List<ObjectId> parents(Commit commit) {
+        List<ObjectId> result = new ArrayList<>(2);
+        if (commit.getParentHash() != null) {
+            result.add(commit.getParentHash());
+        }
+        if (commit.getSecondParentHash() != null) {
+            result.add(commit.getSecondParentHash());
+        }
+        return result;
+    }
+
+    /** Return the ids of the objects stored in DIR, which may not
+     *  exist. */
+    private static Set<ObjectId> ids(File dir) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        Set<ObjectId> result = new HashSet<>();
+        if (names != null) {
+            for (String name : names) {
+                if (ObjectId.isHex(name)) {
+                    result.add(ObjectId.fromHex(name));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The .gitlet directory. */
+    private final File _gitletDir;
+
+    /** Directory of commits. */
+    private final File _commitDir;
+
+    /** Directory of blobs and manifests. */
+    private final File _blobDir;
+
+    /** Directory of chunks. */
+    private final File _chunkDir;
+
+    /** Directory of annotated tags. */
+    private final File _tagDir;
+
+    /** The blobs. */
+    private final BlobStore _store;
+
+    /** The branches and tags. */
+    private final Refs _refs;
+
+    /** The logs of HEAD and the branches. */
+    private final Reflog _reflog;
+
+    /** The problems found so far. */
+    private final Set<String> _problems = ConcurrentHashMap.newKeySet();
+}
@@ -0,0 +1,321 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/** Deletes the commits and blobs of a .gitlet directory that no ref can
+ *  reach.  Marking walks the commit graph breadth first from every ref,
+ *  expanding each level of the walk in parallel; visited commits and the
+ *  blobs they track are recorded in bitmaps indexed by each object's
+ *  position in the sorted listing of its directory.  Sweeping then
+ *  deletes unmarked objects whose files are older than a grace period,
+ *  so that objects written by a command running concurrently survive.
+ *  Commits in the commit-graph are not walked: the objects reachable
+ *  from them are taken from its bitmaps.  The chunks of large blobs are
+ *  swept after the blobs, keeping those listed by a remaining manifest.
+ *  Before marking, the reflogs are compacted, dropping records older
+ *  than REFLOG_EXPIRY and the logs of deleted branches; the commits the
+ *  remaining records name, before and after each move, are roots, so a
+ *  commit a reset moved away from stays recoverable until its record
+ *  expires, however old the commit is.  Once the sweep is done, cached
+ *  blame results of deleted commits are dropped and a new commit-graph is
+ *  written.
+ *  @author Duc Nguyen
+ */
+class GarbageCollector {
+
+    /** Grace period used when none is given: two weeks, in ms. */
+    static final long DEFAULT_GRACE = TimeUnit.DAYS.toMillis(14);
+
+    /** Age after which reflog records are dropped: 90 days, in ms. */
+    static final long REFLOG_EXPIRY = TimeUnit.DAYS.toMillis(90);
+
+    /** A collector for the repository in GITLETDIR. */
+    GarbageCollector(File gitletDir) {
+        _gitletDir = gitletDir;
+        _refs = new Refs(gitletDir);
+        _reflog = new Reflog(gitletDir);
+        _graph = CommitGraph.read(gitletDir);
+        _commits = new ObjectIndex(Utils.join(gitletDir, "commits"));
+        _blobs = new ObjectIndex(Utils.join(gitletDir, "blobs"));
+        _chunks = new ObjectIndex(Utils.join(gitletDir, "chunks"));
+        _store = new BlobStore(gitletDir);
+    }
+
+    /** Delete unreachable objects last modified more than GRACE ms ago,
+     *  and return a one-line report of what was reclaimed. */
+    String collect(long grace) {
+        long start = System.nanoTime();
+        expireReflogs(System.currentTimeMillis() - REFLOG_EXPIRY);
+        mark();
+        long cutoff = System.currentTimeMillis() - grace;
+        LongAdder bytes = new LongAdder();
+        int commits = _commits.sweep(cutoff, bytes);
+        int blobs = _blobs.sweep(cutoff, bytes);
+        _blobs.stored().parallel().map(_store::manifest)
+            .filter(m -> m != null)
+            .forEach(m -> Arrays.stream(m.chunks()).forEach(_chunks::mark));
+        _chunks.sweep(cutoff, bytes);
+        Blame.prune(_gitletDir);
+        writeGraph();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                                                    - start);
+        return String.format("Removed %d commits and %d blobs, reclaiming "
+                             + "%d bytes in %d ms.", commits, blobs,
+                             bytes.sum(), millis);
+    }
+
+    /** Write the commit-graph of the objects now stored, with bitmaps
+     *  for the roots, and return it. */
+    CommitGraph writeGraph() {
+        return CommitGraph.write(_gitletDir, roots().stream()
+                                 .map(Commit::getID)
+                                 .collect(Collectors.toList()));
+    }
+
+    /** Drop the records of reflogs made before CUTOFF, in ms since the
+     *  epoch, and the reflogs of deleted branches. */
+    void expireReflogs(long cutoff) {
+        List<String> refs = new ArrayList<>(_reflog.branches());
+        refs.add("HEAD");
+        for (String ref : refs) {
+            if (!ref.equals("HEAD") && !_refs.hasBranch(ref)) {
+                _reflog.delete(ref);
+            } else {
+                _reflog.compact(ref, e -> e.time() >= cutoff);
+            }
+        }
+    }
+
+    /** Return the commits the branches, tags, HEAD and the stash entries
+     *  point to. */
+    List<Commit> roots() {
+        List<Commit> roots = new ArrayList<>();
+        roots.add(ControlSystem.readHead(_gitletDir));
+        for (String name : _refs.branchNames()) {
+            Commit branch = _refs.branch(name, this::stored);
+            if (branch != null) {
+                roots.add(branch);
+            }
+        }
+        List<ObjectId> ids = new ArrayList<>(Stash.read(_gitletDir));
+        for (String name : _refs.tagNames()) {
+            ids.add(_refs.taggedCommit(name));
+        }
+        for (ObjectId id : ids) {
+            Commit commit = stored(id);
+            if (commit != null) {
+                roots.add(commit);
+            }
+        }
+        return roots;
+    }
+
+    /** Return the stored commits the reflog records name, before and
+     *  after each move. */
+    List<Commit> reflogRoots() {
+        List<String> refs = new ArrayList<>(_reflog.branches());
+        refs.add("HEAD");
+        Set<ObjectId> ids = new HashSet<>();
+        for (String ref : refs) {
+            for (Reflog.Entry entry : _reflog.entries(ref)) {
+                ids.add(entry.newId());
+                if (entry.oldId() != null) {
+                    ids.add(entry.oldId());
+                }
+            }
+        }
+        List<Commit> roots = new ArrayList<>();
+        for (ObjectId id : ids) {
+            Commit commit = stored(id);
+            if (commit != null) {
+                roots.add(commit);
+            }
+        }
+        return roots;
+    }
+
+    /** Return the stored commit with id ID, or null if there is none. */
+    private Commit stored(ObjectId id) {
+        File file = _commits.file(id);
+        return file.exists() ? ObjectCache.readObject(file, Commit.class)
+            : null;
+    }
+
+    /** Mark every commit reachable from the roots, every blob those
+     *  commits track, and the blobs staged for addition.  The copy of a
+     *  root held in its ref file is walked along with the stored commit,
+     *  since the two may track different files, and the stored commit may
+     *  be missing after a fetch. */
+    private void mark() {
+        List<Commit> level = new ArrayList<>();
+        for (Commit root : roots()) {
+            level.add(root);
+            if (expand(root.getID())) {
+                level.add(read(root.getID()));
+            }
+        }
+        for (Commit logged : reflogRoots()) {
+            if (expand(logged.getID())) {
+                level.add(logged);
+            }
+        }
+        for (ObjectId staged : StagingArea.read(StagingArea.file(_gitletDir))
+                 .getFilesSHA1Map().values()) {
+            _blobs.mark(staged);
+        }
+        while (!level.isEmpty()) {
+            level = level.parallelStream()
+                .peek(this::markBlobs)
+                .flatMap(c -> Stream.of(c.getParentHash(),
+                                        c.getSecondParentHash()))
+                .filter(this::expand)
+                .map(this::read)
+                .collect(Collectors.toList());
+        }
+        Bitmap reached = new Bitmap();
+        for (ObjectId id : _covered) {
+            reached.or(_graph.reachable(id));
+        }
+        reached.forEach(pos -> {
+            ObjectIndex index = _graph.isCommit(pos) ? _commits : _blobs;
+            index.mark(_graph.objectAt(pos));
+        });
+    }
+
+    /** Return true iff the commit with id ID must be read and walked:
+     *  it is not null, has not been marked before, and is not in the
+     *  commit-graph, whose bitmaps cover it instead. */
+    private boolean expand(ObjectId id) {
+        if (id == null) {
+            return false;
+        }
+        if (_graph.contains(id)) {
+            _covered.add(id);
+            return false;
+        }
+        return _commits.mark(id);
+    }
+
+    /** Return the stored commit with id ID. */
+    private Commit read(ObjectId id) {
+        return ObjectCache.readObject(_commits.file(id), Commit.class);
+    }
+
+    /** Mark the blobs tracked by COMMIT. */
+    private void markBlobs(Commit commit) {
+        FileMap files = commit.getFilesBlobsMap();
+        for (String name : files) {
+            _blobs.mark(files.get(name));
+        }
+    }
+
+    /** The objects stored in one directory, with a bitmap of those
+     *  marked reachable. */
+    private static class ObjectIndex {
+
+        /** An index of the objects in DIR. */
+        ObjectIndex(File dir) {
+            List<String> names = Utils.plainFilenamesIn(dir);
+            _dir = dir;
+            _ids = (names == null ? new ArrayList<String>() : names).stream()
+                .filter(ObjectId::isHex).map(ObjectId::fromHex)
+                .toArray(ObjectId[]::new);
+            _marks = new AtomicLongArray((_ids.length + 63) / 64);
+        }
+
+        /** Return the file holding the object with id ID. */
+        File file(ObjectId id) {
+            return Utils.join(_dir, id.toString());
+        }
+
+        /** Mark the object with id ID, returning true iff it is stored
+         *  here and was not marked before. */
+        boolean mark(ObjectId id) {
+            int i = Arrays.binarySearch(_ids, id);
+            if (i < 0) {
+                return false;
+            }
+            long bit = 1L << (i & 63);
+            while (true) {
+                long word = _marks.get(i >> 6);
+                if ((word & bit) != 0) {
+                    return false;
+                }
+                if (_marks.compareAndSet(i >> 6, word, word | bit)) {
+                    return true;
+                }
+            }
+        }
+
+        /** Return the ids of the objects whose files still exist. */
+        Stream<ObjectId> stored() {
+            return Arrays.stream(_ids).filter(id -> file(id).exists());
+        }
+
+        /** Delete the unmarked objects last modified before CUTOFF,
+         *  adding their sizes to BYTES, and return how many there were. */
+        int sweep(long cutoff, LongAdder bytes) {
+            LongAdder count = new LongAdder();
+            IntStream.range(0, _ids.length).parallel()
+                .filter(i -> (_marks.get(i >> 6) & (1L << (i & 63))) == 0)
+                .forEach(i -> {
+                    File f = file(_ids[i]);
+                    long length = f.length();
+                    if (f.lastModified() < cutoff && f.delete()) {
+                        ObjectCache.invalidate(f);
+                        bytes.add(length);
+                        count.increment();
+                    }
+                });
+            return count.intValue();
+        }
+
+        /** Directory holding the objects. */
+        private final File _dir;
+
+        /** Ids of the stored objects, in increasing order. */
+        private final ObjectId[] _ids;
+
+        /** Bit I is set iff _ids[I] has been marked. */
+        private final AtomicLongArray _marks;
+    }
+
+    /** The .gitlet directory. */
+    private final File _gitletDir;
+
+    /** The commit-graph as it was before collecting. */
+    private final CommitGraph _graph;
+
+    /** Commits in the commit-graph reached by the walk. */
+    private final Set<ObjectId> _covered = ConcurrentHashMap.newKeySet();
+
+    /** The branches and tags. */
+    private final Refs _refs;
+
+    /** The history of HEAD and the branches. */
+    private final Reflog _reflog;
+
+    /** The stored commits. */
+    private final ObjectIndex _commits;
+
+    /** The stored blobs. */
+    private final ObjectIndex _blobs;
+
+    /** The stored chunks of large blobs. */
+    private final ObjectIndex _chunks;
+
+    /** The blobs, for reading manifests. */
+    private final BlobStore _store;
+}
@@ -0,0 +1,396 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** The line differences between two versions of a file, written in
+ *  unified format.  The edit script is found with the linear-space
+ *  variant of Myers' O(ND) algorithm: each step finds the middle snake
+ *  of the shortest edit script by searching forwards and backwards at
+ *  once, then recurses on the two halves, so that only two vectors of
+ *  diagonals are needed whatever the size of the files.  Edits are
+ *  produced in order and fed to a writer that holds only the hunk being
+ *  built, so that output for a large change streams out as it is found.
+ *  Lines are compared as small ints, equal lines sharing a number.
+ *  @author Duc Nguyen
+ */
+class LineDiff {
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Number of leading bytes searched for a NUL to tell binary
+     *  files. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** The differences between OLD and NEW, which are the contents of
+     *  the two versions. */
+    LineDiff(byte[] old, byte[] now) {
+        _old = old;
+        _new = now;
+        _oldStarts = lineStarts(old);
+        _newStarts = lineStarts(now);
+        HashMap<String, Integer> numbers = new HashMap<>();
+        _a = number(old, _oldStarts, numbers);
+        _b = number(now, _newStarts, numbers);
+    }
+
+    /** Return true iff DATA looks like the contents of a binary file. */
+    static boolean isBinary(byte[] data) {
+        for (int i = 0; i < Math.min(data.length, BINARY_PROBE); i += 1) {
+            if (data[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Write to OUT the differences in unified format, under headers
+     *  naming the old version OLDNAME and the new one NEWNAME, either of
+     *  which is null if that version does not exist.  Write nothing if
+     *  the two are the same. */
+    void write(String oldName, String newName, OutputStream out)
+        throws IOException {
+        String name = newName == null ? oldName : newName;
+        String header = "diff --git a/" + name + " b/" + name + "\n";
+        if (isBinary(_old) || isBinary(_new)) {
+            if (!Arrays.equals(_old, _new)) {
+                out.write(ascii(header + "Binary files "
+                                + label("a/", oldName) + " and "
+                                + label("b/", newName) + " differ\n"));
+            }
+            return;
+        }
+        _out = out;
+        _header = header + "--- " + label("a/", oldName) + "\n+++ "
+            + label("b/", newName) + "\n";
+        _hunk = new int[16];
+        _ops = 0;
+        _leading = 0;
+        _trailing = 0;
+        _oldPos = 0;
+        _newPos = 0;
+        diff(0, _a.length, 0, _b.length);
+        finish();
+    }
+
+    /** Return, for each line of the new version, the number of the line
+     *  of the old version it was kept from, or -1 if it was inserted. */
+    int[] matches() {
+        _matches = new int[_b.length];
+        Arrays.fill(_matches, -1);
+        _oldPos = 0;
+        _newPos = 0;
+        try {
+            diff(0, _a.length, 0, _b.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        int[] result = _matches;
+        _matches = null;
+        return result;
+    }
+
+    /** Return the number of lines of DATA. */
+    static int lineCount(byte[] data) {
+        return lineStarts(data).length - 1;
+    }
+
+    /** Emit the edits turning _a[ALO .. AHI) into _b[BLO .. BHI). */
+    private void diff(int aLo, int aHi, int bLo, int bHi)
+        throws IOException {
+        int prefix = 0;
+        while (aLo + prefix < aHi && bLo + prefix < bHi
+               && _a[aLo + prefix] == _b[bLo + prefix]) {
+            prefix += 1;
+        }
+        edit(KEEP, prefix);
+        aLo += prefix;
+        bLo += prefix;
+        int suffix = 0;
+        while (aHi - suffix > aLo && bHi - suffix > bLo
+               && _a[aHi - suffix - 1] == _b[bHi - suffix - 1]) {
+            suffix += 1;
+        }
+        aHi -= suffix;
+        bHi -= suffix;
+        if (aLo == aHi) {
+            edit(INSERT, bHi - bLo);
+        } else if (bLo == bHi) {
+            edit(DELETE, aHi - aLo);
+        } else {
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            diff(aLo, snake[0], bLo, snake[1]);
+            edit(KEEP, snake[2] - snake[0]);
+            diff(snake[2], aHi, snake[3], bHi);
+        }
+        edit(KEEP, suffix);
+    }
+
+    /** Return the middle snake of a shortest edit script turning
+     *  _a[ALO .. AHI) into _b[BLO .. BHI), both non-empty, as its start
+     *  and end points {x0, y0, x1, y1}. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2 + 1;
+        int offset = max;
+        int[] forward = new int[2 * max + 2];
+        int[] backward = new int[2 * max + 2];
+        for (int d = 0; d < max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || k != d && forward[offset + k - 1]
+                    < forward[offset + k + 1]) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int c = delta - k;
+                if (odd && c >= -(d - 1) && c <= d - 1
+                    && x + backward[offset + c] >= n) {
+                    return new int[] { aLo + x0, bLo + y0,
+                                       aLo + x, bLo + y };
+                }
+            }
+            for (int c = -d; c <= d; c += 2) {
+                int x;
+                if (c == -d || c != d && backward[offset + c - 1]
+                    < backward[offset + c + 1]) {
+                    x = backward[offset + c + 1];
+                } else {
+                    x = backward[offset + c - 1] + 1;
+                }
+                int y = x - c;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _a[aHi - 1 - x] == _b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + c] = x;
+                int k = delta - c;
+                if (!odd && k >= -d && k <= d
+                    && x + forward[offset + k] >= n) {
+                    return new int[] { aHi - x, bHi - y,
+                                       aHi - x0, bHi - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Operation keeping a line. */
+    private static final int KEEP = 0;
+
+    /** Operation deleting a line of the old version. */
+    private static final int DELETE = 1;
+
+    /** Operation inserting a line of the new version. */
+    private static final int INSERT = 2;
+
+    /** Record COUNT operations OP, the next edits of the script.  Kept
+     *  lines are held only while they may be context for a change; once
+     *  more than twice CONTEXT follow the last change, its hunk is
+     *  written.  While matches runs, kept lines are only paired up. */
+    private void edit(int op, int count) throws IOException {
+        if (_matches != null) {
+            for (; count > 0; count -= 1) {
+                if (op == KEEP) {
+                    _matches[_newPos] = _oldPos;
+                }
+                _oldPos += op == INSERT ? 0 : 1;
+                _newPos += op == DELETE ? 0 : 1;
+            }
+            return;
+        }
+        for (; count > 0; count -= 1) {
+            if (op == KEEP) {
+                if (_ops == _leading && _leading == CONTEXT) {
+                    System.arraycopy(_hunk, 3, _hunk, 0, 3 * (_ops - 1));
+                    _ops -= 1;
+                    _leading -= 1;
+                }
+                append(op);
+                _oldPos += 1;
+                _newPos += 1;
+                if (_ops == _leading + 1 && _trailing == 0) {
+                    _leading += 1;
+                } else {
+                    _trailing += 1;
+                    if (_trailing > 2 * CONTEXT) {
+                        flush(_ops - _trailing + CONTEXT);
+                    }
+                }
+            } else {
+                append(op);
+                _trailing = 0;
+                if (op == DELETE) {
+                    _oldPos += 1;
+                } else {
+                    _newPos += 1;
+                }
+            }
+        }
+    }
+
+    /** Add operation OP at the current positions to the hunk. */
+    private void append(int op) {
+        if (3 * (_ops + 1) > _hunk.length) {
+            _hunk = Arrays.copyOf(_hunk, 2 * _hunk.length);
+        }
+        _hunk[3 * _ops] = op;
+        _hunk[3 * _ops + 1] = _oldPos;
+        _hunk[3 * _ops + 2] = _newPos;
+        _ops += 1;
+    }
+
+    /** Write out any change still held. */
+    private void finish() throws IOException {
+        if (_ops > _leading) {
+            flush(_ops - _trailing + Math.min(_trailing, CONTEXT));
+        }
+    }
+
+    /** Write the first END operations held as a hunk, keeping the last
+     *  CONTEXT kept lines as leading context for the next one. */
+    private void flush(int end) throws IOException {
+        int oldCount = 0, newCount = 0;
+        for (int i = 0; i < end; i += 1) {
+            int op = _hunk[3 * i];
+            oldCount += op == INSERT ? 0 : 1;
+            newCount += op == DELETE ? 0 : 1;
+        }
+        if (_header != null) {
+            _out.write(ascii(_header));
+            _header = null;
+        }
+        _out.write(ascii("@@ -" + range(_hunk[1], oldCount) + " +"
+                         + range(_hunk[2], newCount) + " @@\n"));
+        for (int i = 0; i < end; i += 1) {
+            int op = _hunk[3 * i];
+            if (op == INSERT) {
+                line('+', _new, _newStarts, _hunk[3 * i + 2]);
+            } else {
+                line(op == KEEP ? ' ' : '-', _old, _oldStarts,
+                     _hunk[3 * i + 1]);
+            }
+        }
+        int keep = Math.min(CONTEXT, _ops - end);
+        System.arraycopy(_hunk, 3 * (_ops - keep), _hunk, 0, 3 * keep);
+        _ops = keep;
+        _leading = keep;
+        _trailing = 0;
+    }
+
+    /** Write line I of DATA, whose lines start at STARTS, prefixed by
+     *  MARK. */
+    private void line(char mark, byte[] data, int[] starts, int i)
+        throws IOException {
+        _out.write(mark);
+        int end = starts[i + 1];
+        _out.write(data, starts[i], end - starts[i]);
+        if (data[end - 1] != '\n') {
+            _out.write(ascii("\n\\ No newline at end of file\n"));
+        }
+    }
+
+    /** Return the range of a hunk starting after line START and spanning
+     *  COUNT lines, as unified format writes it. */
+    private static String range(int start, int count) {
+        if (count == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (count == 0 ? start : start + 1) + "," + count;
+    }
+
+    /** Return the header label of the version NAME with prefix PREFIX. */
+    private static String label(String prefix, String name) {
+        return name == null ? "/dev/null" : prefix + name;
+    }
+
+    /** Return the bytes of S, which is ASCII but for file names. */
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return the offsets at which the lines of DATA start, followed by
+     *  DATA's length. */
+    private static int[] lineStarts(byte[] data) {
+        int[] starts = new int[16];
+        int n = 0;
+        for (int i = 0; i < data.length; i += 1) {
+            if (i == 0 || data[i - 1] == '\n') {
+                if (n + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, 2 * starts.length);
+                }
+                starts[n] = i;
+                n += 1;
+            }
+        }
+        starts[n] = data.length;
+        return Arrays.copyOf(starts, n + 1);
+    }
+
+    /** Return the numbers of the lines of DATA, which start at STARTS,
+     *  numbering each distinct line as NUMBERS directs and adding new
+     *  ones to it. */
+    private static int[] number(byte[] data, int[] starts,
+                                HashMap<String, Integer> numbers) {
+        int[] result = new int[starts.length - 1];
+        for (int i = 0; i < result.length; i += 1) {
+            String line = new String(data, starts[i],
+                                     starts[i + 1] - starts[i],
+                                     StandardCharsets.ISO_8859_1);
+            Integer k = numbers.putIfAbsent(line, numbers.size());
+            result[i] = k == null ? numbers.size() - 1 : k;
+        }
+        return result;
+    }
+
+    /** The old and new contents. */
+    private final byte[] _old, _new;
+
+    /** Offsets of the lines of each version, then its length. */
+    private final int[] _oldStarts, _newStarts;
+
+    /** Numbers of the lines of each version. */
+    private final int[] _a, _b;
+
+    /** While matches runs, the line of the old version each line of the
+     *  new one was kept from; otherwise null. */
+    private int[] _matches;
+
+    /** Where the differences are being written. */
+    private OutputStream _out;
+
+    /** Headers not yet written, or null once the first hunk has been. */
+    private String _header;
+
+    /** Operations of the hunk being built, three ints each: the
+     *  operation and the old and new positions at which it applies. */
+    private int[] _hunk;
+
+    /** Number of operations in _hunk. */
+    private int _ops;
+
+    /** Number of kept lines starting _hunk that precede any change. */
+    private int _leading;
+
+    /** Number of kept lines ending _hunk that follow its last change. */
+    private int _trailing;
+
+    /** Current positions in the old and new versions. */
+    private int _oldPos, _newPos;
+}
@@ -1,17 +1,15 @@
 package gitlet;
 
 import java.io.IOException;
-import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Duc Nguyen
  */
 public class Main {
 
-    /** The path to file SYSTEM. */
-    private static final File PATHTOSYSTEM = new File(
-            System.getProperty("user.dir") + "/.gitlet/SYSTEM");
-
     /** Check if enough operands come with the command.
      * @param lengthRequired the length required for the command to work.
      * @param args the command + operands.
@@ -27,7 +25,7 @@ public class Main {
             throws IOException {
         if (checkOperands(1, args)) {
             newSystem.init();
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else {
             System.out.println("Incorrect operands.");
         }
@@ -39,7 +37,7 @@ public class Main {
     public static void addHelper(ControlSystem newSystem, String... args) {
         if (checkOperands(2, args) && args[1] != null) {
             newSystem.add(args[1]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else {
             System.out.println("Incorrect operands.");
         }
@@ -50,8 +48,8 @@ public class Main {
      * @param args the command + operands. */
     public static void commitHelper(ControlSystem newSystem, String... args) {
         if (checkOperands(2, args) && args[1] != null) {
-            newSystem.commit(args[1], "");
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.commit(args[1], null);
+            newSystem.save();
         } else {
             System.out.println("Incorrect operands.");
         }
@@ -63,7 +61,7 @@ public class Main {
     public static void rmHelper(ControlSystem newSystem, String... args) {
         if (checkOperands(2, args) && args[1] != null) {
             newSystem.rm(args[1]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else {
             System.out.println("Incorrect operands.");
         }
@@ -75,6 +73,8 @@ public class Main {
     public static void logHelper(ControlSystem newSystem, String... args) {
         if (checkOperands(1, args)) {
             newSystem.log();
+        } else if (checkOperands(3, args) && args[1].equals("--")) {
+            newSystem.log(args[2]);
         } else {
             System.out.println("Incorrect operands.");
         }
@@ -97,7 +97,10 @@ public class Main {
      * @param args the command + operands. */
     public static void findHelper(ControlSystem newSystem, String... args) {
         if (checkOperands(2, args) && args[1] != null) {
-            newSystem.find(args[1]);
+            newSystem.find(args[1], false);
+        } else if (checkOperands(3, args) && args[1].equals("--first")
+                && args[2] != null) {
+            newSystem.find(args[2], true);
         } else {
             System.out.println("Incorrect operands.");
         }
@@ -126,7 +129,7 @@ public class Main {
                     && args[2].equals("--") && args[3] != null)
                     || (args.length == 2 && args[1] != null)) {
                 newSystem.checkout(args);
-                Utils.writeObject(PATHTOSYSTEM, newSystem);
+                newSystem.save();
             } else {
                 System.out.println("Incorrect operands.");
             }
@@ -140,7 +143,7 @@ public class Main {
             throws IOException {
         if (checkOperands(2, args) && args[1] != null) {
             newSystem.branch(args[1]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else {
             System.out.println("Incorrect operands.");
         }
@@ -152,7 +155,7 @@ public class Main {
     public static void rmBranchHelper(ControlSystem newSystem, String... args) {
         if (checkOperands(2, args) && args[1] != null) {
             newSystem.rmBranch(args[1]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else {
             System.out.println("Incorrect operands.");
         }
@@ -164,7 +167,7 @@ public class Main {
     public static void resetHelper(ControlSystem newSystem, String... args) {
         if (checkOperands(2, args) && args[1] != null) {
             newSystem.reset(args[1]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else {
             System.out.println("Incorrect operands.");
         }
@@ -181,6 +184,226 @@ public class Main {
         }
     }
 
+    /** Handle the `bisect` command from Main: `bisect start [BAD
+     * [GOOD...]]`, `bisect good|bad|skip [COMMIT]`, `bisect run COMMAND
+     * [ARG...]` or `bisect reset`.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void bisectHelper(ControlSystem newSystem,
+                                    String... args) {
+        String sub = args.length > 1 ? args[1] : "";
+        List<String> rest = Arrays.asList(args)
+                .subList(Math.min(2, args.length), args.length);
+        if (sub.equals("start")) {
+            newSystem.bisectStart(rest.isEmpty() ? null : rest.get(0),
+                    rest.isEmpty() ? rest : rest.subList(1, rest.size()));
+        } else if ((sub.equals("good") || sub.equals("bad")
+                || sub.equals("skip")) && args.length <= 3) {
+            newSystem.bisectMark(sub, rest.isEmpty() ? null : rest.get(0));
+        } else if (sub.equals("run") && !rest.isEmpty()) {
+            newSystem.bisectRun(rest);
+        } else if (sub.equals("reset") && checkOperands(2, args)) {
+            newSystem.bisectReset();
+        } else {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        newSystem.save();
+    }
+
+    /** Handle the `fsck` command from Main.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void fsckHelper(ControlSystem newSystem, String... args) {
+        if (checkOperands(1, args)) {
+            newSystem.fsck();
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Handle the `gc` command from Main, which takes an optional
+     * --prune=now or --prune=SECONDS setting the grace period.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void gcHelper(ControlSystem newSystem, String... args) {
+        long grace = GarbageCollector.DEFAULT_GRACE;
+        if (checkOperands(2, args) && args[1].startsWith("--prune=")) {
+            String value = args[1].substring("--prune=".length());
+            try {
+                grace = value.equals("now") ? 0
+                        : 1000 * Long.parseLong(value);
+            } catch (NumberFormatException excp) {
+                grace = -1;
+            }
+        } else if (!checkOperands(1, args)) {
+            grace = -1;
+        }
+        if (grace >= 0) {
+            newSystem.gc(grace);
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Handle the `blame` command from Main.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void blameHelper(ControlSystem newSystem, String... args) {
+        if (checkOperands(2, args)) {
+            newSystem.blame(args[1]);
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Handle the `cherry-pick` command from Main.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void cherryPickHelper(ControlSystem newSystem,
+                                        String... args) {
+        if (checkOperands(2, args)) {
+            newSystem.cherryPick(args[1]);
+            newSystem.save();
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Handle the `rebase` command from Main.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void rebaseHelper(ControlSystem newSystem, String... args) {
+        if (checkOperands(2, args)) {
+            newSystem.rebase(args[1]);
+            newSystem.save();
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Handle the `sparse-checkout` command from Main:
+     * `sparse-checkout set PATTERN...`, `sparse-checkout list`, or
+     * `sparse-checkout disable`.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void sparseCheckoutHelper(ControlSystem newSystem,
+                                            String... args) {
+        String sub = args.length > 1 ? args[1] : "";
+        if (sub.equals("set") && args.length > 2) {
+            newSystem.sparseCheckout(Arrays.asList(args)
+                    .subList(2, args.length));
+        } else if (sub.equals("disable") && checkOperands(2, args)) {
+            newSystem.sparseCheckout(Collections.emptyList());
+        } else if (sub.equals("list") && checkOperands(2, args)) {
+            newSystem.sparseCheckoutList();
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Handle the `tag` command from Main: `tag [-n]`, `tag -d NAME`,
+     * `tag NAME [COMMIT]`, or `tag -a NAME -m MESSAGE [COMMIT]`.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void tagHelper(ControlSystem newSystem, String... args) {
+        if (args.length == 1) {
+            newSystem.listTags(false);
+        } else if (checkOperands(2, args) && args[1].equals("-n")) {
+            newSystem.listTags(true);
+        } else if (checkOperands(3, args) && args[1].equals("-d")) {
+            newSystem.deleteTag(args[2]);
+        } else if ((args.length == 5 || args.length == 6)
+                && args[1].equals("-a") && args[3].equals("-m")) {
+            newSystem.tag(args[2], args.length == 6 ? args[5] : null,
+                          args[4]);
+        } else if (args.length <= 3) {
+            newSystem.tag(args[1], args.length == 3 ? args[2] : null, null);
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Handle the `reflog` command from Main: `reflog [REF]`, where REF
+     * is HEAD, the default, or a branch.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void reflogHelper(ControlSystem newSystem,
+                                    String... args) {
+        if (args.length <= 2) {
+            newSystem.reflog(args.length == 2 ? args[1] : "HEAD");
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Handle the `pack-refs` command from Main.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void packRefsHelper(ControlSystem newSystem,
+                                      String... args) {
+        if (checkOperands(1, args)) {
+            newSystem.packRefs();
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Handle the `stash` command from Main: `stash [push [-u]]`,
+     * `stash list`, or `stash pop|drop [stash@{N}]`.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void stashHelper(ControlSystem newSystem, String... args) {
+        String sub = args.length > 1 ? args[1] : "push";
+        String entry = args.length > 2 ? args[2] : "0";
+        if (sub.equals("push") && args.length <= 2) {
+            newSystem.stashPush(false);
+        } else if (sub.equals("push") && checkOperands(3, args)
+                && (args[2].equals("-u")
+                || args[2].equals("--include-untracked"))) {
+            newSystem.stashPush(true);
+        } else if (sub.equals("list") && checkOperands(2, args)) {
+            newSystem.stashList();
+        } else if (sub.equals("pop") && args.length <= 3) {
+            newSystem.stashPop(entry);
+        } else if (sub.equals("drop") && args.length <= 3) {
+            newSystem.stashDrop(entry);
+        } else {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        newSystem.save();
+    }
+
+    /** Handle the `diff` command from Main: up to two commit ids, then
+     * optionally `--` and the files to compare.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void diffHelper(ControlSystem newSystem, String... args) {
+        int dashes = Arrays.asList(args).indexOf("--");
+        int commits = (dashes < 0 ? args.length : dashes) - 1;
+        if (commits > 2 || dashes == args.length - 1) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        List<String> paths = dashes < 0 ? List.of()
+                : Arrays.asList(args).subList(dashes + 1, args.length);
+        newSystem.diff(commits > 0 ? args[1] : null,
+                commits > 1 ? args[2] : null, paths);
+    }
+
+    /** Handle the `commit-graph` command from Main.
+     * @param newSystem the current system.
+     * @param args the command + operands. */
+    public static void commitGraphHelper(ControlSystem newSystem,
+                                         String... args) {
+        if (checkOperands(1, args)) {
+            newSystem.commitGraph();
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
     /** Helper function to handle remote-related commands.
      * @param newSystem the new system.
      * @param args command + operands. */
@@ -189,23 +412,23 @@ public class Main {
         if (checkOperands(3, args)
                 && args[0].equals("add-remote")) {
             newSystem.addRemote(args[1], args[2]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else if (checkOperands(2, args)
                 && args[0].equals("rm-remote")) {
             newSystem.rmRemote(args[1]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else if (checkOperands(3, args)
                 && args[0].equals("push")) {
             newSystem.push(args[1], args[2]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else if (checkOperands(3, args)
                 && args[0].equals("fetch")) {
             newSystem.fetch(args[1], args[2]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         } else if  (checkOperands(3, args)
                 && args[0].equals("pull")) {
             newSystem.pull(args[1], args[2]);
-            Utils.writeObject(PATHTOSYSTEM, newSystem);
+            newSystem.save();
         }
     }
 
@@ -278,6 +501,58 @@ public class Main {
             mergeHelper(newSystem, args);
             match = true;
             break;
+        case "gc":
+            gcHelper(newSystem, args);
+            match = true;
+            break;
+        case "fsck":
+            fsckHelper(newSystem, args);
+            match = true;
+            break;
+        case "bisect":
+            bisectHelper(newSystem, args);
+            match = true;
+            break;
+        case "commit-graph":
+            commitGraphHelper(newSystem, args);
+            match = true;
+            break;
+        case "diff":
+            diffHelper(newSystem, args);
+            match = true;
+            break;
+        case "blame":
+            blameHelper(newSystem, args);
+            match = true;
+            break;
+        case "stash":
+            stashHelper(newSystem, args);
+            match = true;
+            break;
+        case "cherry-pick":
+            cherryPickHelper(newSystem, args);
+            match = true;
+            break;
+        case "rebase":
+            rebaseHelper(newSystem, args);
+            match = true;
+            break;
+        case "sparse-checkout":
+            sparseCheckoutHelper(newSystem, args);
+            match = true;
+            break;
+        case "tag":
+            tagHelper(newSystem, args);
+            match = true;
+            break;
+        case "pack-refs":
+            packRefsHelper(newSystem, args);
+            match = true;
+            break;
+        case "reflog":
+            reflogHelper(newSystem, args);
+            match = true;
+            break;
         default:
         }
         return match;
@@ -316,14 +591,20 @@ public class Main {
         return match;
     }
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+    /** Usage: java gitlet.Main [--trace[=FORMAT]] ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> ....  See Trace for the tracing options. */
     public static void main(String... args) throws IOException {
-        ControlSystem newSystem = new ControlSystem();
+        args = Trace.configure(args);
         emptyCommand(args);
-        if (switchLocal(newSystem, args)) {
+        Trace.begin(args[0]);
+        ControlSystem newSystem = new ControlSystem();
+        if (!newSystem.checkFormat()) {
+            System.exit(0);
+        } else if (switchLocal(newSystem, args)) {
+            Trace.finish();
             System.exit(0);
         } else if (switchRemote(newSystem, args)) {
+            Trace.finish();
             System.exit(0);
         } else {
             System.out.println("No command with that name exists.");
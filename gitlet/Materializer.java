@@ -0,0 +1,377 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Writes blobs from the object store into the working directory.
+ *  Checkout, reset and merge hand over the whole set of files they need
+ *  restored, which are then copied on a bounded pool of writer threads.
+ *  The number of writers defaults to the number of available processors
+ *  and may be set with the GITLET_IO_PARALLELISM environment variable.
+ *
+ *  Setting GITLET_CHECKOUT_MODE to "link" makes restored files hard links
+ *  to their blobs instead of copies, for working trees that are only
+ *  read.  The blob and the link share one inode, so the blob is made
+ *  read-only, and blobs are linked only where that stops writes: never
+ *  for root, whom the permissions do not bind.  Since a user may still
+ *  make a link writable and edit it in place, the size and modification
+ *  time of each blob are recorded in .gitlet/links when it is linked.  A
+ *  tracked file linked to its blob with the recorded size and time is
+ *  known to be unmodified without reading it; otherwise it is hashed.  A
+ *  blob whose size or time has changed is hashed again before it is
+ *  linked, and refused if it was damaged through a link.  Files that
+ *  cannot be linked, for instance across devices, are copied as usual,
+ *  and so are blobs stored as chunks, which are written chunk by chunk.
+ *  @author Duc Nguyen
+ */
+class Materializer {
+
+    /** Environment variable bounding the number of concurrent writers. */
+    static final String PARALLELISM_VAR = "GITLET_IO_PARALLELISM";
+
+    /** Environment variable selecting how files are restored. */
+    static final String MODE_VAR = "GITLET_CHECKOUT_MODE";
+
+    /** Value of MODE_VAR selecting hard links. */
+    static final String LINK_MODE = "link";
+
+    /** Size of the copy buffer each writer thread reuses. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Requests with fewer files than this are written on the calling
+     *  thread, where starting a pool would cost more than it saves. */
+    private static final int SERIAL_THRESHOLD = 16;
+
+    /** One reusable copy buffer per writer thread. */
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    /** A Materializer restoring blobs from STORE into WORKDIR, for the
+     *  repository in GITLETDIR, in the mode MODE_VAR selects. */
+    Materializer(BlobStore store, File workDir, File gitletDir) {
+        this(store, workDir, gitletDir,
+             LINK_MODE.equals(System.getenv(MODE_VAR)), parallelism());
+    }
+
+    /** A Materializer restoring blobs from STORE into WORKDIR, for the
+     *  repository in GITLETDIR, as links to them iff LINK, with at most
+     *  WRITERS concurrent writers. */
+    Materializer(BlobStore store, File workDir, File gitletDir,
+                 boolean link, int writers) {
+        _store = store;
+        _writers = writers;
+        _workDir = workDir;
+        _linksFile = new StateFile(Utils.join(gitletDir, "links"), "links",
+                                   1);
+        _link = link;
+    }
+
+    /** Return the configured number of concurrent writers. */
+    static int parallelism() {
+        return parallelism(System.getenv(PARALLELISM_VAR));
+    }
+
+    /** Return the number of concurrent writers VALUE, the setting of
+     *  PARALLELISM_VAR, asks for, or the number of available processors
+     *  if it is null or not a positive number. */
+    static int parallelism(String value) {
+        if (value != null) {
+            try {
+                int n = Integer.parseInt(value.trim());
+                if (n > 0) {
+                    return n;
+                }
+            } catch (NumberFormatException excp) {
+                /* Fall through to the default. */
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Restore every file in FILES, a mapping of file names to the SHA-1
+     *  of their blobs, into the working directory.  Throws
+     *  IllegalArgumentException in case of problems. */
+    void restore(Map<String, ObjectId> files) {
+        int writers = Math.min(_writers, files.size());
+        if (writers <= 1 || files.size() < SERIAL_THRESHOLD) {
+            try {
+                for (Map.Entry<String, ObjectId> e : files.entrySet()) {
+                    restoreOne(e.getKey(), e.getValue());
+                }
+            } finally {
+                saveLinks();
+            }
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(files.size());
+        for (Map.Entry<String, ObjectId> e : files.entrySet()) {
+            tasks.add(() -> {
+                restoreOne(e.getKey(), e.getValue());
+                return null;
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+            saveLinks();
+        }
+    }
+
+    /** Restore the blob with SHA-1 BLOB as the working file FILENAME. */
+    void restore(String fileName, ObjectId blob) {
+        try {
+            restoreOne(fileName, blob);
+        } finally {
+            saveLinks();
+        }
+    }
+
+    /** Restore the blob with SHA-1 BLOB as the working file FILENAME,
+     *  leaving any new record of a link to be saved. */
+    private void restoreOne(String fileName, ObjectId blob) {
+        File source = _store.file(blob);
+        File target = Utils.join(_workDir, fileName);
+        BlobStore.Manifest manifest = _store.manifest(blob);
+        if (manifest != null) {
+            restoreChunks(manifest, target);
+            return;
+        } else if (_link && link(blob, source, target)) {
+            return;
+        }
+        long start = Trace.start();
+        try (FileChannel in = FileChannel.open(source.toPath(),
+                                               StandardOpenOption.READ);
+             RandomAccessFile out = open(target, in.size())) {
+            long size = in.size();
+            copy(in, out.getChannel());
+            Trace.end(Trace.RESTORE, start, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the blob made of the chunks MANIFEST lists as TARGET. */
+    private void restoreChunks(BlobStore.Manifest manifest, File target) {
+        long start = Trace.start();
+        try (RandomAccessFile out = open(target, manifest.size())) {
+            for (ObjectId chunk : manifest.chunks()) {
+                try (FileChannel in = FileChannel.open(_store.chunkFile(chunk)
+                                                       .toPath(),
+                                                       StandardOpenOption
+                                                       .READ)) {
+                    copy(in, out.getChannel());
+                }
+            }
+            Trace.end(Trace.RESTORE, start, manifest.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write CONTENTS as the working file FILENAME. */
+    void write(String fileName, String contents) {
+        byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        File target = Utils.join(_workDir, fileName);
+        try (RandomAccessFile out = open(target, bytes.length)) {
+            out.write(bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff the working file FILENAME is a link to the blob
+     *  with SHA-1 BLOB that has not been modified.  A link whose size and
+     *  modification time are not those recorded when it was made is
+     *  hashed.  BLOB is null for an untracked file. */
+    boolean isPristine(String fileName, ObjectId blob) {
+        if (!_link || blob == null) {
+            return false;
+        }
+        File work = Utils.join(_workDir, fileName);
+        try {
+            if (!Files.isSameFile(work.toPath(),
+                                  _store.file(blob).toPath())) {
+                return false;
+            }
+        } catch (IOException excp) {
+            return false;
+        }
+        return unchanged(blob, work) || blob.equals(Utils.hash(work));
+    }
+
+    /** Replace TARGET with a hard link to SOURCE, the blob with SHA-1
+     *  BLOB, made read-only.  Return false if the permissions would not
+     *  keep the blob from being written through the link, or if the file
+     *  system refuses, leaving TARGET to be copied.  Throws
+     *  IllegalArgumentException if the blob was damaged through an
+     *  earlier link. */
+    private boolean link(ObjectId blob, File source, File target) {
+        try {
+            source.setWritable(false, false);
+            if (Files.isWritable(source.toPath())) {
+                return false;
+            }
+            boolean recorded = recorded(blob) != null;
+            if ((recorded ? !unchanged(blob, source) : linkCount(source) > 1)
+                && !_store.rehash(blob).equals(blob)) {
+                throw new IllegalArgumentException("corrupt blob " + blob);
+            }
+            Files.deleteIfExists(target.toPath());
+            Files.createLink(target.toPath(), source.toPath());
+            record(blob, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException excp) {
+            return false;
+        }
+    }
+
+    /** Return true iff FILE has the size and modification time recorded
+     *  when the blob with SHA-1 BLOB was linked. */
+    private boolean unchanged(ObjectId blob, File file) {
+        long[] stat = recorded(blob);
+        return stat != null && stat[0] == file.length()
+            && stat[1] == file.lastModified();
+    }
+
+    /** Return the size and modification time recorded when the blob with
+     *  SHA-1 BLOB was last linked, or null if it never was. */
+    private synchronized long[] recorded(ObjectId blob) {
+        return links().get(blob);
+    }
+
+    /** Record the size and modification time of SOURCE, the blob with
+     *  SHA-1 BLOB, just linked. */
+    private synchronized void record(ObjectId blob, File source) {
+        long[] stat = { source.length(), source.lastModified() };
+        long[] old = links().put(blob, stat);
+        _linksChanged |= old == null || !Arrays.equals(old, stat);
+    }
+
+    /** Return the records of linked blobs, reading them on first use. */
+    private Map<ObjectId, long[]> links() {
+        if (_links == null) {
+            _links = new HashMap<>();
+            byte[] contents = _linksFile.read();
+            if (contents != null) {
+                for (String line : new String(contents,
+                                              StandardCharsets.UTF_8)
+                         .split("\n")) {
+                    String[] fields = line.split(" ");
+                    if (fields.length == 3 && ObjectId.isHex(fields[0])) {
+                        _links.put(ObjectId.fromHex(fields[0]), new long[] {
+                            Long.parseLong(fields[1]),
+                            Long.parseLong(fields[2]) });
+                    }
+                }
+            }
+        }
+        return _links;
+    }
+
+    /** Save the records of linked blobs if any were added. */
+    private synchronized void saveLinks() {
+        if (!_linksChanged) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<ObjectId, long[]> e : _links.entrySet()) {
+            text.append(e.getKey()).append(' ').append(e.getValue()[0])
+                .append(' ').append(e.getValue()[1]).append('\n');
+        }
+        _linksFile.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        _linksChanged = false;
+    }
+
+    /** Return the number of directory entries sharing FILE's inode, or 1
+     *  where the file system does not report it. */
+    private static int linkCount(File file) {
+        try {
+            return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+        } catch (IOException | UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            return 1;
+        }
+    }
+
+    /** Copy the bytes readable from IN to OUT, using this thread's
+     *  buffer. */
+    private static void copy(FileChannel in, FileChannel out)
+        throws IOException {
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        while (in.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /** Open TARGET for writing, truncated or extended to SIZE bytes so
+     *  that its final length is allocated before any data is written.
+     *  A TARGET linked to a blob is unlinked first, so that the blob is
+     *  never written through it. */
+    private static RandomAccessFile open(File target, long size)
+        throws IOException {
+        if (target.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        if (target.exists() && linkCount(target) > 1) {
+            Files.delete(target.toPath());
+        }
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+        out.setLength(size);
+        return out;
+    }
+
+    /** The blobs restored. */
+    private final BlobStore _store;
+
+    /** The working directory. */
+    private final File _workDir;
+
+    /** True if files are restored as links to their blobs. */
+    private final boolean _link;
+
+    /** Most concurrent writers. */
+    private final int _writers;
+
+    /** The records of linked blobs. */
+    private final StateFile _linksFile;
+
+    /** The size and modification time of each linked blob when last
+     *  linked, or null until read. */
+    private Map<ObjectId, long[]> _links;
+
+    /** True iff _links has records not yet saved. */
+    private boolean _linksChanged;
+}
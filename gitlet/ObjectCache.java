@@ -0,0 +1,173 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A size-bounded cache of the commits, refs and blobs read from .gitlet
+ *  directories.  Entries are evicted least-recently-used first once their
+ *  total size on disk exceeds the budget, which defaults to 64 MiB and may
+ *  be set in bytes with the GITLET_CACHE_BYTES environment variable.
+ *
+ *  The cache is shared by everything running in one JVM, so that a batch
+ *  of commands reuses what earlier ones have read.  Each entry remembers
+ *  the modification time and length of its file and is reread when either
+ *  changes; writes made through Utils.writeContents drop the entry
+ *  outright.  Cached objects are shared, so callers must not modify them.
+ *  @author Duc Nguyen
+ */
+class ObjectCache {
+
+    /** Environment variable holding the cache budget in bytes. */
+    static final String BUDGET_VAR = "GITLET_CACHE_BYTES";
+
+    /** Budget used when BUDGET_VAR is not set. */
+    private static final long DEFAULT_BUDGET = 64L << 20;
+
+    /** Return the object of type EXPECTEDCLASS held in FILE, as for
+     *  Utils.readObject. */
+    static <T extends Serializable> T readObject(File file,
+                                                 Class<T> expectedClass) {
+        Object cached = lookup(file);
+        if (cached != null) {
+            return expectedClass.cast(cached);
+        }
+        T result = Utils.readObject(file, expectedClass);
+        store(file, result);
+        return result;
+    }
+
+    /** Return the entire contents of FILE, as for Utils.readContents.
+     *  The array is shared and must not be modified. */
+    static byte[] readContents(File file) {
+        Object cached = lookup(file);
+        if (cached instanceof byte[]) {
+            return (byte[]) cached;
+        }
+        byte[] result = Utils.readContents(file);
+        store(file, result);
+        return result;
+    }
+
+    /** Forget anything cached for FILE. */
+    static synchronized void invalidate(File file) {
+        Entry old = ENTRIES.remove(key(file));
+        if (old != null) {
+            _size -= old._length;
+        }
+    }
+
+    /** Empty the cache, keeping its counters. */
+    static synchronized void clear() {
+        ENTRIES.clear();
+        _size = 0;
+    }
+
+    /** Return the number of reads answered from the cache. */
+    static synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of reads that went to disk. */
+    static synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries evicted to stay within budget. */
+    static synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** Return a one-line summary of the cache's counters. */
+    static synchronized String stats() {
+        return String.format("cache: %d hits, %d misses, %d evictions, "
+                             + "%d entries, %d/%d bytes",
+                             _hits, _misses, _evictions, ENTRIES.size(),
+                             _size, BUDGET);
+    }
+
+    /** Return the cached value for FILE if it is still current, counting
+     *  the hit or miss. */
+    private static synchronized Object lookup(File file) {
+        Entry e = ENTRIES.get(key(file));
+        if (e != null && e._modified == file.lastModified()
+            && e._length == file.length()) {
+            _hits += 1;
+            return e._value;
+        }
+        _misses += 1;
+        return null;
+    }
+
+    /** Cache VALUE as the contents of FILE, evicting older entries as
+     *  needed to stay within budget. */
+    private static synchronized void store(File file, Object value) {
+        long length = file.length();
+        if (length > BUDGET) {
+            return;
+        }
+        Entry old = ENTRIES.put(key(file),
+                                new Entry(value, file.lastModified(), length));
+        if (old != null) {
+            _size -= old._length;
+        }
+        _size += length;
+        Iterator<Entry> eldest = ENTRIES.values().iterator();
+        while (_size > BUDGET && eldest.hasNext()) {
+            _size -= eldest.next()._length;
+            eldest.remove();
+            _evictions += 1;
+        }
+    }
+
+    /** Return the key under which FILE is cached. */
+    private static String key(File file) {
+        return file.getAbsolutePath();
+    }
+
+    /** Return the configured budget in bytes. */
+    private static long budget() {
+        String value = System.getenv(BUDGET_VAR);
+        if (value != null) {
+            try {
+                return Math.max(0, Long.parseLong(value.trim()));
+            } catch (NumberFormatException excp) {
+                /* Fall through to the default. */
+            }
+        }
+        return DEFAULT_BUDGET;
+    }
+
+    /** A cached value and the state of the file it was read from. */
+    private static class Entry {
+        /** An entry holding VALUE, read from a file last modified at
+         *  MODIFIED and LENGTH bytes long. */
+        Entry(Object value, long modified, long length) {
+            _value = value;
+            _modified = modified;
+            _length = length;
+        }
+
+        /** The cached object or byte array. */
+        private final Object _value;
+        /** Modification time of the file when it was read. */
+        private final long _modified;
+        /** Length of the file when it was read. */
+        private final long _length;
+    }
+
+    /** The cache budget in bytes. */
+    private static final long BUDGET = budget();
+
+    /** Cached entries by absolute path, least recently used first. */
+    private static final Map<String, Entry> ENTRIES =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size on disk of the cached entries. */
+    private static long _size;
+
+    /** Counters for reads and evictions. */
+    private static long _hits, _misses, _evictions;
+}
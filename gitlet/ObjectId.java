@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/** The 20-byte SHA-1 name of a commit or blob, held as two longs and an
+ *  int rather than as a 40-character hexadecimal String.  ObjectIds are
+ *  immutable, compare in the same order as their hexadecimal forms, and
+ *  hash on their leading bits, which SHA-1 already distributes evenly.
+ *  Ids read in bulk are interned, so that the many references to one
+ *  blob from different commits share a single object.
+ *  @author Duc Nguyen
+ */
+final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** Version of the serialized form. */
+    private static final long serialVersionUID = -3102906264779597904L;
+
+    /** Number of bytes in an ObjectId. */
+    static final int LENGTH = 20;
+
+    /** Number of hexadecimal digits in an ObjectId. */
+    static final int HEX_LENGTH = 2 * LENGTH;
+
+    /** The id whose bytes are W0, W1 and W2, most significant first. */
+    private ObjectId(long w0, long w1, int w2) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+    }
+
+    /** Return the id held in the LENGTH bytes of RAW starting at OFFSET. */
+    static ObjectId fromBytes(byte[] raw, int offset) {
+        return new ObjectId(getLong(raw, offset), getLong(raw, offset + 8),
+                            (int) getBits(raw, offset + 16, 4));
+    }
+
+    /** Return the id whose hexadecimal form is HEX.  Throws
+     *  IllegalArgumentException if HEX is not HEX_LENGTH hex digits. */
+    static ObjectId fromHex(CharSequence hex) {
+        if (hex.length() != HEX_LENGTH) {
+            throw new IllegalArgumentException("not a full SHA-1: " + hex);
+        }
+        return new ObjectId(parseHex(hex, 0, 16), parseHex(hex, 16, 16),
+                            (int) parseHex(hex, 32, 8));
+    }
+
+    /** Return true iff S is a well-formed hexadecimal id. */
+    static boolean isHex(CharSequence s) {
+        if (s.length() != HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEX_LENGTH; i += 1) {
+            if (Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the canonical ObjectId equal to this one.  Interned ids are
+     *  held weakly and dropped once nothing else refers to them.  The
+     *  table is split into STRIPES parts, each with its own lock, chosen
+     *  by the low bits of the id, so that threads reading commits in
+     *  parallel seldom wait on one another. */
+    ObjectId intern() {
+        Stripe stripe = INTERNED[_w2 & (STRIPES - 1)];
+        synchronized (stripe) {
+            WeakReference<ObjectId> ref = stripe.get(this);
+            ObjectId canonical = ref == null ? null : ref.get();
+            if (canonical == null) {
+                stripe.put(this, new WeakReference<>(this));
+                canonical = this;
+            }
+            return canonical;
+        }
+    }
+
+    /** Copy my LENGTH bytes into OUT, starting at OFFSET. */
+    void copyTo(byte[] out, int offset) {
+        putBits(out, offset, _w0, 8);
+        putBits(out, offset + 8, _w1, 8);
+        putBits(out, offset + 16, _w2, 4);
+    }
+
+    /** Write my hexadecimal form into OUT starting at OFFSET. */
+    void copyHexTo(char[] out, int offset) {
+        hex(out, offset, _w0, 16);
+        hex(out, offset + 16, _w1, 16);
+        hex(out, offset + 32, _w2 & 0xffffffffL, 8);
+    }
+
+    /** Return true iff my hexadecimal form starts with PREFIX, which may be
+     *  in either case. */
+    boolean startsWith(CharSequence prefix) {
+        if (prefix.length() > HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            int d = Character.digit(prefix.charAt(i), 16);
+            if (d < 0 || d != nibble(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the Ith hexadecimal digit of my value. */
+    int nibble(int i) {
+        long word = i < 16 ? _w0 : i < 32 ? _w1 : (_w2 & 0xffffffffL);
+        int shift = i < 32 ? 4 * (15 - i % 16) : 4 * (7 - (i - 32));
+        return (int) (word >>> shift) & 0xf;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(_w0, other._w0);
+        if (c == 0) {
+            c = Long.compareUnsigned(_w1, other._w1);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(_w2, other._w2);
+        }
+        return c;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w0 == other._w0 && _w1 == other._w1 && _w2 == other._w2;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_w0 >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        char[] out = new char[HEX_LENGTH];
+        copyHexTo(out, 0);
+        return new String(out);
+    }
+
+    /** Return the big-endian long in RAW[OFFSET .. OFFSET + 7]. */
+    private static long getLong(byte[] raw, int offset) {
+        return getBits(raw, offset, 8);
+    }
+
+    /** Return the big-endian value of the N bytes RAW[OFFSET ...]. */
+    private static long getBits(byte[] raw, int offset, int n) {
+        long v = 0;
+        for (int i = 0; i < n; i += 1) {
+            v = (v << 8) | (raw[offset + i] & 0xff);
+        }
+        return v;
+    }
+
+    /** Store the low N bytes of V big-endian in OUT[OFFSET ...]. */
+    private static void putBits(byte[] out, int offset, long v, int n) {
+        for (int i = n - 1; i >= 0; i -= 1) {
+            out[offset + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    /** Return the value of the N hex digits HEX[OFFSET ...]. */
+    private static long parseHex(CharSequence hex, int offset, int n) {
+        long v = 0;
+        for (int i = 0; i < n; i += 1) {
+            int d = Character.digit(hex.charAt(offset + i), 16);
+            if (d < 0) {
+                throw new IllegalArgumentException("not a SHA-1: " + hex);
+            }
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+
+    /** Write the low N hex digits of V into OUT[OFFSET ...]. */
+    private static void hex(char[] out, int offset, long v, int n) {
+        for (int i = n - 1; i >= 0; i -= 1) {
+            out[offset + i] = HEX_DIGITS[(int) v & 0xf];
+            v >>>= 4;
+        }
+    }
+
+    /** Number of parts of the table of interned ids, a power of 2. */
+    private static final int STRIPES = 64;
+
+    /** One part of the table of interned ids, locked on itself. */
+    private static final class Stripe
+        extends WeakHashMap<ObjectId, WeakReference<ObjectId>> {
+    }
+
+    /** Interned ids, by the low bits of their last word. */
+    private static final Stripe[] INTERNED = new Stripe[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i += 1) {
+            INTERNED[i] = new Stripe();
+        }
+    }
+
+    /** Lower-case hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Bytes 0-7 of the id. */
+    private final long _w0;
+    /** Bytes 8-15 of the id. */
+    private final long _w1;
+    /** Bytes 16-19 of the id. */
+    private final int _w2;
+}
@@ -0,0 +1,268 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/** The history of the refs of a repository: HEAD and each branch.  Each
+ *  ref has a log in .gitlet/logs, HEAD in logs/HEAD and the branch NAME
+ *  in logs/heads/NAME, to which a record is appended whenever the ref
+ *  moves.  A log is a header line followed by records of RECORD bytes:
+ *  the SHA-1 the ref held before, all zeros if it did not exist, the
+ *  SHA-1 it holds after, the time in milliseconds since the epoch, and
+ *  the reason, in UTF-8 padded with zeros.  Since the records are of one
+ *  size, the Nth newest is found without reading those after it; logs
+ *  are mapped rather than read.  Records are only appended, each by a
+ *  single write, except by gc, which rewrites a log without the records
+ *  it expires.  A torn record at the end of a log is ignored.
+ *  @author Duc Nguyen
+ */
+class Reflog {
+
+    /** Size of a record. */
+    static final int RECORD = 128;
+
+    /** Greatest size of the reason of a record, in bytes. */
+    static final int REASON_SIZE = RECORD - 2 * ObjectId.LENGTH - 8;
+
+    /** One record of a log. */
+    static final class Entry {
+
+        /** A record of a ref moving from OLDID, null if it did not exist,
+         *  to NEWID at TIME, in milliseconds since the epoch, because of
+         *  REASON. */
+        Entry(ObjectId oldId, ObjectId newId, long time, String reason) {
+            _oldId = oldId;
+            _newId = newId;
+            _time = time;
+            _reason = reason;
+        }
+
+        /** Return the SHA-1 the ref held before, or null if it did not
+         *  exist. */
+        ObjectId oldId() {
+            return _oldId;
+        }
+
+        /** Return the SHA-1 the ref held after. */
+        ObjectId newId() {
+            return _newId;
+        }
+
+        /** Return the time the ref moved, in milliseconds since the
+         *  epoch. */
+        long time() {
+            return _time;
+        }
+
+        /** Return why the ref moved. */
+        String reason() {
+            return _reason;
+        }
+
+        /** The SHA-1 held before, or null. */
+        private final ObjectId _oldId;
+
+        /** The SHA-1 held after. */
+        private final ObjectId _newId;
+
+        /** The time of the move. */
+        private final long _time;
+
+        /** Why the ref moved. */
+        private final String _reason;
+    }
+
+    /** The logs of the repository in GITLETDIR. */
+    Reflog(File gitletDir) {
+        _logs = Utils.join(gitletDir, "logs");
+        _heads = Utils.join(_logs, "heads");
+    }
+
+    /** Return the state file holding the log of REF, which is HEAD or a
+     *  branch name. */
+    StateFile file(String ref) {
+        return new StateFile(path(ref), "reflog", 1);
+    }
+
+    /** Append to the log of REF a record of its move from OLDID, null if
+     *  it did not exist, to NEWID because of REASON.  Nothing is recorded
+     *  if the ref did not move. */
+    void append(String ref, ObjectId oldId, ObjectId newId, String reason) {
+        if (newId.equals(oldId)) {
+            return;
+        }
+        File path = path(ref);
+        if (!path.isFile()) {
+            path.getParentFile().mkdirs();
+            file(ref).write(new byte[0]);
+        }
+        ByteBuffer record = encode(new Entry(oldId, newId,
+                                             System.currentTimeMillis(),
+                                             reason));
+        try (FileChannel out = FileChannel.open(path.toPath(),
+                                                StandardOpenOption.APPEND)) {
+            while (record.hasRemaining()) {
+                out.write(record);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the Nth newest record of the log of REF, or null if it has
+     *  fewer records.  Only that record is read. */
+    Entry get(String ref, int n) {
+        ByteBuffer data = map(ref);
+        int count = data == null ? 0 : count(data);
+        if (n < 0 || n >= count) {
+            return null;
+        }
+        return decode(data, HEADER + (count - 1 - n) * RECORD);
+    }
+
+    /** Return the records of the log of REF, newest first. */
+    List<Entry> entries(String ref) {
+        List<Entry> result = new ArrayList<>();
+        ByteBuffer data = map(ref);
+        if (data != null) {
+            for (int i = count(data) - 1; i >= 0; i -= 1) {
+                result.add(decode(data, HEADER + i * RECORD));
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff REF has a log. */
+    boolean exists(String ref) {
+        return path(ref).isFile();
+    }
+
+    /** Return the names of the branches that have logs, in order. */
+    List<String> branches() {
+        List<String> names = Utils.plainFilenamesIn(_heads);
+        return names == null ? new ArrayList<>() : names;
+    }
+
+    /** Delete the log of REF. */
+    void delete(String ref) {
+        path(ref).delete();
+    }
+
+    /** Rewrite the log of REF keeping only the records KEEP accepts, and
+     *  delete it if none are kept.  Return the number of records
+     *  dropped. */
+    int compact(String ref, Predicate<Entry> keep) {
+        List<Entry> entries = entries(ref);
+        ByteBuffer kept = ByteBuffer.allocate(entries.size() * RECORD);
+        for (int i = entries.size() - 1; i >= 0; i -= 1) {
+            if (keep.test(entries.get(i))) {
+                kept.put(encode(entries.get(i)));
+            }
+        }
+        int dropped = entries.size() - kept.position() / RECORD;
+        if (kept.position() == 0) {
+            delete(ref);
+        } else if (dropped > 0) {
+            byte[] payload = new byte[kept.position()];
+            kept.flip().get(payload);
+            file(ref).write(payload);
+        }
+        return dropped;
+    }
+
+    /** Return the file holding the log of REF. */
+    private File path(String ref) {
+        return ref.equals("HEAD") ? Utils.join(_logs, "HEAD")
+            : Utils.join(_heads, ref);
+    }
+
+    /** Return the log of REF mapped into memory, or null if it has
+     *  none. */
+    private MappedByteBuffer map(String ref) {
+        File path = path(ref);
+        if (!path.isFile()) {
+            return null;
+        }
+        MappedByteBuffer data;
+        try (FileChannel in = FileChannel.open(path.toPath(),
+                                               StandardOpenOption.READ)) {
+            data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] header = new byte[HEADER];
+        if (data.limit() >= HEADER) {
+            data.get(0, header);
+        }
+        if (!Arrays.equals(header, MAGIC)) {
+            throw new IllegalArgumentException("unsupported format: "
+                                               + path.getName());
+        }
+        return data;
+    }
+
+    /** Return the number of whole records in the log DATA. */
+    private static int count(ByteBuffer data) {
+        return Math.max(0, (data.limit() - HEADER) / RECORD);
+    }
+
+    /** Return the record ENTRY as a buffer ready to be written. */
+    private static ByteBuffer encode(Entry entry) {
+        byte[] raw = new byte[RECORD];
+        if (entry.oldId() != null) {
+            entry.oldId().copyTo(raw, 0);
+        }
+        entry.newId().copyTo(raw, ObjectId.LENGTH);
+        ByteBuffer record = ByteBuffer.wrap(raw);
+        record.putLong(2 * ObjectId.LENGTH, entry.time());
+        byte[] reason = entry.reason().getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(reason.length, REASON_SIZE);
+        while (length < reason.length && (reason[length] & 0xc0) == 0x80) {
+            length -= 1;
+        }
+        System.arraycopy(reason, 0, raw, RECORD - REASON_SIZE, length);
+        return record;
+    }
+
+    /** Return the record of DATA starting at POS. */
+    private static Entry decode(ByteBuffer data, int pos) {
+        byte[] raw = new byte[RECORD];
+        data.get(pos, raw);
+        ObjectId oldId = ObjectId.fromBytes(raw, 0);
+        boolean created = true;
+        for (int i = 0; i < ObjectId.LENGTH && created; i += 1) {
+            created = raw[i] == 0;
+        }
+        int length = REASON_SIZE;
+        while (length > 0 && raw[RECORD - REASON_SIZE + length - 1] == 0) {
+            length -= 1;
+        }
+        return new Entry(created ? null : oldId,
+                         ObjectId.fromBytes(raw, ObjectId.LENGTH),
+                         ByteBuffer.wrap(raw).getLong(2 * ObjectId.LENGTH),
+                         new String(raw, RECORD - REASON_SIZE, length,
+                                    StandardCharsets.UTF_8));
+    }
+
+    /** The header line of a log, as StateFile writes it. */
+    private static final byte[] MAGIC =
+        "gitlet-reflog 1\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Size of the header line. */
+    private static final int HEADER = MAGIC.length;
+
+    /** Directory of logs. */
+    private final File _logs;
+
+    /** Directory of the logs of branches. */
+    private final File _heads;
+}
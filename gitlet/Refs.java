@@ -0,0 +1,332 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/** The branches and tags of a repository.  A ref is either loose, a file
+ *  of its own, or packed, a line of .gitlet/packed-refs; a loose ref
+ *  overrides a packed one of the same name.  Loose branches are files in
+ *  .gitlet/branches holding a copy of their commit, and loose tags are
+ *  files in .gitlet/tags holding the SHA-1 of a commit, or of an
+ *  annotated tag in .gitlet/tag-objects.  The packed-refs file lists
+ *  "heads/NAME" and "tags/NAME" refs sorted by name, one to a line, each
+ *  followed by a tab and its SHA-1 and, for annotated tags, a tab and the
+ *  SHA-1 of the commit tagged.  It is searched in place by bisecting its
+ *  bytes, so looking up a ref costs a logarithmic number of line reads
+ *  however many refs are packed.  Refs are created loose; pack-refs moves
+ *  them into the packed file.
+ *  @author Duc Nguyen
+ */
+class Refs {
+
+    /** Prefix of packed branch names. */
+    private static final String HEADS = "heads/";
+
+    /** Prefix of packed tag names. */
+    private static final String TAGS = "tags/";
+
+    /** The refs of the repository in GITLETDIR. */
+    Refs(File gitletDir) {
+        _gitletDir = gitletDir;
+        _branches = Utils.join(gitletDir, "branches");
+        _tags = Utils.join(gitletDir, "tags");
+        _tagObjects = Utils.join(gitletDir, "tag-objects");
+    }
+
+    /** Return the state file holding the packed refs of the repository in
+     *  GITLETDIR. */
+    static StateFile packedFile(File gitletDir) {
+        return new StateFile(Utils.join(gitletDir, "packed-refs"),
+                             "packed-refs", 1);
+    }
+
+    /** Return the loose file of the branch NAME. */
+    File branchFile(String name) {
+        return Utils.join(_branches, name);
+    }
+
+    /** Return the branch NAME as a copy of its commit naming it, reading
+     *  the commit of a packed branch with COMMITS, or null if there is no
+     *  such branch. */
+    Commit branch(String name, Function<ObjectId, Commit> commits) {
+        File loose = branchFile(name);
+        if (loose.isFile()) {
+            return ObjectCache.readObject(loose, Commit.class);
+        }
+        String[] entry = packedEntry(HEADS + name);
+        Commit commit = entry == null ? null
+            : commits.apply(ObjectId.fromHex(entry[1]));
+        if (commit == null) {
+            return null;
+        }
+        Commit copy = new Commit(commit);
+        copy.setBranch(name);
+        return copy;
+    }
+
+    /** Return true iff there is a branch NAME. */
+    boolean hasBranch(String name) {
+        return branchFile(name).isFile() || packedEntry(HEADS + name) != null;
+    }
+
+    /** Return the names of the branches, in order. */
+    List<String> branchNames() {
+        return names(_branches, HEADS);
+    }
+
+    /** Delete the branch NAME, loose and packed.  Return false if there
+     *  is no such branch. */
+    boolean deleteBranch(String name) {
+        boolean loose = branchFile(name).delete();
+        return removePacked(HEADS + name) || loose;
+    }
+
+    /** Return the SHA-1 the tag NAME holds, of a commit or of an
+     *  annotated tag, or null if there is no such tag. */
+    ObjectId tag(String name) {
+        File loose = Utils.join(_tags, name);
+        if (loose.isFile()) {
+            return ObjectId.fromHex(Utils.readContentsAsString(loose).trim());
+        }
+        String[] entry = packedEntry(TAGS + name);
+        return entry == null ? null : ObjectId.fromHex(entry[1]);
+    }
+
+    /** Return the SHA-1 of the commit the tag NAME points to, or null if
+     *  there is no such tag. */
+    ObjectId taggedCommit(String name) {
+        if (!Utils.join(_tags, name).isFile()) {
+            String[] entry = packedEntry(TAGS + name);
+            if (entry != null) {
+                return ObjectId.fromHex(entry[entry.length - 1]);
+            }
+        }
+        ObjectId id = tag(name);
+        Tag annotated = id == null ? null : tagObject(id);
+        return annotated == null ? id : annotated.getTarget();
+    }
+
+    /** Make the tag NAME hold ID, the SHA-1 of a commit or of an annotated
+     *  tag. */
+    void setTag(String name, ObjectId id) {
+        _tags.mkdir();
+        Utils.writeContents(Utils.join(_tags, name), id + "\n");
+    }
+
+    /** Delete the tag NAME, loose and packed.  Return false if there is no
+     *  such tag. */
+    boolean deleteTag(String name) {
+        boolean loose = Utils.join(_tags, name).delete();
+        return removePacked(TAGS + name) || loose;
+    }
+
+    /** Return the names of the tags, in order. */
+    List<String> tagNames() {
+        return names(_tags, TAGS);
+    }
+
+    /** Return the annotated tag with SHA-1 ID, or null if ID is not that
+     *  of an annotated tag. */
+    Tag tagObject(ObjectId id) {
+        File file = Utils.join(_tagObjects, id.toString());
+        return file.isFile() ? ObjectCache.readObject(file, Tag.class) : null;
+    }
+
+    /** Store the annotated tag TAG. */
+    void writeTagObject(Tag tag) {
+        _tagObjects.mkdir();
+        Utils.writeObject(Utils.join(_tagObjects, tag.getID().toString()),
+                          tag);
+    }
+
+    /** Move the loose tags, and the loose branches whose files hold their
+     *  stored commit unchanged, into the packed-refs file, reading stored
+     *  commits with COMMITS.  Branch files holding a commit changed since
+     *  it was stored, as reset leaves them, stay loose.  Return the number
+     *  of refs packed. */
+    int pack(Function<ObjectId, Commit> commits) {
+        TreeMap<String, String> entries = new TreeMap<>();
+        for (String[] entry : packedEntries("")) {
+            entries.put(entry[0], line(entry));
+        }
+        List<File> packed = new ArrayList<>();
+        for (String name : loose(_tags)) {
+            ObjectId id = tag(name);
+            ObjectId target = taggedCommit(name);
+            entries.put(TAGS + name, TAGS + name + "\t" + id
+                        + (id.equals(target) ? "" : "\t" + target));
+            packed.add(Utils.join(_tags, name));
+        }
+        for (String name : loose(_branches)) {
+            Commit copy = ObjectCache.readObject(branchFile(name),
+                                                 Commit.class);
+            Commit stored = commits.apply(copy.getID());
+            if (stored != null && stored.getFilesBlobsMap()
+                .equals(copy.getFilesBlobsMap())) {
+                entries.put(HEADS + name, HEADS + name + "\t" + copy.getID());
+                packed.add(branchFile(name));
+            }
+        }
+        writePacked(entries);
+        for (File file : packed) {
+            file.delete();
+            ObjectCache.invalidate(file);
+        }
+        return packed.size();
+    }
+
+    /** Return the names of the loose refs in DIR and of the packed refs
+     *  starting with PREFIX, without it, in order. */
+    private List<String> names(File dir, String prefix) {
+        TreeSet<String> result = new TreeSet<>(loose(dir));
+        for (String[] entry : packedEntries(prefix)) {
+            result.add(entry[0].substring(prefix.length()));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the names of the files in DIR. */
+    private static List<String> loose(File dir) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        return names == null ? new ArrayList<>() : names;
+    }
+
+    /** Return the contents of the packed-refs file after its header,
+     *  reading it at most once. */
+    private byte[] packed() {
+        if (_packed == null) {
+            byte[] contents = packedFile(_gitletDir).read();
+            _packed = contents == null ? new byte[0] : contents;
+        }
+        return _packed;
+    }
+
+    /** Return the fields of the packed entry for REF, or null if it is
+     *  not packed.  The lines are bisected in place: each probe backs up
+     *  to the start of the line it lands in. */
+    private String[] packedEntry(String ref) {
+        byte[] data = packed();
+        int lo = 0;
+        int hi = data.length;
+        while (lo < hi) {
+            int start = lineStart(data, lo, (lo + hi) >>> 1);
+            int end = lineEnd(data, start);
+            String[] entry = fields(data, start, end);
+            int c = entry[0].compareTo(ref);
+            if (c == 0) {
+                return entry;
+            } else if (c < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        return null;
+    }
+
+    /** Return the fields of the packed entries whose refs start with
+     *  PREFIX, in order.  The first is found by bisection. */
+    private List<String[]> packedEntries(String prefix) {
+        byte[] data = packed();
+        int lo = 0;
+        int hi = data.length;
+        while (lo < hi) {
+            int start = lineStart(data, lo, (lo + hi) >>> 1);
+            int end = lineEnd(data, start);
+            if (fields(data, start, end)[0].compareTo(prefix) < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        List<String[]> result = new ArrayList<>();
+        for (int start = lo; start < data.length; ) {
+            int end = lineEnd(data, start);
+            String[] entry = fields(data, start, end);
+            if (!entry[0].startsWith(prefix)) {
+                break;
+            }
+            result.add(entry);
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /** Remove REF from the packed-refs file, returning false if it was
+     *  not there. */
+    private boolean removePacked(String ref) {
+        if (packedEntry(ref) == null) {
+            return false;
+        }
+        TreeMap<String, String> entries = new TreeMap<>();
+        for (String[] entry : packedEntries("")) {
+            if (!entry[0].equals(ref)) {
+                entries.put(entry[0], line(entry));
+            }
+        }
+        writePacked(entries);
+        return true;
+    }
+
+    /** Make the lines in ENTRIES, which are sorted by ref, the contents
+     *  of the packed-refs file. */
+    private void writePacked(Map<String, String> entries) {
+        StringBuilder text = new StringBuilder();
+        for (String line : entries.values()) {
+            text.append(line).append('\n');
+        }
+        _packed = text.toString().getBytes(StandardCharsets.UTF_8);
+        packedFile(_gitletDir).write(_packed);
+    }
+
+    /** Return the line holding the fields ENTRY. */
+    private static String line(String[] entry) {
+        return String.join("\t", entry);
+    }
+
+    /** Return the start of the line of DATA holding position POS, which
+     *  is not before LO, a line start. */
+    private static int lineStart(byte[] data, int lo, int pos) {
+        while (pos > lo && data[pos - 1] != '\n') {
+            pos -= 1;
+        }
+        return pos;
+    }
+
+    /** Return the position of the newline ending the line of DATA that
+     *  starts at START, or the length of DATA if it has none. */
+    private static int lineEnd(byte[] data, int start) {
+        int end = start;
+        while (end < data.length && data[end] != '\n') {
+            end += 1;
+        }
+        return end;
+    }
+
+    /** Return the tab-separated fields of DATA[START .. END). */
+    private static String[] fields(byte[] data, int start, int end) {
+        return new String(data, start, end - start, StandardCharsets.UTF_8)
+            .split("\t");
+    }
+
+    /** The .gitlet directory. */
+    private final File _gitletDir;
+
+    /** Directory of loose branches. */
+    private final File _branches;
+
+    /** Directory of loose tags. */
+    private final File _tags;
+
+    /** Directory of annotated tags. */
+    private final File _tagObjects;
+
+    /** Contents of the packed-refs file, or null until read. */
+    private byte[] _packed;
+}
@@ -0,0 +1,371 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/** Pairs the files that appear between two versions with the files they
+ *  were renamed or copied from.  Sources are the files of the older
+ *  version, some of which are gone from the newer one; targets are the
+ *  files new in the newer one.  A target whose blob is that of a source
+ *  is paired with it outright.  The rest are compared by content: each
+ *  file is reduced to a MinHash signature of the set of its lines, and
+ *  the fraction of positions at which two signatures agree estimates the
+ *  Jaccard similarity of the two sets.  To avoid comparing every target
+ *  with every source, signatures are cut into bands and each source is
+ *  entered under each of its bands in an inverted index; a target is
+ *  compared only with sources sharing a band.  Signatures are computed
+ *  and targets looked up in parallel.
+ *  @author Duc Nguyen
+ */
+class RenameDetector {
+
+    /** Least similarity, as a percentage, for a pair to be reported
+     *  when none is given. */
+    static final int DEFAULT_THRESHOLD = 50;
+
+    /** Number of hashes in a signature. */
+    private static final int HASHES = 64;
+
+    /** Number of hashes in a band of a signature. */
+    private static final int ROWS = 2;
+
+    /** A pairing of a target with the source it came from. */
+    static final class Match {
+
+        /** A match of TARGET to SOURCE with similarity SCORE percent,
+         *  which is a copy if COPY and a rename otherwise. */
+        Match(String target, String source, int score, boolean copy) {
+            _target = target;
+            _source = source;
+            _score = score;
+            _copy = copy;
+        }
+
+        /** Return the name of the new file. */
+        String target() {
+            return _target;
+        }
+
+        /** Return the name of the file it came from. */
+        String source() {
+            return _source;
+        }
+
+        /** Return the similarity of the two, as a percentage. */
+        int score() {
+            return _score;
+        }
+
+        /** Return true iff the source was kept, so that the target is a
+         *  copy of it rather than a rename. */
+        boolean isCopy() {
+            return _copy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%s from %s)", _target,
+                                 _copy ? "copied" : "renamed", _source);
+        }
+
+        /** Name of the new file. */
+        private final String _target;
+
+        /** Name of the file it came from. */
+        private final String _source;
+
+        /** Similarity, as a percentage. */
+        private final int _score;
+
+        /** True iff the source was kept. */
+        private final boolean _copy;
+    }
+
+    /** A detector reporting pairs at least THRESHOLD percent similar. */
+    RenameDetector(int threshold) {
+        _threshold = threshold;
+    }
+
+    /** A detector reporting pairs at least DEFAULT_THRESHOLD percent
+     *  similar. */
+    RenameDetector() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /** Add the source NAME with blob ID, gone from the newer version iff
+     *  DELETED.  CONTENTS supplies its contents when it may be compared
+     *  by content, and is null if only exact matches are wanted. */
+    void addSource(String name, ObjectId id, Supplier<byte[]> contents,
+                   boolean deleted) {
+        _sources.add(new Entry(name, () -> id, contents, deleted));
+    }
+
+    /** Add the target NAME with blob ID, whose contents CONTENTS
+     *  supplies. */
+    void addTarget(String name, ObjectId id, Supplier<byte[]> contents) {
+        addTarget(name, () -> id, contents);
+    }
+
+    /** Add the target NAME whose blob id ID supplies, and whose contents
+     *  CONTENTS supplies.  ID is called at most once, and only if there
+     *  are sources to match the target with. */
+    void addTarget(String name, Supplier<ObjectId> id,
+                   Supplier<byte[]> contents) {
+        _targets.add(new Entry(name, id, contents, false));
+    }
+
+    /** Return the matches found, ordered by target name.  Each target is
+     *  matched at most once, to its most similar source, and each
+     *  deleted source is renamed at most once; further targets matched to
+     *  it are copies. */
+    List<Match> detect() {
+        Comparator<Entry> byName = Comparator.comparing(e -> e._name);
+        _sources.sort(byName);
+        _targets.sort(byName);
+        List<Match> result = new ArrayList<>();
+        if (_sources.isEmpty()) {
+            return result;
+        }
+        Set<Entry> renamed = new HashSet<>();
+        List<Entry> unmatched = exact(result, renamed);
+        List<Entry> sources = _sources.stream()
+            .filter(s -> s._contents != null)
+            .collect(Collectors.toList());
+        if (!unmatched.isEmpty() && !sources.isEmpty()) {
+            near(unmatched, sources, result, renamed);
+        }
+        result.sort(Comparator.comparing(Match::target));
+        return result;
+    }
+
+    /** Match the targets whose blobs are those of sources, adding the
+     *  matches to RESULT and the sources renamed to RENAMED.  Return the
+     *  targets left unmatched. */
+    private List<Entry> exact(List<Match> result, Set<Entry> renamed) {
+        Map<ObjectId, List<Entry>> byId = new HashMap<>();
+        for (Entry source : _sources) {
+            byId.computeIfAbsent(source.id(), k -> new ArrayList<>())
+                .add(source);
+        }
+        List<Entry> unmatched = new ArrayList<>();
+        for (Entry target : _targets) {
+            List<Entry> same = byId.get(target.id());
+            if (same == null) {
+                unmatched.add(target);
+                continue;
+            }
+            Entry source = same.get(0);
+            for (Entry s : same) {
+                if (s._deleted && !renamed.contains(s)) {
+                    source = s;
+                    break;
+                }
+            }
+            result.add(pair(target, source, 100, renamed));
+        }
+        return unmatched;
+    }
+
+    /** Match those of TARGETS at least _threshold percent similar to one
+     *  of SOURCES, adding the matches to RESULT and the sources renamed
+     *  to RENAMED. */
+    private void near(List<Entry> targets, List<Entry> sources,
+                      List<Match> result, Set<Entry> renamed) {
+        int[][] sourceSigs = signatures(sources);
+        int[][] targetSigs = signatures(targets);
+        Map<Long, List<Integer>> index = new ConcurrentHashMap<>();
+        IntStream.range(0, sources.size()).parallel().forEach(s -> {
+            if (sourceSigs[s] != null) {
+                for (int b = 0; b < HASHES / ROWS; b += 1) {
+                    index.computeIfAbsent(band(sourceSigs[s], b),
+                        k -> Collections.synchronizedList(new
+                                                         ArrayList<>()))
+                        .add(s);
+                }
+            }
+        });
+        List<long[]> candidates = IntStream.range(0, targets.size())
+            .parallel()
+            .filter(t -> targetSigs[t] != null)
+            .boxed()
+            .flatMap(t -> {
+                Set<Integer> seen = new HashSet<>();
+                List<long[]> found = new ArrayList<>();
+                for (int b = 0; b < HASHES / ROWS; b += 1) {
+                    List<Integer> bucket = index.get(band(targetSigs[t], b));
+                    if (bucket == null) {
+                        continue;
+                    }
+                    synchronized (bucket) {
+                        seen.addAll(bucket);
+                    }
+                }
+                for (int s : seen) {
+                    int score = similarity(targetSigs[t], sourceSigs[s]);
+                    if (score >= _threshold) {
+                        found.add(new long[] { score, t, s });
+                    }
+                }
+                return found.stream();
+            })
+            .collect(Collectors.toList());
+        candidates.sort(Comparator.<long[]>comparingLong(c -> -c[0])
+                        .thenComparingLong(c -> c[1])
+                        .thenComparingLong(c -> c[2]));
+        boolean[] matched = new boolean[targets.size()];
+        for (long[] c : candidates) {
+            int t = (int) c[1];
+            if (!matched[t]) {
+                matched[t] = true;
+                result.add(pair(targets.get(t), sources.get((int) c[2]),
+                                (int) c[0], renamed));
+            }
+        }
+    }
+
+    /** Return the match of TARGET to SOURCE with similarity SCORE,
+     *  recording in RENAMED a deleted source not renamed before. */
+    private static Match pair(Entry target, Entry source, int score,
+                              Set<Entry> renamed) {
+        boolean copy = !source._deleted || !renamed.add(source);
+        return new Match(target._name, source._name, score, copy);
+    }
+
+    /** Return the signatures of ENTRIES, computed in parallel, with null
+     *  for those with no lines. */
+    private static int[][] signatures(List<Entry> entries) {
+        int[][] result = new int[entries.size()][];
+        IntStream.range(0, result.length).parallel().forEach(i -> {
+            result[i] = signature(entries.get(i)._contents.get());
+        });
+        return result;
+    }
+
+    /** Return the MinHash signature of the set of lines of DATA: for each
+     *  of HASHES hash functions, the least value it takes on a line.
+     *  Return null if DATA has no lines. */
+    static int[] signature(byte[] data) {
+        int[] sig = new int[HASHES];
+        Arrays.fill(sig, Integer.MAX_VALUE);
+        boolean any = false;
+        int start = 0;
+        for (int i = 0; i <= data.length; i += 1) {
+            if (i < data.length && data[i] != '\n') {
+                continue;
+            }
+            int end = i;
+            if (end > start && data[end - 1] == '\r') {
+                end -= 1;
+            }
+            if (i < data.length || end > start) {
+                long line = lineHash(data, start, end);
+                for (int h = 0; h < HASHES; h += 1) {
+                    int v = (int) (mix(line + h * GOLDEN) >>> 33);
+                    if (v < sig[h]) {
+                        sig[h] = v;
+                    }
+                }
+                any = true;
+            }
+            start = i + 1;
+        }
+        return any ? sig : null;
+    }
+
+    /** Return the estimated similarity, as a percentage, of the sets with
+     *  signatures A and B. */
+    static int similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int h = 0; h < HASHES; h += 1) {
+            if (a[h] == b[h]) {
+                same += 1;
+            }
+        }
+        return same * 100 / HASHES;
+    }
+
+    /** Return the key of band B of signature SIG in the index. */
+    private static long band(int[] sig, int b) {
+        long h = b;
+        for (int r = b * ROWS; r < (b + 1) * ROWS; r += 1) {
+            h = mix(h * GOLDEN + sig[r]);
+        }
+        return h;
+    }
+
+    /** Return a 64-bit hash of DATA[START .. END). */
+    private static long lineHash(byte[] data, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i += 1) {
+            h = (h ^ (data[i] & 0xff)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /** Return X with its bits mixed, as in SplitMix64. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** An odd constant spreading the seeds of the hash functions. */
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    /** A file taking part in detection. */
+    private static final class Entry {
+
+        /** The file NAME with the blob id ID supplies and CONTENTS,
+         *  deleted iff DELETED. */
+        Entry(String name, Supplier<ObjectId> id, Supplier<byte[]> contents,
+              boolean deleted) {
+            _name = name;
+            _idSource = id;
+            _contents = contents;
+            _deleted = deleted;
+        }
+
+        /** Return the blob id, found the first time it is asked for. */
+        ObjectId id() {
+            if (_id == null) {
+                _id = _idSource.get();
+            }
+            return _id;
+        }
+
+        /** File name. */
+        private final String _name;
+
+        /** Supplies the blob id. */
+        private final Supplier<ObjectId> _idSource;
+
+        /** Blob id, or null until asked for. */
+        private ObjectId _id;
+
+        /** Supplies the contents, or null if not compared by content. */
+        private final Supplier<byte[]> _contents;
+
+        /** True iff the file is gone from the newer version. */
+        private final boolean _deleted;
+    }
+
+    /** Least similarity reported, as a percentage. */
+    private final int _threshold;
+
+    /** The files of the older version. */
+    private final List<Entry> _sources = new ArrayList<>();
+
+    /** The files new in the newer version. */
+    private final List<Entry> _targets = new ArrayList<>();
+}
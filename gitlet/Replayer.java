@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.util.Collection;
+import java.util.TreeSet;
+
+/** Replays commits onto other commits, for cherry-pick and rebase.  A
+ *  commit is replayed by a three-way merge of file maps: the change it
+ *  made to its first parent is applied to the commit it is replayed onto,
+ *  and a file both sides changed differently conflicts.  Only the maps
+ *  are merged, so no blob is read and nothing in the working directory
+ *  is touched; a rebase of many commits costs a pass over each map, and
+ *  the caller updates the working directory once from the final result.
+ *  @author Duc Nguyen
+ */
+class Replayer {
+
+    /** Return the files of OURS with the changes from BASE to THEIRS
+     *  applied, adding to CONFLICTS the names of the files OURS changed
+     *  differently.  Those keep their version in OURS. */
+    static FileMap apply(FileMap base, FileMap ours, FileMap theirs,
+                         Collection<String> conflicts) {
+        FileMap result = new FileMap(ours);
+        TreeSet<String> changed = new TreeSet<>();
+        for (String file : base) {
+            if (!base.get(file).equals(theirs.get(file))) {
+                changed.add(file);
+            }
+        }
+        for (String file : theirs) {
+            if (!base.containsKey(file)) {
+                changed.add(file);
+            }
+        }
+        for (String file : changed) {
+            ObjectId was = base.get(file);
+            ObjectId mine = ours.get(file);
+            ObjectId wanted = theirs.get(file);
+            if (mine == null ? was == null : mine.equals(was)) {
+                if (wanted == null) {
+                    result.remove(file);
+                } else {
+                    result.put(file, wanted);
+                }
+            } else if (mine == null ? wanted != null : !mine.equals(wanted)) {
+                conflicts.add(file);
+            }
+        }
+        return result;
+    }
+
+    /** Return COMMIT replayed onto ONTO as a commit on BRANCH, given the
+     *  files of its first parent BASE, with the same message.  Return
+     *  ONTO itself if the replay changes nothing, and null if files
+     *  conflict, adding their names to CONFLICTS.  The commit returned is
+     *  not stored. */
+    static Commit pick(Commit onto, FileMap base, Commit commit,
+                       String branch, Collection<String> conflicts) {
+        int before = conflicts.size();
+        FileMap files = apply(base, onto.getFilesBlobsMap(),
+                              commit.getFilesBlobsMap(), conflicts);
+        if (conflicts.size() > before) {
+            return null;
+        } else if (files.equals(onto.getFilesBlobsMap())) {
+            return onto;
+        }
+        Commit result = new Commit(commit.getMsg(), files, onto.getID(),
+                                   null, branch);
+        result.setLength(onto.getLength() + 1);
+        return result;
+    }
+}
@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/** The sparse-checkout patterns of a repository, kept in
+ *  .gitlet/sparse-checkout, which limit the files written to the working
+ *  directory.  Each pattern is a glob over file names, in which * matches
+ *  any run of characters and ? any one; a pattern starting with ! excludes
+ *  the files it matches.  As in .gitignore, the last pattern matching a
+ *  name decides, and a name no pattern matches is excluded.  With no
+ *  patterns every file is included.  Excluded files stay tracked; they
+ *  are simply not written by checkout, reset or merge, and their absence
+ *  is not a deletion.
+ *  @author Duc Nguyen
+ */
+class SparseCheckout {
+
+    /** The patterns PATTERNS, in order. */
+    SparseCheckout(List<String> patterns) {
+        _patterns = new ArrayList<>(patterns);
+        _globs = new Pattern[patterns.size()];
+        _negated = new boolean[patterns.size()];
+        for (int i = 0; i < _globs.length; i += 1) {
+            String glob = patterns.get(i);
+            _negated[i] = glob.startsWith("!");
+            _globs[i] = compile(_negated[i] ? glob.substring(1) : glob);
+        }
+    }
+
+    /** Return the state file holding the patterns of the repository in
+     *  GITLETDIR. */
+    static StateFile file(File gitletDir) {
+        return new StateFile(Utils.join(gitletDir, "sparse-checkout"),
+                             "sparse-checkout", 1);
+    }
+
+    /** Return the patterns of the repository in GITLETDIR, which include
+     *  every file if there is no pattern file. */
+    static SparseCheckout read(File gitletDir) {
+        byte[] contents = file(gitletDir).read();
+        if (contents == null) {
+            return new SparseCheckout(Collections.emptyList());
+        }
+        List<String> patterns = new ArrayList<>();
+        for (String line : new String(contents, StandardCharsets.UTF_8)
+                 .split("\n")) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                patterns.add(line);
+            }
+        }
+        return new SparseCheckout(patterns);
+    }
+
+    /** Make these the patterns of the repository in GITLETDIR, deleting
+     *  the pattern file if there are none. */
+    void write(File gitletDir) {
+        if (_patterns.isEmpty()) {
+            Utils.join(gitletDir, "sparse-checkout").delete();
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (String pattern : _patterns) {
+            text.append(pattern).append('\n');
+        }
+        file(gitletDir).write(text.toString()
+                              .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return the patterns, in order. */
+    List<String> patterns() {
+        return Collections.unmodifiableList(_patterns);
+    }
+
+    /** Return true iff every file is included. */
+    boolean includesAll() {
+        return _patterns.isEmpty();
+    }
+
+    /** Return true iff the file NAME belongs in the working directory. */
+    boolean includes(String name) {
+        if (_patterns.isEmpty()) {
+            return true;
+        }
+        for (int i = _globs.length - 1; i >= 0; i -= 1) {
+            if (_globs[i].matcher(name).matches()) {
+                return !_negated[i];
+            }
+        }
+        return false;
+    }
+
+    /** Return the regular expression matching the names GLOB matches. */
+    private static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /** The patterns, in order. */
+    private final List<String> _patterns;
+
+    /** The compiled patterns, without their leading !. */
+    private final Pattern[] _globs;
+
+    /** Whether each pattern excludes what it matches. */
+    private final boolean[] _negated;
+}
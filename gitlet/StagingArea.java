@@ -1,73 +1,163 @@
 package gitlet;
 
-import java.io.Serializable;
-import java.util.ArrayList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 /** Class represents the staging area of the control system.
+ * Membership is kept in hash tables, and the sorted lists of staged and
+ * removed files that status shows are built once and reused until the
+ * area next changes.  The area is stored on its own in .gitlet/index,
+ * entries sorted by name, and written only when it has changed.
  * @author Duc Nguyen
  */
-public class StagingArea implements Serializable {
+public class StagingArea {
 
-    /** List of old files to be removed. */
-    private ArrayList<String> _toBeRemoved = new ArrayList<>();
+    /** Set of old files to be removed. */
+    private HashSet<String> _toBeRemoved = new HashSet<>();
 
     /** A mapping of new files to their SHA-1. */
-    private HashMap<String, String> _newFiles = new HashMap<>();
+    private HashMap<String, ObjectId> _newFiles = new HashMap<>();
+
+    /** Staged file names in order, or null if not yet built. */
+    private String[] _sortedStaged;
+
+    /** Removed file names in order, or null if not yet built. */
+    private String[] _sortedRemoved;
+
+    /** True if the area has changed since it was read or written. */
+    private boolean _dirty;
+
+    /** Return the state file holding the staging area of the repository
+     * in GITLETDIR.
+     * @param gitletDir the .gitlet directory.
+     * @return StateFile. */
+    public static StateFile file(File gitletDir) {
+        return new StateFile(Utils.join(gitletDir, "index"), "index", 1);
+    }
+
+    /** Read the staging area stored in INDEX, or return an empty one if
+     * there is no such file.
+     * @param index the index file.
+     * @return StagingArea. */
+    public static StagingArea read(StateFile index) {
+        StagingArea area = new StagingArea();
+        byte[] contents = index.read();
+        if (contents == null) {
+            return area;
+        }
+        DataInputStream in = new DataInputStream(new
+                ByteArrayInputStream(contents));
+        try {
+            byte[] raw = new byte[ObjectId.LENGTH];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = in.readUTF();
+                in.readFully(raw);
+                area._newFiles.put(name, ObjectId.fromBytes(raw, 0));
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                area._toBeRemoved.add(in.readUTF());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return area;
+    }
+
+    /** Write the staging area to INDEX if it has changed.
+     * @param index the index file. */
+    public void write(StateFile index) {
+        if (!_dirty) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            byte[] raw = new byte[ObjectId.LENGTH];
+            out.writeInt(_newFiles.size());
+            for (String name : sortedStaged()) {
+                out.writeUTF(name);
+                _newFiles.get(name).copyTo(raw, 0);
+                out.write(raw);
+            }
+            out.writeInt(_toBeRemoved.size());
+            for (String name : sortedRemoved()) {
+                out.writeUTF(name);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        index.write(bytes.toByteArray());
+        _dirty = false;
+    }
 
     /** Stage a file for removal.
      * @param fileName the file name. */
     public void stageToBeRemoved(String fileName) {
-        _toBeRemoved.add(fileName);
+        if (_toBeRemoved.add(fileName)) {
+            _sortedRemoved = null;
+            _dirty = true;
+        }
     }
 
     /** Stage new files.
      * @param fileName the file name.
      * @param fileSHA1 the file hash value. */
-    public void stage(String fileName, String fileSHA1) {
-        _newFiles.put(fileName, fileSHA1);
+    public void stage(String fileName, ObjectId fileSHA1) {
+        if (!fileSHA1.equals(_newFiles.put(fileName, fileSHA1))) {
+            _sortedStaged = null;
+            _dirty = true;
+        }
     }
 
     /** Check if a file is staged for addition.
      * @param fileName the file name.
      * @return boolean. */
     public boolean checkStaged(String fileName) {
-        if (!_newFiles.isEmpty()) {
-            return _newFiles.containsKey(fileName);
-        }
-        return false;
+        return _newFiles.containsKey(fileName);
     }
 
     /** Check if a file is staged for removal.
      * @param fileName the file name.
      * @return boolean. */
     public boolean checkRemoved(String fileName) {
-        if (!_toBeRemoved.isEmpty()) {
-            return _toBeRemoved.contains(fileName);
-        }
-        return false;
+        return _toBeRemoved.contains(fileName);
     }
 
     /** Unstage a file from the corresponding map.
      * @param filename the file name. */
     public void unstage(String filename) {
-        if (!_newFiles.isEmpty()) {
-            _newFiles.remove(filename);
+        if (_newFiles.remove(filename) != null) {
+            _sortedStaged = null;
+            _dirty = true;
         }
     }
 
     /** Unremove a file from the corresponding map.
      * @param filename the file name. */
     public void unremove(String filename) {
-        if (!_toBeRemoved.isEmpty()) {
-            _toBeRemoved.remove(filename);
+        if (_toBeRemoved.remove(filename)) {
+            _sortedRemoved = null;
+            _dirty = true;
         }
     }
 
     /** Clear the current staging area. */
     public void clear() {
-        _toBeRemoved.clear();
-        _newFiles.clear();
+        if (!isEmpty()) {
+            _toBeRemoved.clear();
+            _newFiles.clear();
+            _sortedStaged = null;
+            _sortedRemoved = null;
+            _dirty = true;
+        }
     }
 
     /** Check to see if the current staging area is empty.
@@ -76,25 +166,44 @@ public class StagingArea implements Serializable {
         return _toBeRemoved.isEmpty() && _newFiles.isEmpty();
     }
 
-    /** Return the list of old files to be removed.
-     * @return ArrayList of String */
-    public ArrayList<String> getToBeRemoved() {
+    /** Return the set of old files to be removed.
+     * @return Set of String */
+    public Set<String> getToBeRemoved() {
         return _toBeRemoved;
     }
 
     /** Return the mapping of new files to their SHA-1's.
-     * @return a HashMap of String-String. */
-    public HashMap<String, String> getFilesSHA1Map() {
+     * @return a HashMap of String-ObjectId. */
+    public HashMap<String, ObjectId> getFilesSHA1Map() {
         return _newFiles;
     }
 
+    /** Return the staged file names in order. The array is shared and
+     * must not be modified.
+     * @return String[]. */
+    public String[] sortedStaged() {
+        if (_sortedStaged == null) {
+            _sortedStaged = _newFiles.keySet().toArray(new String[0]);
+            Arrays.sort(_sortedStaged);
+        }
+        return _sortedStaged;
+    }
+
+    /** Return the names of files staged for removal in order. The array
+     * is shared and must not be modified.
+     * @return String[]. */
+    public String[] sortedRemoved() {
+        if (_sortedRemoved == null) {
+            _sortedRemoved = _toBeRemoved.toArray(new String[0]);
+            Arrays.sort(_sortedRemoved);
+        }
+        return _sortedRemoved;
+    }
+
     /** Get the SHA-1 of a file staged.
      * @param fileName the file name.
-     * @return String. */
-    public String getSHA1(String fileName) {
-        if (!_newFiles.isEmpty() && _newFiles.containsKey(fileName)) {
-            return _newFiles.get(fileName);
-        }
-        return "";
+     * @return ObjectId, or null if the file is not staged. */
+    public ObjectId getSHA1(String fileName) {
+        return _newFiles.get(fileName);
     }
 }
@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The list of stash entries of a repository, kept in .gitlet/stash.
+ *  Each entry is an ordinary commit holding the working tree, whose
+ *  first parent is the commit it was made on and whose second parent
+ *  holds the staging area, so that the entries share blobs with the rest
+ *  of the history and gc keeps what they reach.  The file lists the ids
+ *  of the entries, newest first, one to a line.
+ *  @author Duc Nguyen
+ */
+class Stash {
+
+    /** Return the state file listing the stash entries of the repository
+     *  in GITLETDIR. */
+    static StateFile file(File gitletDir) {
+        return new StateFile(Utils.join(gitletDir, "stash"), "stash", 1);
+    }
+
+    /** Return the ids of the stash entries of the repository in
+     *  GITLETDIR, newest first. */
+    static List<ObjectId> read(File gitletDir) {
+        List<ObjectId> entries = new ArrayList<>();
+        byte[] contents = file(gitletDir).read();
+        if (contents != null) {
+            String text = new String(contents, StandardCharsets.UTF_8);
+            for (String line : text.split("\n")) {
+                if (ObjectId.isHex(line)) {
+                    entries.add(ObjectId.fromHex(line));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /** Make ENTRIES, newest first, the stash entries of the repository in
+     *  GITLETDIR. */
+    static void write(File gitletDir, List<ObjectId> entries) {
+        StringBuilder text = new StringBuilder();
+        for (ObjectId id : entries) {
+            text.append(id).append('\n');
+        }
+        file(gitletDir).write(text.toString()
+                              .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return the position in the list named by NAME, which is either a
+     *  number or of the form stash@{N}, or -1 if it names none. */
+    static int position(String name) {
+        String n = name;
+        if (n.startsWith("stash@{") && n.endsWith("}")) {
+            n = n.substring("stash@{".length(), n.length() - 1);
+        }
+        try {
+            return Integer.parseInt(n);
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+    }
+}
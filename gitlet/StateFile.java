@@ -0,0 +1,56 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** One file of repository state in .gitlet, such as the remotes, the
+ *  staging index or HEAD.  Each starts with a line naming its kind and
+ *  the version of its format, so that the files can be read and written
+ *  independently and their formats can change one at a time.  A command
+ *  loads only the state files it needs, and saves only those it changed.
+ *  @author Duc Nguyen
+ */
+class StateFile {
+
+    /** The state file FILE, holding state of kind KIND in format
+     *  VERSION. */
+    StateFile(File file, String kind, int version) {
+        _file = file;
+        _header = ("gitlet-" + kind + " " + version + "\n")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return true iff the file exists. */
+    boolean exists() {
+        return _file.isFile();
+    }
+
+    /** Return the contents of the file after its header, or null if it
+     *  does not exist.  Throws IllegalArgumentException if it holds
+     *  another kind of state or another version of the format. */
+    byte[] read() {
+        if (!exists()) {
+            return null;
+        }
+        byte[] contents = Utils.readContents(_file);
+        if (contents.length < _header.length
+            || !Arrays.equals(contents, 0, _header.length,
+                              _header, 0, _header.length)) {
+            throw new IllegalArgumentException("unsupported format: "
+                                               + _file.getName());
+        }
+        return Arrays.copyOfRange(contents, _header.length, contents.length);
+    }
+
+    /** Replace the contents of the file after its header with PAYLOAD. */
+    void write(byte[] payload) {
+        Utils.writeContents(_file, _header, payload);
+    }
+
+    /** The file. */
+    private final File _file;
+
+    /** The first line of the file. */
+    private final byte[] _header;
+}
@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/** Class that represents an annotated tag: a name, a message and a time
+ * attached to a commit. Tags are stored in .gitlet/tag-objects under
+ * their SHA-1, and the tag ref names that SHA-1, while a lightweight
+ * tag's ref names the commit itself.
+ * @author Duc Nguyen
+ */
+public class Tag implements Serializable {
+
+    /** The SHA-1 of this tag. */
+    private ObjectId _uniqueID;
+
+    /** The tag's name. */
+    private String _name;
+
+    /** The SHA-1 of the commit tagged. */
+    private ObjectId _target;
+
+    /** The tag's message. */
+    private String _msg;
+
+    /** Timestamp of this tag. */
+    private String _timeStamp;
+
+    /** Constructor.
+     * @param name the tag name.
+     * @param target the SHA-1 of the commit tagged.
+     * @param msg the tag message. */
+    public Tag(String name, ObjectId target, String msg) {
+        _name = name;
+        _target = target;
+        _msg = msg;
+        DateFormat formatDate = new
+                SimpleDateFormat("EEE MMM dd hh:mm:ss yyyy Z");
+        formatDate.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
+        _timeStamp = formatDate.format(new Date());
+        _uniqueID = Utils.hash(Utils.serialize(this));
+    }
+
+    /** Get the SHA-1 of this tag's contents, which equals its SHA-1
+     * unless it was altered after it was made.
+     * @return ObjectId. */
+    public ObjectId rehash() {
+        Tag image = Utils.deserialize(Utils.serialize(this), Tag.class);
+        image._uniqueID = null;
+        return Utils.hash(Utils.serialize(image));
+    }
+
+    /** Get the SHA-1 of this tag.
+     * @return ObjectId. */
+    public ObjectId getID() {
+        return _uniqueID;
+    }
+
+    /** Get the tag's name.
+     * @return String. */
+    public String getName() {
+        return _name;
+    }
+
+    /** Get the SHA-1 of the commit tagged.
+     * @return ObjectId. */
+    public ObjectId getTarget() {
+        return _target;
+    }
+
+    /** Get the tag's message.
+     * @return String. */
+    public String getMsg() {
+        return _msg;
+    }
+
+    /** Get the tag's timestamp.
+     * @return String. */
+    public String getTime() {
+        return _timeStamp;
+    }
+}
@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Per-command counters and timings for the storage primitives in Utils
+ *  and Materializer.  Tracing is off unless the command line starts with
+ *  --trace or the GITLET_TRACE environment variable is set; the value of
+ *  either selects the output, which goes to the standard error:
+ *
+ *      summary        A table of counts, bytes and times (the default).
+ *      json           The same figures as a JSON object.
+ *      chrome=FILE    Every call as an event in FILE, in the Chrome trace
+ *                     format read by chrome://tracing and Perfetto, plus
+ *                     the summary.
+ *
+ *  When tracing is off, each instrumented call costs one test of a
+ *  static field.
+ *  @author Duc Nguyen
+ */
+class Trace {
+
+    /** Environment variable that turns tracing on. */
+    static final String VAR = "GITLET_TRACE";
+
+    /** Command-line flag that turns tracing on. */
+    static final String FLAG = "--trace";
+
+    /** Traced operations. */
+    static final int READ_OBJECT = 0, WRITE_OBJECT = 1, READ_CONTENTS = 2,
+        WRITE_CONTENTS = 3, SHA1 = 4, LIST = 5, RESTORE = 6;
+
+    /** Names of the traced operations, indexed by operation. */
+    private static final String[] NAMES = {
+        "readObject", "writeObject", "readContents", "writeContents",
+        "sha1", "plainFilenamesIn", "restore",
+    };
+
+    /** Turn tracing on as requested by GITLET_TRACE or a leading --trace
+     *  or --trace=FORMAT in ARGS, and return ARGS without that flag. */
+    static String[] configure(String... args) {
+        String format = System.getenv(VAR);
+        if (args.length > 0 && args[0].startsWith(FLAG)) {
+            String flag = args[0];
+            format = flag.length() > FLAG.length() && flag.charAt(FLAG.length())
+                == '=' ? flag.substring(FLAG.length() + 1) : "";
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            args = rest;
+        }
+        if (format != null && !format.equals("0")) {
+            _format = format;
+            if (format.startsWith("chrome=")) {
+                _events = new ConcurrentLinkedQueue<>();
+            }
+            _enabled = true;
+        }
+        return args;
+    }
+
+    /** Return true iff tracing is on. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Start timing command COMMAND. */
+    static void begin(String command) {
+        if (_enabled) {
+            _command = command;
+            _commandStart = System.nanoTime();
+        }
+    }
+
+    /** Return the start time for an operation, or 0 if tracing is off. */
+    static long start() {
+        return _enabled ? System.nanoTime() : 0;
+    }
+
+    /** Record one call of operation OP, started at START and handling
+     *  BYTES bytes. */
+    static void end(int op, long start, long bytes) {
+        if (!_enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        COUNTS.incrementAndGet(op);
+        BYTES.addAndGet(op, bytes);
+        NANOS.addAndGet(op, now - start);
+        if (_events != null) {
+            _events.add(new long[] {
+                op, start, now - start, Thread.currentThread().getId(), bytes
+            });
+        }
+    }
+
+    /** Record one call of operation OP on FILE, started at START. */
+    static void end(int op, long start, File file) {
+        if (_enabled) {
+            end(op, start, file.length());
+        }
+    }
+
+    /** Stop timing the current command and report what was recorded. */
+    static void finish() {
+        if (!_enabled) {
+            return;
+        }
+        long total = System.nanoTime() - _commandStart;
+        if (_format.equals("json")) {
+            System.err.println(toJson(total));
+        } else {
+            System.err.print(summary(total));
+        }
+        if (_events != null) {
+            String file = _format.substring("chrome=".length());
+            Utils.writeContents(new File(file), chromeTrace(total));
+        }
+    }
+
+    /** Return the summary table for a command taking TOTAL ns. */
+    private static String summary(long total) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("trace: %s %.3f ms%n", _command,
+                                 total / NANOS_PER_MILLI));
+        out.append(String.format("  %-17s %8s %12s %12s%n",
+                                 "operation", "calls", "bytes", "ms"));
+        for (int op = 0; op < NAMES.length; op += 1) {
+            if (COUNTS.get(op) > 0) {
+                out.append(String.format("  %-17s %8d %12d %12.3f%n",
+                                         NAMES[op], COUNTS.get(op),
+                                         BYTES.get(op),
+                                         NANOS.get(op) / NANOS_PER_MILLI));
+            }
+        }
+        out.append("  ").append(ObjectCache.stats()).append('\n');
+        return out.toString();
+    }
+
+    /** Return the recorded figures for a command taking TOTAL ns as a
+     *  JSON object. */
+    private static String toJson(long total) {
+        List<String> ops = new ArrayList<>();
+        for (int op = 0; op < NAMES.length; op += 1) {
+            ops.add(String.format("\"%s\": {\"calls\": %d, \"bytes\": %d, "
+                                  + "\"nanos\": %d}", NAMES[op],
+                                  COUNTS.get(op), BYTES.get(op),
+                                  NANOS.get(op)));
+        }
+        return String.format("{\"command\": \"%s\", \"nanos\": %d, "
+                             + "\"operations\": {%s}, \"cache\": "
+                             + "{\"hits\": %d, \"misses\": %d, "
+                             + "\"evictions\": %d}}",
+                             _command, total, String.join(", ", ops),
+                             ObjectCache.hits(), ObjectCache.misses(),
+                             ObjectCache.evictions());
+    }
+
+    /** Return the recorded events of a command taking TOTAL ns in the
+     *  Chrome trace event format. */
+    private static String chromeTrace(long total) {
+        StringBuilder out = new StringBuilder("{\"traceEvents\": [\n");
+        out.append(String.format("{\"name\": \"%s\", \"ph\": \"X\", "
+                                 + "\"ts\": 0, \"dur\": %.3f, \"pid\": 1, "
+                                 + "\"tid\": %d}",
+                                 _command, total / NANOS_PER_MICRO,
+                                 Thread.currentThread().getId()));
+        for (long[] e : _events) {
+            out.append(String.format(",%n{\"name\": \"%s\", \"ph\": \"X\", "
+                                     + "\"ts\": %.3f, \"dur\": %.3f, "
+                                     + "\"pid\": 1, \"tid\": %d, "
+                                     + "\"args\": {\"bytes\": %d}}",
+                                     NAMES[(int) e[0]],
+                                     (e[1] - _commandStart) / NANOS_PER_MICRO,
+                                     e[2] / NANOS_PER_MICRO, e[3], e[4]));
+        }
+        out.append("\n]}\n");
+        return out.toString();
+    }
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Nanoseconds per microsecond. */
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    /** Calls, bytes and nanoseconds recorded for each operation. */
+    private static final AtomicLongArray COUNTS =
+        new AtomicLongArray(NAMES.length),
+        BYTES = new AtomicLongArray(NAMES.length),
+        NANOS = new AtomicLongArray(NAMES.length);
+
+    /** True iff tracing is on. */
+    private static boolean _enabled;
+
+    /** The requested output format. */
+    private static String _format;
+
+    /** The command being traced. */
+    private static String _command = "";
+
+    /** When the command started. */
+    private static long _commandStart;
+
+    /** Recorded events (operation, start, duration, thread, bytes) when
+     *  writing a Chrome trace, else null. */
+    private static ConcurrentLinkedQueue<long[]> _events;
+}
@@ -4,7 +4,21 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Duc Nguyen
@@ -19,14 +33,352 @@ public class UnitTest {
 
     @Test
     public void testCommitBasic() {
-        HashMap<String, String> filesToBlobs = new HashMap<>();
-        String firstParentHash = "first parent reference using SHA-1";
-        firstParentHash = Utils.sha1(firstParentHash);
+        FileMap filesToBlobs = new FileMap();
+        ObjectId firstParentHash =
+                Utils.sha1Id("first parent reference using SHA-1");
         Commit tmp = new Commit("initial commit", filesToBlobs,
-                firstParentHash, "", "master");
+                firstParentHash, null, "master");
         assertEquals("initial commit", tmp.getMsg());
         assertEquals(firstParentHash, tmp.getParentHash());
+        assertNull(tmp.getSecondParentHash());
+    }
+
+    @Test
+    public void testCommitFilesRoundTrip() throws IOException {
+        FileMap files = new FileMap();
+        files.put("a.txt", Utils.sha1Id("a"));
+        Commit commit = new Commit("add a", files, Utils.sha1Id("parent"),
+                null, "master");
+        File tmp = File.createTempFile("commit", ".bin");
+        try {
+            Utils.writeObject(tmp, commit);
+            Commit copy = Utils.readObject(tmp, Commit.class);
+            assertEquals(commit.getParentHash(), copy.getParentHash());
+            Commit changed = new Commit(copy);
+            changed.track("b.txt", Utils.sha1Id("b"));
+            Utils.writeObject(tmp, changed);
+            assertEquals(Utils.sha1Id("a"), copy.getBlob("a.txt"));
+            assertFalse(copy.isTracked("b.txt"));
+            assertEquals(changed.getFilesBlobsMap(),
+                    Utils.readObject(tmp, Commit.class).getFilesBlobsMap());
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    @Test
+    public void testFileMap() throws IOException {
+        FileMap files = new FileMap();
+        HashMap<String, ObjectId> expected = new HashMap<>();
+        for (int i = 0; i < 100; i += 1) {
+            ObjectId blob = Utils.sha1Id("blob " + i);
+            files.put("f" + i + ".txt", blob);
+            expected.put("f" + i + ".txt", blob);
+        }
+        for (int i = 0; i < 100; i += 3) {
+            files.remove("f" + i + ".txt");
+            expected.remove("f" + i + ".txt");
+        }
+        assertEquals(expected.size(), files.size());
+        for (int i = 0; i < 100; i += 1) {
+            assertEquals(expected.get("f" + i + ".txt"),
+                    files.get("f" + i + ".txt"));
+        }
+        File tmp = File.createTempFile("filemap", ".bin");
+        try {
+            Utils.writeObject(tmp, files);
+            FileMap copy = Utils.readObject(tmp, FileMap.class);
+            assertEquals(files, copy);
+            assertSame(files.get("f1.txt").intern(), copy.get("f1.txt"));
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    @Test
+    public void testSha1KnownValues() {
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+                Utils.sha1("abc"));
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709",
+                Utils.sha1());
+        assertEquals(Utils.sha1("ab", "c"), Utils.sha1("abc"));
+        byte[] utf8 = "h\u00e9llo".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Utils.sha1((Object) utf8), Utils.sha1("h\u00e9llo"));
     }
-}
 
+    @Test
+    public void testHashPaths() throws IOException {
+        byte[] data = new byte[200000];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i * 31);
+        }
+        ObjectId expected = Utils.sha1Id((Object) data);
+        assertEquals(expected, Utils.hash(data));
+        assertEquals(expected, Utils.hash(ByteBuffer.wrap(data)));
+        File tmp = File.createTempFile("hash", ".bin");
+        try {
+            Utils.writeContents(tmp, (Object) data);
+            assertEquals(expected, Utils.hash(tmp));
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    @Test
+    public void testObjectIdHex() {
+        String hex = "0123456789abcdeffedcba98765432100f1e2d3c";
+        ObjectId id = ObjectId.fromHex(hex);
+        assertEquals(hex, id.toString());
+        assertEquals(id, ObjectId.fromHex(hex.toUpperCase()));
+        assertTrue(id.startsWith("0123456789ABCDEFfe"));
+        assertFalse(id.startsWith("1"));
+        byte[] raw = new byte[ObjectId.LENGTH + 1];
+        id.copyTo(raw, 1);
+        assertEquals(id, ObjectId.fromBytes(raw, 1));
+        ObjectId larger = ObjectId.fromHex(
+                "0123456789abcdeffedcba98765432100f1e2d3d");
+        assertTrue(id.compareTo(larger) < 0);
+        assertTrue(ObjectId.fromHex("f" + hex.substring(1)).compareTo(id)
+                > 0);
+        assertFalse(ObjectId.isHex("xyz"));
+    }
+
+    @Test
+    public void testBitmap() throws IOException {
+        Random random = new Random(42);
+        Bitmap a = new Bitmap(), b = new Bitmap();
+        BitSet expectA = new BitSet(), expectB = new BitSet();
+        for (int i = 0; i < 20000; i += 1) {
+            int x = random.nextInt(1 << 18);
+            a.add(x);
+            expectA.set(x);
+            int y = random.nextInt(1 << 14) + (1 << 17);
+            b.add(y);
+            expectB.set(y);
+        }
+        assertEquals(expectA.cardinality(), a.cardinality());
+        Bitmap union = new Bitmap(a);
+        union.or(b);
+        expectA.or(expectB);
+        assertEquals(expectA.cardinality(), union.cardinality());
+        union.andNot(b);
+        expectA.andNot(expectB);
+        BitSet actual = new BitSet();
+        union.forEach(actual::set);
+        assertEquals(expectA, actual);
+        assertFalse(union.contains(expectB.nextSetBit(0)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        union.writeTo(new DataOutputStream(bytes));
+        Bitmap copy = Bitmap.readFrom(new DataInputStream(new
+                ByteArrayInputStream(bytes.toByteArray())));
+        BitSet copied = new BitSet();
+        copy.forEach(copied::set);
+        assertEquals(expectA, copied);
+    }
+
+    @Test
+    public void testRenameDetector() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] old = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] edited = text.append("line 40\n").toString()
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] other = "something else\n".getBytes(StandardCharsets.UTF_8);
+        RenameDetector detector = new RenameDetector();
+        detector.addSource("a", Utils.hash(old), () -> old, true);
+        detector.addSource("b", Utils.hash(other), () -> other, true);
+        detector.addTarget("c", Utils.hash(edited), () -> edited);
+        detector.addTarget("d", Utils.hash(old), () -> old);
+        List<RenameDetector.Match> found = detector.detect();
+        assertEquals(2, found.size());
+        assertEquals("c (copied from a)", found.get(0).toString());
+        assertTrue(found.get(0).score() >= RenameDetector.DEFAULT_THRESHOLD);
+        assertEquals("d (renamed from a)", found.get(1).toString());
+        assertEquals(100, found.get(1).score());
 
+        RenameDetector empty = new RenameDetector();
+        empty.addTarget("e", () -> {
+            throw new AssertionError("hashed with no sources");
+        }, () -> old);
+        assertTrue(empty.detect().isEmpty());
+    }
+
+    @Test
+    public void testLineDiff() throws IOException {
+        byte[] old = "a\nb\nc\nd\ne\nf\ng\nh\ni\nj\n"
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] now = "a\nB\nc\nd\ne\nf\ng\nh\ni\nj\nk"
+            .getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new LineDiff(old, now).write("x", "x", out);
+        assertEquals("diff --git a/x b/x\n--- a/x\n+++ b/x\n"
+                     + "@@ -1,5 +1,5 @@\n a\n-b\n+B\n c\n d\n e\n"
+                     + "@@ -8,3 +8,4 @@\n h\n i\n j\n+k\n"
+                     + "\\ No newline at end of file\n",
+                     out.toString(StandardCharsets.UTF_8));
+        out.reset();
+        new LineDiff(old, old).write("x", "x", out);
+        assertEquals(0, out.size());
+    }
+
+    /** Chunk boundaries depend only on nearby content, so an insertion
+     *  changes only the chunks around it. */
+    @Test
+    public void testChunker() {
+        byte[] old = new byte[4 << 20];
+        new Random(42).nextBytes(old);
+        byte[] now = new byte[old.length + 1];
+        int at = old.length / 2;
+        System.arraycopy(old, 0, now, 0, at);
+        now[at] = 7;
+        System.arraycopy(old, at, now, at + 1, old.length - at);
+        int[] before = Chunker.cut(ByteBuffer.wrap(old));
+        int[] after = Chunker.cut(ByteBuffer.wrap(now));
+        assertEquals(old.length, before[before.length - 1]);
+        HashSet<Integer> ends = new HashSet<>();
+        for (int i = 0; i < before.length; i += 1) {
+            int size = before[i] - (i == 0 ? 0 : before[i - 1]);
+            assertTrue(size <= Chunker.MAX_SIZE);
+            assertTrue(size >= Chunker.MIN_SIZE || i == before.length - 1);
+            ends.add(before[i] < at ? before[i] : before[i] + 1);
+        }
+        int changed = 0;
+        for (int end : after) {
+            if (!ends.contains(end)) {
+                changed += 1;
+            }
+        }
+        assertTrue(changed <= 2);
+    }
+
+    @Test
+    public void testParallelRestore() throws IOException {
+        File work = Files.createTempDirectory("restore").toFile();
+        File gitlet = Utils.join(work, ".gitlet");
+        try {
+            Utils.join(gitlet, "blobs").mkdirs();
+            BlobStore store = new BlobStore(gitlet);
+            Random random = new Random(26);
+            HashMap<String, ObjectId> files = new HashMap<>();
+            HashMap<String, byte[]> contents = new HashMap<>();
+            for (int i = 0; i < 20; i += 1) {
+                byte[] bytes = new byte[70000 + i];
+                random.nextBytes(bytes);
+                ObjectId blob = Utils.hash(bytes);
+                store.write(blob, bytes);
+                files.put("f" + i + ".txt", blob);
+                contents.put("f" + i + ".txt", bytes);
+            }
+            Utils.join(work, "f7.txt").mkdir();
+            Materializer writer = new Materializer(store, work, gitlet,
+                                                   false, 4);
+            try {
+                writer.restore(files);
+                fail("overwrote a directory");
+            } catch (IllegalArgumentException excp) {
+                assertEquals("cannot overwrite directory", excp.getMessage());
+            }
+            for (String name : files.keySet()) {
+                if (!name.equals("f7.txt")) {
+                    assertArrayEquals(contents.get(name),
+                            Utils.readContents(Utils.join(work, name)));
+                }
+            }
+            Utils.join(work, "f7.txt").delete();
+            writer.restore(files);
+            assertArrayEquals(contents.get("f7.txt"),
+                    Utils.readContents(Utils.join(work, "f7.txt")));
+            int cpus = Runtime.getRuntime().availableProcessors();
+            assertEquals(3, Materializer.parallelism(" 3 "));
+            assertEquals(cpus, Materializer.parallelism("0"));
+            assertEquals(cpus, Materializer.parallelism("many"));
+            assertEquals(cpus, Materializer.parallelism(null));
+        } finally {
+            deleteTree(work);
+        }
+    }
+
+    @Test
+    public void testLinkCheckoutKeepsBlobs() throws IOException {
+        File work = Files.createTempDirectory("link").toFile();
+        File gitlet = Utils.join(work, ".gitlet");
+        try {
+            Utils.join(gitlet, "blobs").mkdirs();
+            BlobStore store = new BlobStore(gitlet);
+            byte[] contents = "linked\n".getBytes(StandardCharsets.UTF_8);
+            ObjectId blob = Utils.hash(contents);
+            store.write(blob, contents);
+            new Materializer(store, work, gitlet, true, 1)
+                .restore("a.txt", blob);
+            File a = Utils.join(work, "a.txt");
+            boolean linked = Files.isSameFile(a.toPath(),
+                                              store.file(blob).toPath());
+            assertEquals(linked, new Materializer(store, work, gitlet, true, 1)
+                         .isPristine("a.txt", blob));
+            a.setWritable(true);
+            Files.write(a.toPath(), "EDIT\n".getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.APPEND);
+            Materializer again = new Materializer(store, work, gitlet, true, 1);
+            assertFalse(again.isPristine("a.txt", blob));
+            if (linked) {
+                try {
+                    again.restore("a.txt", blob);
+                    fail("relinked a damaged blob");
+                } catch (IllegalArgumentException excp) {
+                    assertTrue(excp.getMessage().startsWith("corrupt blob"));
+                }
+            } else {
+                assertEquals(blob, store.rehash(blob));
+                again.restore("a.txt", blob);
+                assertArrayEquals(contents, Utils.readContents(a));
+            }
+        } finally {
+            deleteTree(work);
+        }
+    }
+
+    @Test
+    public void testCommitGraphBoundary() throws IOException {
+        File gitlet = Files.createTempDirectory("graph").toFile();
+        try {
+            File commits = Utils.join(gitlet, "commits");
+            commits.mkdirs();
+            Utils.join(gitlet, "blobs").mkdirs();
+            Commit a = new Commit("a", new FileMap(), null, null, "master");
+            Commit b = new Commit("b", new FileMap(), a.getID(), null,
+                    "master");
+            Commit c = new Commit("c", new FileMap(), b.getID(), null,
+                    "master");
+            for (Commit commit : new Commit[] { a, c }) {
+                Utils.writeObject(Utils.join(commits,
+                        commit.getID().toString()), commit);
+            }
+            CommitGraph graph = CommitGraph.write(gitlet,
+                    List.of(c.getID()));
+            Utils.writeObject(Utils.join(commits, b.getID().toString()), b);
+            HashMap<ObjectId, Commit> stored = new HashMap<>();
+            for (Commit commit : new Commit[] { a, b, c }) {
+                stored.put(commit.getID(), commit);
+            }
+            assertNull(graph.parents(c.getID()));
+            assertTrue(graph.isAncestor(b.getID(), c.getID(), stored::get));
+            assertTrue(graph.isAncestor(a.getID(), c.getID(), stored::get));
+            assertFalse(graph.isAncestor(c.getID(), a.getID(), stored::get));
+        } finally {
+            deleteTree(gitlet);
+        }
+    }
+
+    /** Delete FILE and, if it is a directory, everything in it. */
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+}
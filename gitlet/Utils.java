@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,13 +10,16 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -32,27 +36,142 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
+        return sha1Id(vals).toString();
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of VALS, which may
+     *  be any mixture of byte arrays and Strings, as an ObjectId. */
+    static ObjectId sha1Id(Object... vals) {
+        long start = Trace.start();
+        MessageDigest md = DIGESTS.get();
+        long bytes = 0;
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+                bytes += ((byte[]) val).length;
+            } else if (val instanceof String) {
+                bytes += update(md, (String) val);
+            } else {
+                md.reset();
+                throw new IllegalArgumentException("improper type to sha1");
+            }
+        }
+        return digest(md, start, bytes);
+    }
+
+    /** Returns the SHA-1 hash of the bytes of DATA. */
+    static ObjectId hash(byte[] data) {
+        long start = Trace.start();
+        MessageDigest md = DIGESTS.get();
+        md.update(data);
+        return digest(md, start, data.length);
+    }
+
+    /** Returns the SHA-1 hash of the bytes remaining in DATA, which are
+     *  consumed. */
+    static ObjectId hash(ByteBuffer data) {
+        long start = Trace.start();
+        MessageDigest md = DIGESTS.get();
+        long bytes = data.remaining();
+        md.update(data);
+        return digest(md, start, bytes);
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of the contents of
+     *  FILES, which are read in chunks through this thread's buffer rather
+     *  than all at once.  FILES must be normal files.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static ObjectId hash(File... files) {
+        long start = Trace.start();
+        MessageDigest md = DIGESTS.get();
+        ByteBuffer buffer = HASH_BUFFERS.get();
+        long bytes = 0;
+        for (File file : files) {
+            try (FileChannel in = FileChannel.open(file.toPath(),
+                                                   StandardOpenOption.READ)) {
+                buffer.clear();
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    buffer.flip();
+                    bytes += buffer.remaining();
+                    md.update(buffer);
+                    buffer.clear();
                 }
+            } catch (IOException excp) {
+                md.reset();
+                throw new IllegalArgumentException(excp.getMessage());
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return digest(md, start, bytes);
+    }
+
+    /** Add the UTF-8 encoding of S to MD, returning its length in bytes.
+     *  ASCII strings are encoded into this thread's scratch array. */
+    private static int update(MessageDigest md, String s) {
+        int n = s.length();
+        byte[] scratch = STRING_BYTES.get();
+        if (scratch.length < n) {
+            scratch = new byte[Math.max(n, 2 * scratch.length)];
+            STRING_BYTES.set(scratch);
+        }
+        for (int i = 0; i < n; i += 1) {
+            char c = s.charAt(i);
+            if (c >= ASCII_LIMIT) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                md.update(utf8);
+                return utf8.length;
             }
-            return result.toString();
+            scratch[i] = (byte) c;
+        }
+        md.update(scratch, 0, n);
+        return n;
+    }
+
+    /** Finish the hash accumulated in MD, recording BYTES bytes hashed
+     *  since START, and return it.  MD is left ready for reuse. */
+    private static ObjectId digest(MessageDigest md, long start,
+                                   long bytes) {
+        byte[] out = DIGEST_BYTES.get();
+        try {
+            md.digest(out, 0, ObjectId.LENGTH);
+        } catch (DigestException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end(Trace.SHA1, start, bytes);
+        return ObjectId.fromBytes(out, 0);
+    }
+
+    /** Return a new SHA-1 digest. */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** First character value that is not ASCII. */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /** Size of the buffers through which files are hashed. */
+    private static final int HASH_BUFFER_SIZE = 1 << 16;
+
+    /** Each thread's SHA-1 digest. */
+    private static final ThreadLocal<MessageDigest> DIGESTS =
+        ThreadLocal.withInitial(Utils::newDigest);
+
+    /** Each thread's buffer for digest results. */
+    private static final ThreadLocal<byte[]> DIGEST_BYTES =
+        ThreadLocal.withInitial(() -> new byte[ObjectId.LENGTH]);
+
+    /** Each thread's buffer for encoding strings. */
+    private static final ThreadLocal<byte[]> STRING_BYTES =
+        ThreadLocal.withInitial(() -> new byte[UID_LENGTH]);
+
+    /** Each thread's buffer for reading files to hash. */
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFERS =
+        ThreadLocal.withInitial(() ->
+                                ByteBuffer.allocateDirect(HASH_BUFFER_SIZE));
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -93,8 +212,11 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        long start = Trace.start();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] result = Files.readAllBytes(file.toPath());
+            Trace.end(Trace.READ_CONTENTS, start, result.length);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -112,21 +234,31 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Trace.start();
+        long bytes = write(file, contents);
+        Trace.end(Trace.WRITE_CONTENTS, start, bytes);
+    }
+
+    /** Write CONTENTS to FILE as for writeContents, returning the number
+     *  of bytes written. */
+    private static long write(File file, Object... contents) {
+        long bytes = 0;
         try {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
+            ObjectCache.invalidate(file);
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] data = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(data);
+                bytes += data.length;
             }
             str.close();
+            return bytes;
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -136,11 +268,13 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Trace.start();
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.end(Trace.READ_OBJECT, start, file);
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -150,7 +284,9 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        long start = Trace.start();
+        long bytes = write(file, serialize(obj));
+        Trace.end(Trace.WRITE_OBJECT, start, bytes);
     }
 
     /* DIRECTORIES */
@@ -168,11 +304,13 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        long start = Trace.start();
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
         } else {
             Arrays.sort(files);
+            Trace.end(Trace.LIST, start, 0);
             return Arrays.asList(files);
         }
     }
@@ -216,6 +354,23 @@ class Utils {
         }
     }
 
+    /** Return the object of type T serialized in BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */